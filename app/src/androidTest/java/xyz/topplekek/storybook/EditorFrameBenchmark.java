@@ -0,0 +1,232 @@
+package xyz.topplekek.storybook;
+
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Frame timings of the editor while it scrolls through a long story, and while the choices of the pages
+ * on screen are changed, which only rebinds the parts of their rows that changed. The same edits are then
+ * timed again with the whole row rebound after each one, to compare against.
+ * Run it on a low-end device with {@code ./gradlew :app:connectedAndroidTest}, the percentiles and the
+ * number of frames that missed the display's refresh are logged with the tag EditorFrameBenchmark
+ * and reported as instrumentation status.
+ * @since 17-10-2026
+ */
+@RunWith(AndroidJUnit4.class)
+public class EditorFrameBenchmark {
+    private static final String TAG = "EditorFrameBenchmark";
+    private static final int PAGES = 5000;
+    private static final int FRAMES = 600;
+    private static final int SCROLL_STEP = 120;
+
+    private final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+    private final long[] durations = new long[FRAMES * 3];
+    private int count;
+    private float refreshRate;
+
+    /**
+     * Scroll a frame at a time through the story, then change a choice on screen each frame,
+     * first rebinding only what changed and then the whole row.
+     */
+    @Test
+    public void scrollAndEditChoices() {
+        Intent intent = new Intent(ApplicationProvider.getApplicationContext(), StoryEditorActivity.class);
+        intent.putExtra("title", "Benchmark");
+        intent.putExtra("author", "Benchmark");
+
+        HandlerThread metricsThread = new HandlerThread(TAG);
+        metricsThread.start();
+        final Handler metricsHandler = new Handler(metricsThread.getLooper());
+        final RecyclerView[] recyclerView = new RecyclerView[1];
+        final Window[] window = new Window[1];
+        final Page[] pages = new Page[PAGES];
+
+        final Window.OnFrameMetricsAvailableListener metricsListener = new Window.OnFrameMetricsAvailableListener() {
+            /**
+             * Keep the duration of a frame.
+             * @param window The window the frame was drawn in
+             * @param frameMetrics The timings of the frame
+             * @param dropCountSinceLastInvocation The number of timings dropped before this one
+             */
+            @Override
+            public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation) {
+                synchronized (durations) {
+                    if (count < durations.length)
+                        durations[count++] = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+                }
+            }
+        };
+
+        try (ActivityScenario<StoryEditorActivity> scenario = ActivityScenario.launch(intent)) {
+            scenario.onActivity(new ActivityScenario.ActivityAction<StoryEditorActivity>() {
+                /**
+                 * Fill the story with pages, and find the views the benchmark drives.
+                 * @param activity The editor
+                 */
+                @Override
+                public void perform(StoryEditorActivity activity) {
+                    recyclerView[0] = activity.findViewById(R.id.editorRecyclerView);
+                    EditorRecyclerViewAdapter adapter = (EditorRecyclerViewAdapter) recyclerView[0].getAdapter();
+
+                    // Every other page turns past the end of the story, so rows show errors too
+                    for (int i = 0; i < PAGES; i++) {
+                        pages[i] = new Page("You walk down the long corridor to door " + i, null,
+                                Page.IMAGE_UNKNOWN, i + 2, i % 2 == 0 ? PAGES + i : 0);
+                        adapter.addStoryPage(pages[i]);
+                    }
+
+                    window[0] = activity.getWindow();
+                    refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+                }
+            });
+            instrumentation.waitForIdleSync();
+
+            instrumentation.runOnMainSync(new Runnable() {
+                /**
+                 * Start timing frames.
+                 */
+                @Override
+                public void run() {
+                    window[0].addOnFrameMetricsAvailableListener(metricsListener, metricsHandler);
+                }
+            });
+
+            for (int i = 0; i < FRAMES; i++) {
+                instrumentation.runOnMainSync(new Runnable() {
+                    /**
+                     * Scroll by one step.
+                     */
+                    @Override
+                    public void run() {
+                        recyclerView[0].scrollBy(0, SCROLL_STEP);
+                    }
+                });
+                instrumentation.waitForIdleSync();
+            }
+
+            int scrolled = frameCount();
+
+            editChoices(recyclerView[0], pages, false);
+            int edited = frameCount();
+            editChoices(recyclerView[0], pages, true);
+
+            instrumentation.runOnMainSync(new Runnable() {
+                /**
+                 * Stop timing frames.
+                 */
+                @Override
+                public void run() {
+                    window[0].removeOnFrameMetricsAvailableListener(metricsListener);
+                }
+            });
+
+            int total = frameCount();
+            assertTrue("No frames were drawn while scrolling", scrolled > 0);
+
+            Bundle results = new Bundle();
+            report(results, "scroll", Arrays.copyOfRange(durations, 0, scrolled));
+            report(results, "editChoices", Arrays.copyOfRange(durations, scrolled, edited));
+            report(results, "rebindAll", Arrays.copyOfRange(durations, edited, total));
+            instrumentation.sendStatus(0, results);
+        } finally {
+            metricsThread.quitSafely();
+        }
+    }
+
+    /**
+     * Change a choice of the first page on screen each frame.
+     * @param recyclerView The editor's list of pages
+     * @param pages The pages of the story
+     * @param rebindAll Whether to rebind the whole row after each change, as the editor did before
+     *                  it rebound only the parts that changed
+     */
+    private void editChoices(final RecyclerView recyclerView, final Page[] pages, final boolean rebindAll) {
+        for (int i = 0; i < FRAMES; i++) {
+            final int frame = i;
+
+            instrumentation.runOnMainSync(new Runnable() {
+                /**
+                 * Change a choice of the first page on screen.
+                 */
+                @Override
+                public void run() {
+                    LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                    int position = layoutManager.findFirstVisibleItemPosition();
+                    // Alternate between a valid choice and one past the end of the story
+                    pages[position].setChoice2(frame % 2 == 0 ? 1 : PAGES + frame);
+
+                    if (rebindAll)
+                        recyclerView.getAdapter().notifyItemChanged(position);
+                }
+            });
+            instrumentation.waitForIdleSync();
+        }
+    }
+
+    /**
+     * Get the number of frames timed so far.
+     * @return The number of frames
+     */
+    private int frameCount() {
+        synchronized (durations) {
+            return count;
+        }
+    }
+
+    /**
+     * Log and report the percentiles of frame durations, and how many frames missed the display's refresh.
+     * @param results The results to report them in
+     * @param name The name of the phase the frames were drawn in
+     * @param frames The duration of each frame in nanoseconds
+     */
+    private void report(Bundle results, String name, long[] frames) {
+        if (frames.length == 0)
+            return;
+
+        Arrays.sort(frames);
+        long budget = (long) (1e9 / refreshRate);
+        int janky = 0;
+        for (long duration : frames) {
+            if (duration > budget)
+                janky++;
+        }
+
+        String summary = String.format("%s: %d frames, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, %d over %.2f ms",
+                name, frames.length, percentile(frames, 50), percentile(frames, 90), percentile(frames, 99),
+                janky, budget / 1e6);
+        Log.i(TAG, summary);
+
+        results.putString(name, summary);
+        results.putInt(name + "JankyFrames", janky);
+    }
+
+    /**
+     * Get a percentile of sorted frame durations.
+     * @param frames The sorted durations in nanoseconds
+     * @param percent The percentile
+     * @return The duration in milliseconds
+     */
+    private static double percentile(long[] frames, int percent) {
+        return frames[Math.min(frames.length - 1, frames.length * percent / 100)] / 1e6;
+    }
+}
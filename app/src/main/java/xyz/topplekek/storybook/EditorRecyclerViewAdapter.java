@@ -1,6 +1,10 @@
 package xyz.topplekek.storybook;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -13,6 +17,10 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.textfield.TextInputLayout;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * RecyclerView Adapter implementation.
  * @author Braeden Hong
@@ -26,8 +34,79 @@ public class EditorRecyclerViewAdapter extends RecyclerView.Adapter<EditorRecycl
         void onSetImageButtonClicked(View view, int pos);
     }
 
+    /**
+     * Custom listener interface for the editor to implement, to insert pages.
+     */
+    public interface InsertPageListener {
+        void onInsertPageButtonClicked(View view, int pos);
+    }
+
     private Story dataset;
+    private StoryGraph graph;
+    private ChoiceValidator validator;
+
+    // Payloads to rebind only what changed about a page, so rows being dragged keep their view holder
+    // and the text box being typed in is left alone. A page number change also shows the errors again,
+    // which only lays out the row if they changed
+    private static final Object PAYLOAD_PAGE_NUMBER = new Object();
+    private static final Object PAYLOAD_CHOICES = new Object();
+    private static final Object PAYLOAD_ERRORS = new Object();
+    private static final Object PAYLOAD_TEXT = new Object();
+    private static final Object PAYLOAD_IMAGE = new Object();
+
+    // Page number and choice strings are made once, so binding a row does not format or allocate them
+    private static final int MAX_CACHED_NUMBER = 65536;
+    private String[] pageNumbers = new String[0];
+    private String[] numbers = new String[0];
+
     private SetImageListener listener;
+    private InsertPageListener insertListener;
+
+    // Pages whose choices were renumbered by the last change to the page order
+    private final ArrayList<Integer> renumbered = new ArrayList<>();
+
+    // Edits are committed once typing pauses this long, so a keystroke only records a reference to the text
+    private static final int COMMIT_DELAY_MS = 300;
+    private final PageEdits edits = new PageEdits();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable commit = new Runnable() {
+        /**
+         * Commit the edits typed since the last commit.
+         */
+        @Override
+        public void run() {
+            commitEdits();
+        }
+    };
+    private RecyclerView recyclerView;
+    private boolean committing;
+
+    /**
+     * Text watcher that only needs to know the text after it changed.
+     */
+    private abstract static class EditWatcher implements TextWatcher {
+        /**
+         * Called before the text changes, nothing is done.
+         * @param s The text
+         * @param start The start of the text to be replaced
+         * @param count The length of the text to be replaced
+         * @param after The length of the new text
+         */
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        /**
+         * Called as the text changes, nothing is done.
+         * @param s The text
+         * @param start The start of the new text
+         * @param before The length of the text it replaced
+         * @param count The length of the new text
+         */
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+    }
 
     /**
      * RecyclerView ViewHolder implementation.
@@ -36,10 +115,14 @@ public class EditorRecyclerViewAdapter extends RecyclerView.Adapter<EditorRecycl
      */
     public class ViewHolder extends RecyclerView.ViewHolder {
         public EditText pageEditText, choice1EditText, choice2EditText;
-        public Button setImageButton;
+        public Button setImageButton, insertPageButton;
         public TextView pageNumberTextView;
         public TextInputLayout choice1TextInputLayout, choice2TextInputLayout;
 
+        // The ID of the page bound, and whether its text boxes are being set rather than typed in
+        private int pageId;
+        private boolean binding;
+
         /**
          * Construct a new ViewHolder.
          * @param view The view it is holding
@@ -50,81 +133,70 @@ public class EditorRecyclerViewAdapter extends RecyclerView.Adapter<EditorRecycl
             choice1EditText = view.findViewById(R.id.choice1EditText);
             choice2EditText = view.findViewById(R.id.choice2EditText);
             setImageButton = view.findViewById(R.id.setImageButton);
+            insertPageButton = view.findViewById(R.id.insertPageButton);
             pageNumberTextView = view.findViewById(R.id.editorPageNumberTextView);
             choice1TextInputLayout = view.findViewById(R.id.choice1TextInputLayout);
             choice2TextInputLayout = view.findViewById(R.id.choice2TextInputLayout);
 
 
-            pageEditText.setOnFocusChangeListener(new View.OnFocusChangeListener() {
+            pageEditText.addTextChangedListener(new EditWatcher() {
                 /**
-                 * Focus change override to save contents upon leaving the text box.
-                 * @param view The view that changed focus
-                 * @param b Whether the view has focus or not
+                 * Record the page text being typed, it is committed once typing pauses.
+                 * @param s The text
                  */
                 @Override
-                public void onFocusChange(View view, boolean b) {
-                    if (!b) {
-                        Page p = EditorRecyclerViewAdapter.this.dataset.getPageAt(ViewHolder.this.getAdapterPosition());
-                        p.setText(ViewHolder.this.pageEditText.getText().toString());
+                public void afterTextChanged(Editable s) {
+                    if (!binding) {
+                        edits.setText(pageId, s);
+                        scheduleCommit();
                     }
                 }
             });
 
-            choice1EditText.setOnFocusChangeListener(new View.OnFocusChangeListener() {
+            choice1EditText.addTextChangedListener(new EditWatcher() {
                 /**
-                 * Focus change override to save contents upon leaving the text box.
-                 * @param view The view that changed focus
-                 * @param b Whether the view has focus or not
+                 * Record the first choice being typed, it is committed once typing pauses.
+                 * @param s The text
                  */
                 @Override
-                public void onFocusChange(View view, boolean b) {
-                    ViewHolder.this.choice1TextInputLayout.setError(null);
-
-                    Page p = EditorRecyclerViewAdapter.this.dataset.getPageAt(ViewHolder.this.getAdapterPosition());
-                    int choice = 0;
-
-                    try {
-                        choice = Integer.parseInt(ViewHolder.this.choice1EditText.getText().toString());
-                    } catch (NumberFormatException e) {
-                        e.printStackTrace();
+                public void afterTextChanged(Editable s) {
+                    if (!binding) {
+                        edits.setChoice1(pageId, s);
+                        scheduleCommit();
                     }
+                }
+            });
 
-                    if (EditorRecyclerViewAdapter.this.dataset.size() < choice) {
-                        ViewHolder.this.choice1TextInputLayout.setError("Page index out of bounds");
-                        p.setChoice1(0);
+            choice2EditText.addTextChangedListener(new EditWatcher() {
+                /**
+                 * Record the second choice being typed, it is committed once typing pauses.
+                 * @param s The text
+                 */
+                @Override
+                public void afterTextChanged(Editable s) {
+                    if (!binding) {
+                        edits.setChoice2(pageId, s);
+                        scheduleCommit();
                     }
-                    else if (!b)
-                        p.setChoice1(choice);
                 }
             });
 
-            choice2EditText.setOnFocusChangeListener(new View.OnFocusChangeListener() {
+            View.OnFocusChangeListener commitOnLeave = new View.OnFocusChangeListener() {
                 /**
-                 * Focus change override to save contents upon leaving the text box.
+                 * Focus change override to commit what was typed upon leaving the text box, without waiting for the pause.
                  * @param view The view that changed focus
                  * @param b Whether the view has focus or not
                  */
                 @Override
                 public void onFocusChange(View view, boolean b) {
-                    ViewHolder.this.choice2TextInputLayout.setError(null);
-
-                    Page p = EditorRecyclerViewAdapter.this.dataset.getPageAt(ViewHolder.this.getAdapterPosition());
-                    int choice = 0;
-
-                    try {
-                        choice = Integer.parseInt(ViewHolder.this.choice2EditText.getText().toString());
-                    } catch (NumberFormatException e) {
-                        e.printStackTrace();
-                    }
-
-                    if (EditorRecyclerViewAdapter.this.dataset.size() < choice) {
-                        ViewHolder.this.choice2TextInputLayout.setError("Page index out of bounds");
-                        p.setChoice2(0);
-                    }
-                    else if (!b)
-                        p.setChoice2(choice);
+                    if (!b)
+                        EditorRecyclerViewAdapter.this.commitEdits();
                 }
-            });
+            };
+
+            pageEditText.setOnFocusChangeListener(commitOnLeave);
+            choice1EditText.setOnFocusChangeListener(commitOnLeave);
+            choice2EditText.setOnFocusChangeListener(commitOnLeave);
 
             setImageButton.setOnClickListener(new View.OnClickListener() {
                 /**
@@ -136,17 +208,64 @@ public class EditorRecyclerViewAdapter extends RecyclerView.Adapter<EditorRecycl
                     listener.onSetImageButtonClicked(view, ViewHolder.this.getAdapterPosition());
                 }
             });
+
+            insertPageButton.setOnClickListener(new View.OnClickListener() {
+                /**
+                 * Insert page button onClick override to pass it on to the listener.
+                 * @param view The view that was clicked
+                 */
+                @Override
+                public void onClick(View view) {
+                    insertListener.onInsertPageButtonClicked(view, ViewHolder.this.getAdapterPosition());
+                }
+            });
         }
     }
 
     /**
      * Construct a new ViewAdapter.
-     * @param context The context that created this object. It must implement SetImageListener.
+     * @param context The context that created this object. It must implement SetImageListener and InsertPageListener.
      * @param dataset The dataset to use.
      */
     public EditorRecyclerViewAdapter(@NonNull Context context, Story dataset) {
         listener = (SetImageListener) context;
+        insertListener = (InsertPageListener) context;
         this.dataset = dataset;
+        graph = new StoryGraph(dataset);
+        validator = createValidator();
+
+        // Rows are identified by page ID, so they follow their pages as the page order changes
+        setHasStableIds(true);
+
+        dataset.setListener(new Story.Listener() {
+            /**
+             * Remember a page whose choices were renumbered, it is rebound once the page order change is shown.
+             * @param index The index of the page
+             */
+            @Override
+            public void onChoicesRenumbered(int index) {
+                renumbered.add(index);
+            }
+
+            /**
+             * Rebind only what changed about a page. Pages changed by committing edits already show them,
+             * and the errors of their choices are shown by the commit.
+             * @param index The index of the page
+             * @param change What changed, one of the Story.CHANGED_ constants
+             */
+            @Override
+            public void onPageChanged(int index, int change) {
+                if (committing)
+                    return;
+
+                if (change == Story.CHANGED_CHOICES) {
+                    choicesChanged(index);
+                    notifyItemChanged(index, PAYLOAD_CHOICES);
+                } else {
+                    notifyItemChanged(index, change == Story.CHANGED_TEXT ? PAYLOAD_TEXT : PAYLOAD_IMAGE);
+                }
+            }
+        });
     }
 
     /**
@@ -172,20 +291,86 @@ public class EditorRecyclerViewAdapter extends RecyclerView.Adapter<EditorRecycl
             return;
 
         Page p = dataset.getPageAt(position);
+        holder.pageId = p.getId();
+        bindText(holder, p);
+        bindChoices(holder, p);
+        bindImage(holder, p);
+        holder.pageNumberTextView.setText(pageNumberText(position));
+        showErrors(holder, position);
+    }
+
+    /**
+     * onBindViewHolder override for partial binds. Called when an existing view holder must rebind some of its values.
+     * @param holder The view holder that is having its values rebound.
+     * @param position The position of the holder in the RecyclerView.
+     * @param payloads The parts of the page that changed, or empty to rebind everything.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty() || dataset.size() <= position) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+
+        Page p = dataset.getPageAt(position);
+        boolean errors = false;
+
+        for (Object payload : payloads) {
+            if (payload == PAYLOAD_PAGE_NUMBER) {
+                holder.pageNumberTextView.setText(pageNumberText(position));
+                errors = true;
+            } else if (payload == PAYLOAD_CHOICES) {
+                bindChoices(holder, p);
+                errors = true;
+            } else if (payload == PAYLOAD_ERRORS) {
+                errors = true;
+            } else if (payload == PAYLOAD_TEXT) {
+                bindText(holder, p);
+            } else if (payload == PAYLOAD_IMAGE) {
+                bindImage(holder, p);
+            }
+        }
 
-        holder.choice1TextInputLayout.setError(null);
-        holder.choice2TextInputLayout.setError(null);
-        holder.pageEditText.setText(p.getText());
-        holder.choice1EditText.setText(Integer.toString(p.getChoice1()));
-        holder.choice2EditText.setText(Integer.toString(p.getChoice2()));
-        holder.setImageButton.setText(p.getImage() != null ? R.string.editor_change_image_button_text : R.string.editor_set_image_button_text);
-        holder.pageNumberTextView.setText(String.format("Page: %d", position + 1));
+        if (errors)
+            showErrors(holder, position);
+    }
 
-        if (dataset.size() < p.getChoice1())
-            holder.choice1TextInputLayout.setError("Page index out of bounds");
+    /**
+     * Get the stable ID of a row, the ID of its page.
+     * @param position The position of the row
+     * @return The ID of the page
+     */
+    @Override
+    public long getItemId(int position) {
+        return dataset.getPageAt(position).getId();
+    }
 
-        if (dataset.size() < p.getChoice2())
-            holder.choice2TextInputLayout.setError("Page index out of bounds");
+    /**
+     * Keep what was typed into a row that is about to be reused for another page, until it is committed.
+     * @param holder The view holder being recycled
+     */
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        edits.freeze(holder.pageId);
+    }
+
+    /**
+     * Remember the RecyclerView, to show the errors of rows whose choices were committed.
+     * @param recyclerView The RecyclerView
+     */
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+    }
+
+    /**
+     * Forget the RecyclerView and stop waiting to commit, committing what was typed now.
+     * @param recyclerView The RecyclerView
+     */
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        commitEdits();
+        this.recyclerView = null;
     }
 
     /**
@@ -202,7 +387,258 @@ public class EditorRecyclerViewAdapter extends RecyclerView.Adapter<EditorRecycl
      * @param p The page to add
      */
     public void addStoryPage(Page p) {
+        commitEdits();
         dataset.addPage(p);
-        notifyItemInserted(dataset.size());
+        graph.addPage(p);
+        validator.pageAdded(dataset.size() - 1);
+        notifyItemInserted(dataset.size() - 1);
+    }
+
+    /**
+     * Insert a new page into the story, renumbering the choices that turn to the pages after it.
+     * @param position The position to insert the page at
+     * @param p The page to insert
+     */
+    public void insertStoryPage(int position, Page p) {
+        commitEdits();
+        dataset.insertPage(position, p);
+        validator.pageInserted(position);
+        notifyItemInserted(position);
+        pageOrderChanged(position + 1, dataset.size());
+    }
+
+    /**
+     * Remove a page from the story, clearing the choices that turn to it and renumbering those that turn to the pages after it.
+     * @param position The position of the page
+     */
+    public void removeStoryPage(int position) {
+        commitEdits();
+        validator.pageRemoved(dataset.removePage(position));
+        notifyItemRemoved(position);
+        pageOrderChanged(position, dataset.size());
+    }
+
+    /**
+     * Move a page to another position, renumbering the choices that turn to it and the pages in between.
+     * @param from The position of the page
+     * @param to The position to move it to
+     */
+    public void moveStoryPage(int from, int to) {
+        commitEdits();
+        dataset.movePage(from, to);
+        notifyItemMoved(from, to);
+        pageOrderChanged(Math.min(from, to), Math.max(from, to) + 1);
+    }
+
+    /**
+     * Show pages that were added to the end of the story while it loads.
+     * @param start The index of the first page added
+     * @param count The number of pages added
+     */
+    public void pagesLoaded(int start, int count) {
+        // Insert the pages first, so rows of earlier pages that turn to them are changed rather than inserted
+        notifyItemRangeInserted(start, count);
+
+        for (int i = start; i < start + count; i++) {
+            Page p = dataset.getPageAt(i);
+            graph.addPage(p);
+            validator.pageAdded(i);
+        }
+    }
+
+    /**
+     * Show the errors of every page again once the whole story is loaded, as choices of pages shown
+     * before it was turned to pages that were not loaded yet.
+     */
+    public void storyLoaded() {
+        notifyItemRangeChanged(0, dataset.size(), PAYLOAD_ERRORS);
+    }
+
+    /**
+     * Get the graph of the story's choices, kept up to date as they are edited.
+     * @return The story graph
+     */
+    public StoryGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Get the validator of the story's choices, kept up to date as they are edited.
+     * @return The choice validator
+     */
+    public ChoiceValidator getValidator() {
+        return validator;
+    }
+
+    /**
+     * Apply everything typed since the last commit to the story at once, updating the graph,
+     * validator and errors of the pages whose choices changed. The activity calls this before
+     * it reads the story, such as when saving it.
+     */
+    public void commitEdits() {
+        handler.removeCallbacks(commit);
+        if (edits.isEmpty())
+            return;
+
+        committing = true;
+        int[] changed = edits.commit(dataset);
+        committing = false;
+
+        for (int position : changed) {
+            choicesChanged(position);
+
+            ViewHolder holder = recyclerView == null ? null : (ViewHolder) recyclerView.findViewHolderForAdapterPosition(position);
+            if (holder != null)
+                showErrors(holder, position);
+        }
+    }
+
+    /**
+     * Wait for typing to pause before committing, starting the wait again on every keystroke.
+     */
+    private void scheduleCommit() {
+        handler.removeCallbacks(commit);
+        handler.postDelayed(commit, COMMIT_DELAY_MS);
+    }
+
+    /**
+     * Set a row's page text box, showing what was typed if it is not committed yet, as when a row is scrolled back quickly.
+     * @param holder The view holder of the page
+     * @param p The page
+     */
+    private void bindText(ViewHolder holder, Page p) {
+        CharSequence text = edits.getText(holder.pageId);
+
+        holder.binding = true;
+        holder.pageEditText.setText(text != null ? text : p.getText());
+        holder.binding = false;
+    }
+
+    /**
+     * Set a row's choice text boxes, showing what was typed for them if it is not committed yet.
+     * @param holder The view holder of the page
+     * @param p The page
+     */
+    private void bindChoices(ViewHolder holder, Page p) {
+        CharSequence choice1 = edits.getChoice1(holder.pageId), choice2 = edits.getChoice2(holder.pageId);
+
+        holder.binding = true;
+        holder.choice1EditText.setText(choice1 != null ? choice1 : numberText(p.getChoice1()));
+        holder.choice2EditText.setText(choice2 != null ? choice2 : numberText(p.getChoice2()));
+        holder.binding = false;
+    }
+
+    /**
+     * Set the label of a row's image button for whether its page has an image.
+     * @param holder The view holder of the page
+     * @param p The page
+     */
+    private void bindImage(ViewHolder holder, Page p) {
+        holder.setImageButton.setText(p.hasImage() ? R.string.editor_change_image_button_text : R.string.editor_set_image_button_text);
+    }
+
+    /**
+     * Get the page number label of a row, made the first time it is shown.
+     * @param position The position of the row
+     * @return The label
+     */
+    private String pageNumberText(int position) {
+        if (position >= MAX_CACHED_NUMBER)
+            return "Page: " + (position + 1);
+
+        if (position >= pageNumbers.length)
+            pageNumbers = Arrays.copyOf(pageNumbers, Math.min(Math.max(position + 1, pageNumbers.length * 2), MAX_CACHED_NUMBER));
+
+        if (pageNumbers[position] == null)
+            pageNumbers[position] = "Page: " + (position + 1);
+
+        return pageNumbers[position];
+    }
+
+    /**
+     * Get the text of a choice, made the first time it is shown.
+     * @param choice The choice, a 1-based page number or 0 for none
+     * @return The text
+     */
+    private String numberText(int choice) {
+        if (choice < 0 || choice >= MAX_CACHED_NUMBER)
+            return Integer.toString(choice);
+
+        if (choice >= numbers.length)
+            numbers = Arrays.copyOf(numbers, Math.min(Math.max(choice + 1, numbers.length * 2), MAX_CACHED_NUMBER));
+
+        if (numbers[choice] == null)
+            numbers[choice] = Integer.toString(choice);
+
+        return numbers[choice];
+    }
+
+    /**
+     * Update the graph and validator after a page's choices changed.
+     * @param position The position of the page
+     */
+    private void choicesChanged(int position) {
+        Page p = dataset.getPageAt(position);
+        graph.setChoices(position, p);
+        validator.choicesChanged(position);
+    }
+
+    /**
+     * Rebind the pages whose page number or choices changed with the page order, and mark the graph
+     * out of date. The validator is already up to date, as renumbering does not change whether choices are valid.
+     * @param start The position of the first page whose page number changed
+     * @param end One past the position of the last page whose page number changed
+     */
+    private void pageOrderChanged(int start, int end) {
+        graph.pageOrderChanged();
+
+        if (end > start)
+            notifyItemRangeChanged(start, end - start, PAYLOAD_PAGE_NUMBER);
+
+        for (int i = 0; i < renumbered.size(); i++)
+            notifyItemChanged(renumbered.get(i), PAYLOAD_CHOICES);
+
+        renumbered.clear();
+    }
+
+    /**
+     * Create a validator for the choices of the story, that rebinds pages whose choices become valid.
+     * @return The validator
+     */
+    private ChoiceValidator createValidator() {
+        ChoiceValidator validator = new ChoiceValidator(dataset);
+
+        validator.setListener(new ChoiceValidator.Listener() {
+            /**
+             * Rebind a page whose choices became valid because the page they turn to was added.
+             * @param index The index of the page
+             */
+            @Override
+            public void onValidityChanged(int index) {
+                notifyItemChanged(index, PAYLOAD_ERRORS);
+            }
+        });
+
+        return validator;
+    }
+
+    /**
+     * Show the errors of a page's choices on its view holder.
+     * @param holder The view holder of the page
+     * @param position The position of the page
+     */
+    private void showErrors(ViewHolder holder, int position) {
+        showError(holder.choice1TextInputLayout, validator.isChoice1Valid(position));
+        showError(holder.choice2TextInputLayout, validator.isChoice2Valid(position));
+    }
+
+    /**
+     * Show or clear the error of a choice, only if that changes, as setting it lays out the row again.
+     * @param layout The text input layout of the choice
+     * @param valid Whether the choice is valid
+     */
+    private static void showError(TextInputLayout layout, boolean valid) {
+        if (valid != (layout.getError() == null))
+            layout.setError(valid ? null : "Page index out of bounds");
     }
 }
@@ -0,0 +1,164 @@
+package xyz.topplekek.storybook;
+
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.EditText;
+import android.widget.RadioGroup;
+import android.widget.SeekBar;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.fragment.app.DialogFragment;
+
+/**
+ * Image import settings dialog fragment.
+ * @since 17-10-2026
+ */
+public class ImageImportDialogFragment extends DialogFragment {
+    /**
+     * Button listener.
+     */
+    public interface ImageImportDialogListener {
+        void onImageImportSettingsChosen(DialogFragment dialog, int imageType, int quality, int maxSize);
+    }
+
+    private static final String IMAGE_TYPE_KEY = "imageType";
+    private static final String QUALITY_KEY = "quality";
+    private static final String MAX_SIZE_KEY = "maxSize";
+
+    private View view;
+    private ImageImportDialogListener listener;
+
+    /**
+     * Create a dialog showing the current settings.
+     * @param imageType The type images are encoded as, one of the Page.IMAGE_ constants
+     * @param quality The quality of lossy encodings
+     * @param maxSize The longest side images are scaled down to, or 0 for no limit
+     * @return The dialog
+     */
+    public static ImageImportDialogFragment newInstance(int imageType, int quality, int maxSize) {
+        Bundle args = new Bundle();
+        args.putInt(IMAGE_TYPE_KEY, imageType);
+        args.putInt(QUALITY_KEY, quality);
+        args.putInt(MAX_SIZE_KEY, maxSize);
+
+        ImageImportDialogFragment dialog = new ImageImportDialogFragment();
+        dialog.setArguments(args);
+        return dialog;
+    }
+
+    /**
+     * onAttach override.
+     * @param context The context that created this.
+     */
+    @Override
+    public void onAttach(@NonNull Context context) throws ClassCastException {
+        super.onAttach(context);
+
+        listener = (ImageImportDialogListener) context;
+    }
+
+    /**
+     * onCreateDialog override.
+     * @param savedInstanceState The saved instance state.
+     * @return The constructed Dialog.
+     */
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
+        LayoutInflater inflater = requireActivity().getLayoutInflater();
+        Bundle args = requireArguments();
+
+        view = inflater.inflate(R.layout.dialog_image_import, null);
+
+        final RadioGroup formatRadioGroup = view.findViewById(R.id.formatRadioGroup);
+        final SeekBar qualitySeekBar = view.findViewById(R.id.qualitySeekBar);
+        final TextView qualityTextView = view.findViewById(R.id.qualityTextView);
+        EditText maxSizeEditText = view.findViewById(R.id.maxSizeEditText);
+
+        switch (args.getInt(IMAGE_TYPE_KEY)) {
+            case Page.IMAGE_JPEG:
+                formatRadioGroup.check(R.id.jpegRadioButton);
+                break;
+            case Page.IMAGE_PNG:
+                formatRadioGroup.check(R.id.pngRadioButton);
+                break;
+            default:
+                formatRadioGroup.check(R.id.webpRadioButton);
+        }
+
+        qualitySeekBar.setProgress(args.getInt(QUALITY_KEY));
+        qualitySeekBar.setEnabled(formatRadioGroup.getCheckedRadioButtonId() != R.id.pngRadioButton);
+        qualityTextView.setText(getString(R.string.import_quality, qualitySeekBar.getProgress()));
+        maxSizeEditText.setText(Integer.toString(args.getInt(MAX_SIZE_KEY)));
+
+        formatRadioGroup.setOnCheckedChangeListener(new RadioGroup.OnCheckedChangeListener() {
+            /**
+             * Format changed listener. PNG is lossless, so it has no quality.
+             * @param group The radio group
+             * @param checkedId The id of the checked button
+             */
+            @Override
+            public void onCheckedChanged(RadioGroup group, int checkedId) {
+                qualitySeekBar.setEnabled(checkedId != R.id.pngRadioButton);
+            }
+        });
+
+        qualitySeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            /**
+             * Quality changed listener.
+             * @param seekBar The seek bar
+             * @param progress The new quality
+             * @param fromUser Whether the user changed it
+             */
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                qualityTextView.setText(getString(R.string.import_quality, progress));
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {}
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {}
+        });
+
+        builder.setView(view)
+                .setMessage(R.string.import_dialog_title)
+                .setPositiveButton(R.string.dialog_save_button, new DialogInterface.OnClickListener() {
+                    /**
+                     * Positive button onClick listener.
+                     * @param dialog The dialog that fired the event
+                     * @param which The button that was clicked
+                     */
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        EditText maxSizeEditText = view.findViewById(R.id.maxSizeEditText);
+                        int imageType = Page.IMAGE_WEBP;
+                        int maxSize = 0;
+
+                        if (formatRadioGroup.getCheckedRadioButtonId() == R.id.jpegRadioButton)
+                            imageType = Page.IMAGE_JPEG;
+                        else if (formatRadioGroup.getCheckedRadioButtonId() == R.id.pngRadioButton)
+                            imageType = Page.IMAGE_PNG;
+
+                        try {
+                            maxSize = Integer.parseInt(maxSizeEditText.getText().toString());
+                        } catch (NumberFormatException e) {
+                            // Leave images at full size
+                        }
+
+                        listener.onImageImportSettingsChosen(ImageImportDialogFragment.this,
+                                imageType, qualitySeekBar.getProgress(), maxSize);
+                    }
+                })
+                .setNegativeButton(R.string.dialog_negative_button, null);
+
+        return builder.create();
+    }
+}
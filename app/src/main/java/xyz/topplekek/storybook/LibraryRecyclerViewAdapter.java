@@ -0,0 +1,115 @@
+package xyz.topplekek.storybook;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RecyclerView Adapter for the stories in a library, showing only what their headers hold.
+ * @since 17-10-2026
+ */
+public class LibraryRecyclerViewAdapter extends RecyclerView.Adapter<LibraryRecyclerViewAdapter.ViewHolder> {
+    /**
+     * Custom listener interface for the main activity to implement, to open stories.
+     */
+    public interface StoryClickListener {
+        void onStoryClicked(StoryLibrary.Entry entry);
+    }
+
+    private final StoryClickListener listener;
+    private List<StoryLibrary.Entry> entries = new ArrayList<>();
+
+    /**
+     * RecyclerView ViewHolder implementation.
+     */
+    public class ViewHolder extends RecyclerView.ViewHolder {
+        public TextView titleTextView, detailsTextView;
+
+        /**
+         * Construct a new ViewHolder.
+         * @param view The view it is holding
+         */
+        public ViewHolder(View view) {
+            super(view);
+            titleTextView = view.findViewById(R.id.libraryTitleTextView);
+            detailsTextView = view.findViewById(R.id.libraryDetailsTextView);
+
+            view.setOnClickListener(new View.OnClickListener() {
+                /**
+                 * Open the story that was clicked.
+                 * @param view The view that was clicked
+                 */
+                @Override
+                public void onClick(View view) {
+                    int position = ViewHolder.this.getAdapterPosition();
+
+                    if (position != RecyclerView.NO_POSITION)
+                        listener.onStoryClicked(entries.get(position));
+                }
+            });
+        }
+    }
+
+    /**
+     * Construct a new adapter.
+     * @param context The context that created this object. It must implement StoryClickListener.
+     */
+    public LibraryRecyclerViewAdapter(@NonNull Context context) {
+        listener = (StoryClickListener) context;
+    }
+
+    /**
+     * Show a new list of stories.
+     * @param entries The stories, which must not be modified afterwards
+     */
+    public void setEntries(List<StoryLibrary.Entry> entries) {
+        this.entries = entries;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * onCreateViewHolder override. Called when creating a new ViewHolder.
+     * @param parent The parent.
+     * @param viewType The type of view to create.
+     * @return The ViewHolder created.
+     */
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.library_item, parent, false);
+        return new ViewHolder(view);
+    }
+
+    /**
+     * onBindViewHolder override. Called when an existing view holder must rebind its values.
+     * @param holder The view holder that is having its values rebound.
+     * @param position The position of the holder in the RecyclerView.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        StoryHeader header = entries.get(position).getHeader();
+        Context context = holder.itemView.getContext();
+
+        holder.titleTextView.setText(header.getTitle());
+        holder.detailsTextView.setText(header.hasImages()
+                ? context.getString(R.string.library_details_images, header.getAuthor(), header.getNumPages(), header.getImageCount())
+                : context.getString(R.string.library_details, header.getAuthor(), header.getNumPages()));
+    }
+
+    /**
+     * Get the item count in the dataset.
+     * @return The number of stories shown.
+     */
+    @Override
+    public int getItemCount() {
+        return entries.size();
+    }
+}
@@ -4,23 +4,58 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.DialogFragment;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The main activity Class.
  * @author Braeden Hong
  * @since 12-06-2020
  */
-public class MainActivity extends AppCompatActivity implements NewStoryDialogFragment.NewStoryDialogListener {
+public class MainActivity extends AppCompatActivity implements NewStoryDialogFragment.NewStoryDialogListener,
+        LibraryRecyclerViewAdapter.StoryClickListener {
     final private int LOAD_STORY_CODE = 2;
     final private int EDIT_STORY_CODE = 3;
+    final private int LIBRARY_FOLDER_CODE = 4;
+
+    // The library folder, kept in the activity's preferences, and the index of its stories
+    final private String LIBRARY_FOLDER_KEY = "libraryFolder";
+    final private String LIBRARY_INDEX_FILE = "library.index";
+
+    // The library is only touched on this thread, so searching never waits on the UI and the other way round
+    private ExecutorService libraryExecutor;
+    private StoryLibrary library;
+    private volatile String query = "";
+
+    private LibraryRecyclerViewAdapter libraryAdapter;
+    private TextView descriptionTextView;
 
     /**
      * On create Override for main activity.
@@ -30,6 +65,63 @@ public class MainActivity extends AppCompatActivity implements NewStoryDialogFra
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+
+        descriptionTextView = findViewById(R.id.textView3);
+        libraryAdapter = new LibraryRecyclerViewAdapter(this);
+
+        RecyclerView recyclerView = findViewById(R.id.libraryRecyclerView);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        recyclerView.setHasFixedSize(true);
+        recyclerView.setAdapter(libraryAdapter);
+
+        EditText searchEditText = findViewById(R.id.librarySearchEditText);
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            /**
+             * Unused, the search runs once the text has changed.
+             */
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            /**
+             * Unused, the search runs once the text has changed.
+             */
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            /**
+             * Search the library for the new query.
+             * @param s The text of the search box
+             */
+            @Override
+            public void afterTextChanged(Editable s) {
+                query = s.toString();
+                libraryExecutor.execute(new Runnable() {
+                    /**
+                     * Show the stories that match the query.
+                     */
+                    @Override
+                    public void run() {
+                        showLibrary();
+                    }
+                });
+            }
+        });
+
+        libraryExecutor = Executors.newSingleThreadExecutor();
+
+        String folder = getPreferences(Context.MODE_PRIVATE).getString(LIBRARY_FOLDER_KEY, null);
+        if (folder != null)
+            refreshLibrary(Uri.parse(folder));
+    }
+
+    /**
+     * Activity onDestroy override.
+     * Stops updating the library.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        libraryExecutor.shutdownNow();
     }
 
     /**
@@ -66,6 +158,29 @@ public class MainActivity extends AppCompatActivity implements NewStoryDialogFra
         startActivityForResult(Intent.createChooser(intent, "Select storybook file"), EDIT_STORY_CODE);
     }
 
+    /**
+     * Library folder button onClick handler.
+     * @param view The button that was clicked
+     */
+    public void onLibraryFolderButtonClick(View view) {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION);
+
+        startActivityForResult(intent, LIBRARY_FOLDER_CODE);
+    }
+
+    /**
+     * Library story clicked handler, opens the story in the viewer.
+     * @param entry The story that was clicked
+     */
+    @Override
+    public void onStoryClicked(StoryLibrary.Entry entry) {
+        Intent intent = new Intent(this, StoryViewerActivity.class);
+        intent.setData(Uri.parse(entry.getUri()));
+
+        startActivity(intent);
+    }
+
     /**
      * On activity result handler override.
      * @param requestCode The request code of the intent
@@ -91,9 +206,136 @@ public class MainActivity extends AppCompatActivity implements NewStoryDialogFra
 
             // Start the editor with this story loaded
             startActivity(intent);
+        } else if (requestCode == LIBRARY_FOLDER_CODE) {
+            Uri folder = data.getData();
+
+            // Keep access to the folder, so the library can be updated every time the app starts
+            getContentResolver().takePersistableUriPermission(folder, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            getPreferences(Context.MODE_PRIVATE).edit()
+                    .putString(LIBRARY_FOLDER_KEY, folder.toString())
+                    .apply();
+
+            refreshLibrary(folder);
         }
     }
 
+    /**
+     * Show the library from its index, then bring the index up to date with the folder in the background.
+     * Only stories that are new or were modified since the index was saved are opened, and only their headers are read.
+     * @param folder The tree URI of the library folder
+     */
+    private void refreshLibrary(final Uri folder) {
+        libraryExecutor.execute(new Runnable() {
+            /**
+             * Load the index, show it, and update it.
+             */
+            @Override
+            public void run() {
+                File index = new File(getFilesDir(), LIBRARY_INDEX_FILE);
+                long start = SystemClock.elapsedRealtime();
+
+                if (library == null) {
+                    try {
+                        library = StoryLibrary.load(index);
+                    } catch (IOException e) {
+                        // A corrupt index is rebuilt from the folder
+                        e.printStackTrace();
+                        library = new StoryLibrary();
+                    }
+
+                    showLibrary();
+                    Log.i("Library", String.format("Showed %d indexed stories in %d ms", library.size(),
+                            SystemClock.elapsedRealtime() - start));
+                }
+
+                ArrayList<String> found = new ArrayList<>();
+                int read = updateLibrary(folder, found);
+
+                if (library.retainAll(found) || read > 0) {
+                    try {
+                        library.save(index);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+
+                    showLibrary();
+                }
+
+                Log.i("Library", String.format("Updated %d stories, read %d headers in %d ms", found.size(), read,
+                        SystemClock.elapsedRealtime() - start));
+            }
+        });
+    }
+
+    /**
+     * Add the stories in a folder that are not in the library yet, or were modified since they were added.
+     * Must be called on the library thread.
+     * @param folder The tree URI of the folder
+     * @param found Filled with the URIs of every story in the folder
+     * @return The number of headers read
+     */
+    private int updateLibrary(Uri folder, List<String> found) {
+        Uri children = DocumentsContract.buildChildDocumentsUriUsingTree(folder, DocumentsContract.getTreeDocumentId(folder));
+        String[] columns = {DocumentsContract.Document.COLUMN_DOCUMENT_ID, DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+                DocumentsContract.Document.COLUMN_LAST_MODIFIED};
+        int read = 0;
+
+        try (Cursor cursor = getContentResolver().query(children, columns, null, null, null)) {
+            if (cursor == null)
+                return 0;
+
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(1);
+                if (name == null || !name.endsWith(".storybook"))
+                    continue;
+
+                Uri uri = DocumentsContract.buildDocumentUriUsingTree(folder, cursor.getString(0));
+                long modified = cursor.getLong(2);
+                found.add(uri.toString());
+
+                if (library.get(uri.toString(), modified) != null)
+                    continue;
+
+                try (ParcelFileDescriptor descriptor = getContentResolver().openFileDescriptor(uri, "r");
+                     FileChannel channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel()) {
+                    library.put(uri.toString(), modified, StoryHeader.read(channel));
+                    read++;
+                } catch (IOException e) {
+                    // Leave out stories that cannot be read, they are tried again next time
+                    e.printStackTrace();
+                }
+            }
+        } catch (SecurityException e) {
+            // Access to the folder was revoked
+            e.printStackTrace();
+        }
+
+        return read;
+    }
+
+    /**
+     * Show the stories in the library that match the current query.
+     * Must be called on the library thread.
+     */
+    private void showLibrary() {
+        if (library == null)
+            return;
+
+        final List<StoryLibrary.Entry> entries = library.search(query);
+        final boolean empty = library.size() == 0;
+
+        runOnUiThread(new Runnable() {
+            /**
+             * Show the stories, or the app description if the library is empty.
+             */
+            @Override
+            public void run() {
+                libraryAdapter.setEntries(entries);
+                descriptionTextView.setVisibility(empty ? View.VISIBLE : View.GONE);
+            }
+        });
+    }
+
     /**
      * New story dialog positive click handler.
      * @param dialog The dialog that the event was fired from
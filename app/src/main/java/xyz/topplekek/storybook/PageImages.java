@@ -0,0 +1,97 @@
+package xyz.topplekek.storybook;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Helpers for decoding page images at the size they are shown and encoding imported images.
+ * @since 17-10-2026
+ */
+final class PageImages {
+    private PageImages() {}
+
+    /**
+     * Decode an image no larger than needed to fill an area.
+     * The bounds are read first, then the image is decoded with a power of 2 sample size.
+     * @param data The encoded image
+     * @param width The width of the area, or 0 to decode at full size
+     * @param height The height of the area, or 0 to decode at full size
+     * @return The decoded image, or null if it could not be decoded
+     */
+    static Bitmap decodeSampled(byte[] data, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, width, height);
+        options.inJustDecodeBounds = false;
+
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /**
+     * Find the largest power of 2 sample size that keeps an image at least as big as an area.
+     * @param width The width of the image
+     * @param height The height of the image
+     * @param areaWidth The width of the area
+     * @param areaHeight The height of the area
+     * @return The sample size
+     */
+    static int calculateInSampleSize(int width, int height, int areaWidth, int areaHeight) {
+        int sampleSize = 1;
+
+        if (areaWidth <= 0 || areaHeight <= 0)
+            return sampleSize;
+
+        while (width / (sampleSize * 2) >= areaWidth && height / (sampleSize * 2) >= areaHeight)
+            sampleSize *= 2;
+
+        return sampleSize;
+    }
+
+    /**
+     * Find the size to scale an image down to so its longest side fits.
+     * @param width The width of the image
+     * @param height The height of the image
+     * @param maxSize The longest side allowed, or 0 for no limit
+     * @return The scale, at most 1
+     */
+    static float fitScale(int width, int height, int maxSize) {
+        int longest = Math.max(width, height);
+
+        if (maxSize <= 0 || longest <= maxSize)
+            return 1;
+
+        return (float) maxSize / longest;
+    }
+
+    /**
+     * Encode an image for storing in a page.
+     * @param bitmap The image
+     * @param imageType The type to encode as, one of the Page.IMAGE_ constants
+     * @param quality The quality from 0 to 100, ignored for PNG
+     * @return The encoded image
+     */
+    static byte[] encode(Bitmap bitmap, int imageType, int quality) {
+        Bitmap.CompressFormat format;
+
+        switch (imageType) {
+            case Page.IMAGE_JPEG:
+                format = Bitmap.CompressFormat.JPEG;
+                break;
+            case Page.IMAGE_WEBP:
+                format = Bitmap.CompressFormat.WEBP;
+                break;
+            default:
+                format = Bitmap.CompressFormat.PNG;
+                quality = 100;
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        bitmap.compress(format, quality, output);
+
+        return output.toByteArray();
+    }
+}
@@ -2,18 +2,24 @@ package xyz.topplekek.storybook;
 
 import android.Manifest;
 import android.app.Activity;
+import android.app.AlertDialog;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.ImageDecoder;
 import android.net.Uri;
 import android.os.Bundle;
-import android.util.Base64;
+import android.os.ParcelFileDescriptor;
+import android.util.Size;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.inputmethod.InputMethodManager;
+import android.widget.EditText;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -22,30 +28,47 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.fragment.app.DialogFragment;
+import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Story editor activity class.
  * @author Braeden Hong
  * @since 12-06-2020
  */
-public class StoryEditorActivity extends AppCompatActivity implements EditorRecyclerViewAdapter.SetImageListener {
+public class StoryEditorActivity extends AppCompatActivity implements EditorRecyclerViewAdapter.SetImageListener,
+        EditorRecyclerViewAdapter.InsertPageListener, ImageImportDialogFragment.ImageImportDialogListener {
     private RecyclerView recyclerView;
     private RecyclerView.Adapter adapter;
     private RecyclerView.LayoutManager layoutManager;
     private Toolbar toolbar;
     private TextView windowTitleTextView;
+    private ProgressBar loadProgressBar;
     private Story story;
+    private StoryLoader loader;
+    private ExecutorService loadExecutor;
+    private Uri outputUri;
     final private int SELECT_OUTPUT_CODE = 456;
     final private int SELECT_IMAGE_CODE = 789;
     final private String SELECT_IMAGE_POS_KEY = "position";
 
+    // Pages listed by a text search, and the length of the text shown for each
+    final private int MAX_FOUND_PAGES = 200;
+    final private int FOUND_TEXT_LENGTH = 60;
+
+    // Image import settings, kept in the activity's preferences
+    final private String IMPORT_TYPE_KEY = "importType";
+    final private String IMPORT_QUALITY_KEY = "importQuality";
+    final private String IMPORT_MAX_SIZE_KEY = "importMaxSize";
+    private int importType, importQuality, importMaxSize;
+
     /**
      * On set image button clicked listener implementation.
      * @param view The view that was clicked
@@ -61,6 +84,19 @@ public class StoryEditorActivity extends AppCompatActivity implements EditorRecy
         startActivityForResult(Intent.createChooser(intent, "Select image"), SELECT_IMAGE_CODE);
     }
 
+    /**
+     * On insert page button clicked listener implementation, inserts a new page after the page.
+     * @param view The view that was clicked
+     * @param pos The position of the ViewHolder that fired this
+     */
+    @Override
+    public void onInsertPageButtonClicked(View view, int pos) {
+        if (pos == RecyclerView.NO_POSITION || isLoading())
+            return;
+
+        ((EditorRecyclerViewAdapter) adapter).insertStoryPage(pos + 1, new Page());
+    }
+
     /**
      * onCreate override.
      * @param savedInstanceState The saved instance state
@@ -72,6 +108,11 @@ public class StoryEditorActivity extends AppCompatActivity implements EditorRecy
         toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
+        SharedPreferences preferences = getPreferences(Context.MODE_PRIVATE);
+        importType = preferences.getInt(IMPORT_TYPE_KEY, Page.IMAGE_WEBP);
+        importQuality = preferences.getInt(IMPORT_QUALITY_KEY, 85);
+        importMaxSize = preferences.getInt(IMPORT_MAX_SIZE_KEY, 2048);
+
         Intent intent = getIntent();
         String title = intent.getStringExtra("title");
         String author = intent.getStringExtra("author");
@@ -82,26 +123,58 @@ public class StoryEditorActivity extends AppCompatActivity implements EditorRecy
         if (author == null || author.length() == 0)
             author = "Unknown";
 
-        // Attempt to load the file if there is one
-        if (storyFileUri != null) {
-            try {
-                story = new Story((FileInputStream) getContentResolver().openInputStream(storyFileUri));
-            } catch (IOException e) {
-                Toast.makeText(this, "Failed to open storybook: IOException", Toast.LENGTH_LONG).show();
-                e.printStackTrace();
-            }
-        } else
-            story = new Story(title, author);
-
         windowTitleTextView = findViewById(R.id.windowTitleTextView);
-        windowTitleTextView.setText(String.format("%s - By: %s", story.getTitle(), story.getAuthor()));
+        loadProgressBar = findViewById(R.id.loadProgressBar);
         getSupportActionBar().setDisplayShowTitleEnabled(false);
 
         recyclerView = findViewById(R.id.editorRecyclerView);
         layoutManager = new LinearLayoutManager(this);
         recyclerView.setLayoutManager(layoutManager);
-        adapter = new EditorRecyclerViewAdapter(this, story);
-        recyclerView.setAdapter(adapter);
+
+        // Attempt to load the file if there is one, showing its pages as they are read
+        if (storyFileUri != null)
+            loadStory(storyFileUri);
+        else
+            showStory(new Story(title, author));
+
+        // Long press a page to move it, swipe it away to delete it
+        new ItemTouchHelper(new ItemTouchHelper.SimpleCallback(ItemTouchHelper.UP | ItemTouchHelper.DOWN,
+                ItemTouchHelper.LEFT | ItemTouchHelper.RIGHT) {
+            /**
+             * Get the directions a page can be moved or swiped in, none while the story is loading.
+             * @param recyclerView The RecyclerView
+             * @param viewHolder The view holder of the page
+             * @return The movement flags
+             */
+            @Override
+            public int getMovementFlags(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder) {
+                return loader == null ? super.getMovementFlags(recyclerView, viewHolder) : 0;
+            }
+
+            /**
+             * Move a page as it is dragged over another.
+             * @param recyclerView The RecyclerView
+             * @param viewHolder The view holder of the page being dragged
+             * @param target The view holder of the page it is dragged over
+             * @return Whether the page was moved
+             */
+            @Override
+            public boolean onMove(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder,
+                                  @NonNull RecyclerView.ViewHolder target) {
+                ((EditorRecyclerViewAdapter) adapter).moveStoryPage(viewHolder.getAdapterPosition(), target.getAdapterPosition());
+                return true;
+            }
+
+            /**
+             * Ask to delete a page that was swiped away.
+             * @param viewHolder The view holder of the page
+             * @param direction The direction it was swiped in
+             */
+            @Override
+            public void onSwiped(@NonNull RecyclerView.ViewHolder viewHolder, int direction) {
+                confirmRemovePage(viewHolder.getAdapterPosition());
+            }
+        }).attachToRecyclerView(recyclerView);
 
         recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             /**
@@ -125,6 +198,250 @@ public class StoryEditorActivity extends AppCompatActivity implements EditorRecy
         });
     }
 
+    /**
+     * Activity onPause override.
+     * Commits what was typed, so it is in the story if the activity does not come back.
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        commitEdits();
+    }
+
+    /**
+     * Activity onDestroy override.
+     * Stops loading the story if it is still loading.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        if (loader != null) {
+            loader.cancel();
+            loadExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Load a story in the background, showing its first page as soon as it is read.
+     * @param uri The uri of the story file
+     */
+    private void loadStory(Uri uri) {
+        try {
+            loader = new StoryLoader(getContentResolver().openInputStream(uri), getMainExecutor(),
+                    new StoryLoader.Listener() {
+                        /**
+                         * Show the story with its first page.
+                         * @param story The story
+                         * @param numPages The number of pages the story will have
+                         */
+                        @Override
+                        public void onStoryStarted(Story story, int numPages) {
+                            showStory(story);
+                            loadProgressBar.setMax(numPages);
+                            loadProgressBar.setProgress(story.size());
+                            loadProgressBar.setVisibility(View.VISIBLE);
+                        }
+
+                        /**
+                         * Show the pages that were added.
+                         * @param story The story
+                         * @param start The index of the first page added
+                         * @param count The number of pages added
+                         */
+                        @Override
+                        public void onPagesLoaded(Story story, int start, int count) {
+                            ((EditorRecyclerViewAdapter) adapter).pagesLoaded(start, count);
+                            loadProgressBar.setProgress(story.size());
+                        }
+
+                        /**
+                         * Finish loading, checking the choices of pages shown before every page was loaded.
+                         * @param story The story
+                         */
+                        @Override
+                        public void onStoryLoaded(Story story) {
+                            loader = null;
+                            loadExecutor.shutdown();
+                            loadProgressBar.setVisibility(View.GONE);
+                            ((EditorRecyclerViewAdapter) adapter).storyLoaded();
+                        }
+
+                        /**
+                         * Report the error and leave the editor.
+                         * @param e The error
+                         */
+                        @Override
+                        public void onLoadFailed(IOException e) {
+                            Toast.makeText(StoryEditorActivity.this, "Failed to open storybook: " + e.getMessage(),
+                                    Toast.LENGTH_LONG).show();
+                            e.printStackTrace();
+                            finish();
+                        }
+                    });
+        } catch (IOException e) {
+            Toast.makeText(this, "Failed to open storybook: IOException", Toast.LENGTH_LONG).show();
+            e.printStackTrace();
+            finish();
+            return;
+        }
+
+        loadExecutor = Executors.newSingleThreadExecutor();
+        loadExecutor.execute(loader);
+    }
+
+    /**
+     * Show a story in the editor.
+     * @param story The story
+     */
+    private void showStory(Story story) {
+        this.story = story;
+        windowTitleTextView.setText(String.format("%s - By: %s", story.getTitle(), story.getAuthor()));
+        adapter = new EditorRecyclerViewAdapter(this, story);
+        recyclerView.setAdapter(adapter);
+    }
+
+    /**
+     * Ask whether to delete a page, putting it back if not.
+     * @param position The position of the page
+     */
+    private void confirmRemovePage(final int position) {
+        final EditorRecyclerViewAdapter editorAdapter = (EditorRecyclerViewAdapter) adapter;
+
+        new AlertDialog.Builder(this)
+                .setTitle(getString(R.string.dialog_delete_page_title, position + 1))
+                .setMessage(R.string.dialog_delete_page_message)
+                .setPositiveButton(R.string.dialog_delete_button, new DialogInterface.OnClickListener() {
+                    /**
+                     * Delete the page.
+                     * @param dialog The dialog
+                     * @param which The button that was clicked
+                     */
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        editorAdapter.removeStoryPage(position);
+                    }
+                })
+                .setNegativeButton(R.string.dialog_negative_button, null)
+                .setOnDismissListener(new DialogInterface.OnDismissListener() {
+                    /**
+                     * Put the page back if it was not deleted.
+                     * @param dialog The dialog
+                     */
+                    @Override
+                    public void onDismiss(DialogInterface dialog) {
+                        if (position < story.size() && editorAdapter == adapter)
+                            editorAdapter.notifyItemChanged(position);
+                    }
+                })
+                .show();
+    }
+
+    /**
+     * Show what the story graph says about unreachable pages, endings and loops.
+     */
+    private void showStoryCheck() {
+        commitEdits();
+        StoryGraph graph = ((EditorRecyclerViewAdapter) adapter).getGraph();
+        StringBuilder message = new StringBuilder();
+
+        message.append(String.format("Pages: %d\n", graph.size()));
+        message.append(String.format("Unreachable from page 1: %d\n", graph.getUnreachableCount()));
+        message.append(String.format("Endings: %d\n", graph.getEndingCount()));
+        message.append(String.format("Pages in loops: %d\n", graph.getCyclicCount()));
+        message.append(String.format("Pages that can never reach an ending: %d", graph.getDeadEndCount()));
+
+        if (graph.size() > 0 && graph.getDistanceToEnding(0) != StoryGraph.UNREACHABLE)
+            message.append(String.format("\nShortest path from page 1 to an ending: %d turns", graph.getDistanceToEnding(0)));
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.action_check_story)
+                .setMessage(message)
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+    }
+
+    /**
+     * Ask for words to find, then list the pages that have them.
+     */
+    private void showFindText() {
+        commitEdits();
+
+        final EditText queryEditText = new EditText(this);
+        queryEditText.setHint(R.string.find_text_hint);
+        queryEditText.setSingleLine();
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.action_find_text)
+                .setView(queryEditText)
+                .setPositiveButton(R.string.find_text_button, new DialogInterface.OnClickListener() {
+                    /**
+                     * Find the pages.
+                     * @param dialog The dialog
+                     * @param which The button that was clicked
+                     */
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        showFoundPages(queryEditText.getText().toString());
+                    }
+                })
+                .setNegativeButton(R.string.dialog_negative_button, null)
+                .show();
+    }
+
+    /**
+     * List the pages that have every word of a query, scrolling to the page that is picked.
+     * @param query The words to find
+     */
+    private void showFoundPages(String query) {
+        final int[] found = story.getTextIndex().search(query);
+
+        if (found.length == 0) {
+            Toast.makeText(this, getString(R.string.find_text_none, query), Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        // Only the first pages are listed, with the start of their text
+        String[] items = new String[Math.min(found.length, MAX_FOUND_PAGES)];
+        for (int i = 0; i < items.length; i++) {
+            String text = story.getPageAt(found[i]).getText();
+            if (text == null)
+                text = "";
+            else if (text.length() > FOUND_TEXT_LENGTH)
+                text = text.substring(0, FOUND_TEXT_LENGTH) + "…";
+
+            items[i] = getString(R.string.find_text_item, found[i] + 1, text);
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle(getResources().getQuantityString(R.plurals.find_text_title, found.length, found.length))
+                .setItems(items, new DialogInterface.OnClickListener() {
+                    /**
+                     * Scroll to the page that was picked.
+                     * @param dialog The dialog
+                     * @param which The item that was picked
+                     */
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        recyclerView.scrollToPosition(found[which]);
+                    }
+                })
+                .setNegativeButton(R.string.dialog_negative_button, null)
+                .show();
+    }
+
+    /**
+     * Check whether the story is still loading, telling the user if it is.
+     * @return Whether the story is still loading
+     */
+    private boolean isLoading() {
+        if (loader == null)
+            return false;
+
+        Toast.makeText(this, "The story is still loading", Toast.LENGTH_SHORT).show();
+        return true;
+    }
+
     /**
      * On create options menu handler.
      * @param menu The menu to be inflated.
@@ -144,12 +461,30 @@ public class StoryEditorActivity extends AppCompatActivity implements EditorRecy
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         if (item.getItemId() == R.id.action_save) {
+            if (isLoading())
+                return true;
+
             getStoragePermission();
 
+            // Later saves only append what changed to the file that was chosen
+            if (outputUri != null) {
+                saveStory(outputUri);
+                return true;
+            }
+
             Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
             intent.setType("application/storybook");
 
             startActivityForResult(Intent.createChooser(intent, "Select output"), SELECT_OUTPUT_CODE);
+        } else if (item.getItemId() == R.id.action_check_story) {
+            if (!isLoading())
+                showStoryCheck();
+        } else if (item.getItemId() == R.id.action_find_text) {
+            if (!isLoading())
+                showFindText();
+        } else if (item.getItemId() == R.id.action_image_import) {
+            DialogFragment dialog = ImageImportDialogFragment.newInstance(importType, importQuality, importMaxSize);
+            dialog.show(getSupportFragmentManager(), "ImageImportDialogFragment");
         }
 
         return super.onOptionsItemSelected(item);
@@ -171,23 +506,37 @@ public class StoryEditorActivity extends AppCompatActivity implements EditorRecy
         if (requestCode == SELECT_OUTPUT_CODE) {
             getStoragePermission();
 
-            try {
-                story.saveStory((FileOutputStream) getContentResolver().openOutputStream(data.getData()));
-            } catch (IOException e) {
-                Toast.makeText(this, "Error: File not found", Toast.LENGTH_LONG).show();
-            }
+            saveStory(data.getData());
         } else if (requestCode == SELECT_IMAGE_CODE) {
             try {
-                // Attempt to encode the selected image
+                // Attempt to decode the selected image straight to the import size, then encode it
                 ImageDecoder.Source source = ImageDecoder.createSource(getContentResolver(), data.getData());
-                Bitmap bitmap = ImageDecoder.decodeBitmap(source);
-                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                Bitmap bitmap = ImageDecoder.decodeBitmap(source, new ImageDecoder.OnHeaderDecodedListener() {
+                    /**
+                     * Header decoded listener, scales the image down before it is decoded.
+                     * @param decoder The decoder
+                     * @param info The size and type of the image
+                     * @param source The source of the image
+                     */
+                    @Override
+                    public void onHeaderDecoded(@NonNull ImageDecoder decoder, @NonNull ImageDecoder.ImageInfo info,
+                                                @NonNull ImageDecoder.Source source) {
+                        Size size = info.getSize();
+                        float scale = PageImages.fitScale(size.getWidth(), size.getHeight(), importMaxSize);
+
+                        // Hardware bitmaps can not be compressed
+                        decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+                        if (scale < 1)
+                            decoder.setTargetSize(Math.max(1, Math.round(size.getWidth() * scale)),
+                                    Math.max(1, Math.round(size.getHeight() * scale)));
+                    }
+                });
                 int pos = getIntent().getIntExtra(SELECT_IMAGE_POS_KEY, 0);
                 Page p = story.getPageAt(pos);
-                bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
 
-                p.setImage(new String(Base64.encode(outputStream.toByteArray(), Base64.DEFAULT)));
-                adapter.notifyItemChanged(pos);
+                // The story tells the adapter, which only rebinds the image button
+                p.setImage(PageImages.encode(bitmap, importType, importQuality), importType);
+                bitmap.recycle();
             } catch (IOException e) {
                 Toast.makeText(this, "Failed to get image: IOException", Toast.LENGTH_LONG).show();
                 e.printStackTrace();
@@ -195,11 +544,59 @@ public class StoryEditorActivity extends AppCompatActivity implements EditorRecy
         }
     }
 
+    /**
+     * Image import settings dialog listener, remembers the new settings.
+     * @param dialog The dialog that fired this
+     * @param imageType The type images are encoded as, one of the Page.IMAGE_ constants
+     * @param quality The quality of lossy encodings
+     * @param maxSize The longest side images are scaled down to, or 0 for no limit
+     */
+    @Override
+    public void onImageImportSettingsChosen(DialogFragment dialog, int imageType, int quality, int maxSize) {
+        importType = imageType;
+        importQuality = quality;
+        importMaxSize = maxSize;
+
+        getPreferences(Context.MODE_PRIVATE).edit()
+                .putInt(IMPORT_TYPE_KEY, importType)
+                .putInt(IMPORT_QUALITY_KEY, importQuality)
+                .putInt(IMPORT_MAX_SIZE_KEY, importMaxSize)
+                .apply();
+    }
+
+    /**
+     * Save the story to a file, appending only the changes if it was last saved there.
+     * @param uri The uri of the file
+     */
+    private void saveStory(Uri uri) {
+        commitEdits();
+
+        try (ParcelFileDescriptor descriptor = getContentResolver().openFileDescriptor(uri, "rw");
+             FileOutputStream output = new FileOutputStream(descriptor.getFileDescriptor())) {
+            story.saveChanges(output.getChannel());
+            outputUri = uri;
+        } catch (IOException e) {
+            outputUri = null;
+            Toast.makeText(this, "Error: File not found", Toast.LENGTH_LONG).show();
+        }
+    }
+
+    /**
+     * Commit what was typed into the editor that is still waiting for typing to pause.
+     */
+    private void commitEdits() {
+        if (adapter != null)
+            ((EditorRecyclerViewAdapter) adapter).commitEdits();
+    }
+
     /**
      * Floating Action Button (FAB) onClick handler.
      * @param view The view that was clicked
      */
     public void onFABClicked(View view) {
+        if (story == null || isLoading())
+            return;
+
         ((EditorRecyclerViewAdapter) adapter).addStoryPage(new Page());
     }
 
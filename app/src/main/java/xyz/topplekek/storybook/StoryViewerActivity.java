@@ -1,13 +1,17 @@
 package xyz.topplekek.storybook;
 
-import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.net.Uri;
 import android.os.Bundle;
-import android.util.Base64;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.ImageView;
+import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -15,6 +19,16 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Story viewer activity class.
@@ -22,10 +36,30 @@ import java.io.IOException;
  * @since 13-06-2020
  */
 public class StoryViewerActivity extends AppCompatActivity {
-    private Story story;
+    private static final String TAG = "StoryViewerActivity";
+
+    // Choices of a page whose images are decoded ahead, pages can have any number of choices
+    private static final int PREFETCH_CHOICES = 4;
+
+    private MappedStory story;
     private TextView pageTextView, pageNumberTextView;
     private ImageView pageImageView;
-    private Button gotoChoice1Button, gotoChoice2Button;
+    private LinearLayout choiceButtonLayout;
+
+    // One button per choice, created as pages with more choices are shown
+    private final ArrayList<Button> choiceButtons = new ArrayList<>();
+
+    // Decoded images by page index, sized in bytes, and the pages being decoded ahead of time
+    private LruCache<Integer, Bitmap> bitmaps;
+    private final Map<Integer, Future<Bitmap>> prefetches = new HashMap<>();
+    private ExecutorService prefetchExecutor;
+
+    // The size images are decoded for, the screen until the image view is laid out
+    private volatile int imageWidth, imageHeight;
+
+    // The page whose image is shown once it is decoded, or -1, and when that page was turned to
+    private int pendingImage = -1;
+    private long pendingStart;
 
     /**
      * Activity onCreate override.
@@ -36,37 +70,119 @@ public class StoryViewerActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_story_viewer);
 
-        Intent intent = getIntent();
-
-        // Try loading the story provided
-        try {
-            story = new Story((FileInputStream) getContentResolver().openInputStream(intent.getData()));
-        } catch (IOException e) {
-            Toast.makeText(this, "Failed to open storybook file", Toast.LENGTH_LONG).show();
-            e.printStackTrace();
-        }
+        // Keep up to an eighth of the heap limit of decoded images
+        bitmaps = new LruCache<Integer, Bitmap>((int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE)) {
+            /**
+             * Get the size of a decoded image.
+             * @param index The page index
+             * @param bitmap The decoded image
+             * @return The number of bytes the image uses
+             */
+            @Override
+            protected int sizeOf(Integer index, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+        prefetchExecutor = Executors.newSingleThreadExecutor();
+        imageWidth = getResources().getDisplayMetrics().widthPixels;
+        imageHeight = getResources().getDisplayMetrics().heightPixels;
 
         pageTextView = findViewById(R.id.pageTextView);
         pageNumberTextView = findViewById(R.id.pageNumberTextView);
         pageImageView = findViewById(R.id.pageImageView);
-        gotoChoice1Button = findViewById(R.id.gotoChoice1Button);
-        gotoChoice2Button = findViewById(R.id.gotoChoice2Button);
+        choiceButtonLayout = findViewById(R.id.choiceButtonLayout);
+
+        pageImageView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+            /**
+             * Layout change listener, decodes later images for the new size of the image view.
+             */
+            @Override
+            public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                       int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                if (right > left && bottom > top) {
+                    imageWidth = right - left;
+                    imageHeight = bottom - top;
+                }
+            }
+        });
+
+        // Map the story in the background, before anything is decoded ahead on the same thread
+        final Uri uri = getIntent().getData();
+        prefetchExecutor.execute(new Runnable() {
+            /**
+             * Map the story and show its first page.
+             */
+            @Override
+            public void run() {
+                try (ParcelFileDescriptor descriptor = getContentResolver().openFileDescriptor(uri, "r");
+                     FileChannel channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel()) {
+                    final MappedStory mapped = new MappedStory(channel);
 
+                    runOnUiThread(new Runnable() {
+                        /**
+                         * Show the story.
+                         */
+                        @Override
+                        public void run() {
+                            showStory(mapped);
+                        }
+                    });
+                } catch (final IOException e) {
+                    Log.e(TAG, "Failed to open " + uri, e);
+
+                    runOnUiThread(new Runnable() {
+                        /**
+                         * Report the error.
+                         */
+                        @Override
+                        public void run() {
+                            if (!isDestroyed())
+                                showError("Failed to open storybook file");
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Show a story once it is mapped, starting at its first page.
+     * @param story The story
+     */
+    private void showStory(MappedStory story) {
+        if (isDestroyed())
+            return;
+
+        this.story = story;
         getSupportActionBar().setTitle(String.format("%s - By: %s", story.getTitle(), story.getAuthor()));
 
-        loadPage(story.turnToPage(0));
+        if (story.size() > 0)
+            loadPage(0);
+        else {
+            Toast.makeText(this, "This story has no pages", Toast.LENGTH_LONG).show();
+            finish();
+        }
+    }
+
+    /**
+     * Activity onDestroy override.
+     * Stops decoding ahead and drops the decoded images.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        prefetchExecutor.shutdownNow();
+        prefetches.clear();
+        bitmaps.evictAll();
     }
 
     /**
      * Choice button onClick handler.
-     * @param view The button that was clicked
+     * @param view The button that was clicked, tagged with the page number it turns to
      */
     public void onChoiceButtonClicked(View view) {
-        Page p = story.getPageAt(story.getCurrentPageIndex());
-        if (view == gotoChoice1Button)
-            loadPage(story.turnToPage(p.getChoice1() - 1));
-        else if (view == gotoChoice2Button)
-            loadPage(story.turnToPage(p.getChoice2() - 1));
+        if (story != null)
+            loadPage((Integer) view.getTag() - 1);
     }
 
     /**
@@ -74,38 +190,240 @@ public class StoryViewerActivity extends AppCompatActivity {
      * @param view The button that was clicked
      */
     public void onRestartButtonClicked(View view) {
-        loadPage(story.turnToPage(0));
+        if (story != null)
+            loadPage(0);
+    }
+
+    /**
+     * Turn to a page and load it onto the viewer window.
+     * @param i The index of the page to load
+     */
+    private void loadPage(final int i) {
+        final long start = SystemClock.elapsedRealtimeNanos();
+
+        try {
+            final boolean cached = loadPage(story.turnToPage(i), start);
+
+            // Report when the frame showing the page is about to be drawn
+            final ViewTreeObserver observer = pageImageView.getViewTreeObserver();
+            observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                /**
+                 * Log the time since the page was turned to, once.
+                 * @return Always true to draw the frame
+                 */
+                @Override
+                public boolean onPreDraw() {
+                    if (observer.isAlive())
+                        observer.removeOnPreDrawListener(this);
+
+                    Log.d(TAG, String.format("Page %d first frame after %.1f ms (image %s)", i + 1,
+                            (SystemClock.elapsedRealtimeNanos() - start) / 1e6, cached ? "cached" : "pending"));
+                    return true;
+                }
+            });
+
+            prefetchChoices(story.getPageAt(i));
+        } catch (UncheckedIOException e) {
+            Log.e(TAG, "Failed to read page " + (i + 1), e);
+            showError("Failed to read page " + (i + 1));
+        }
+    }
+
+    /**
+     * Show an error in place of the page, with only the restart button left to press.
+     * @param message The error to show
+     */
+    private void showError(String message) {
+        pendingImage = -1;
+        pageTextView.setText(message);
+        pageNumberTextView.setText("");
+        pageImageView.setVisibility(View.INVISIBLE);
+
+        for (Button button : choiceButtons)
+            button.setVisibility(View.GONE);
+
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
     }
 
     /**
      * Attempt to load a page onto the viewer window.
      * @param p The page to load
+     * @param start When the page was turned to, from {@link SystemClock#elapsedRealtimeNanos()}
+     * @return Whether the page's image was already decoded
      */
-    private void loadPage(Page p) {
+    private boolean loadPage(Page p, long start) {
+        boolean cached = true;
+        pendingImage = -1;
+
         // Reset visibilities
         pageImageView.setVisibility(View.VISIBLE);
-        gotoChoice1Button.setVisibility(View.VISIBLE);
-        gotoChoice2Button.setVisibility(View.VISIBLE);
 
         pageTextView.setText(p.getText());
         pageNumberTextView.setText(String.format("Page: %d", story.getCurrentPageIndex() + 1));
 
-        if (p.getImage() != null) {
-            // Decode the image and display it
-            byte[] base64 = Base64.decode(p.getImage(), Base64.DEFAULT);
-            Bitmap image = BitmapFactory.decodeByteArray(base64, 0, base64.length);
-            pageImageView.setImageBitmap(image);
+        if (p.hasImage()) {
+            int index = story.getCurrentPageIndex();
+            Bitmap image = bitmaps.get(index);
+
+            if (image != null)
+                pageImageView.setImageBitmap(image);
+            else {
+                // Show the text now, and the image once it is decoded, whether ahead of time or from now
+                cached = false;
+                pendingImage = index;
+                pendingStart = start;
+                pageImageView.setImageDrawable(null);
+                prefetch(index);
+            }
         } else
             pageImageView.setVisibility(View.INVISIBLE);
 
-        if (p.getChoice1() > 0)
-            gotoChoice1Button.setText(String.format("Turn to page: %d", p.getChoice1()));
-        else
-            gotoChoice1Button.setVisibility(View.INVISIBLE);
+        // Show a button for each valid choice, reusing the buttons of earlier pages
+        int shown = 0;
+        for (int c = 0; c < p.getChoiceCount(); c++) {
+            int choice = p.getChoice(c);
+
+            if (choice > 0 && choice <= story.size()) {
+                Button button = choiceButton(shown++);
+                button.setTag(choice);
+                button.setText(String.format("Turn to page: %d", choice));
+                button.setVisibility(View.VISIBLE);
+            }
+        }
+
+        for (int i = shown; i < choiceButtons.size(); i++)
+            choiceButtons.get(i).setVisibility(View.GONE);
+
+        return cached;
+    }
+
+    /**
+     * Get the button for a choice, adding it to the layout if there are not that many yet.
+     * @param i The index of the button
+     * @return The button
+     */
+    private Button choiceButton(int i) {
+        while (choiceButtons.size() <= i) {
+            Button button = new Button(this);
+            button.setOnClickListener(new View.OnClickListener() {
+                /**
+                 * Turn to the page of the choice.
+                 * @param view The button
+                 */
+                @Override
+                public void onClick(View view) {
+                    onChoiceButtonClicked(view);
+                }
+            });
+
+            choiceButtonLayout.addView(button, new LinearLayout.LayoutParams(
+                    LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.WRAP_CONTENT));
+            choiceButtons.add(button);
+        }
+
+        return choiceButtons.get(i);
+    }
+
+    /**
+     * Start decoding the images of the pages a page's choices turn to, and stop decoding any others.
+     * @param p The page being shown
+     */
+    private void prefetchChoices(Page p) {
+        int count = Math.min(p.getChoiceCount(), PREFETCH_CHOICES);
+
+        // Decoding can not be interrupted, but queued pages that are no longer a choice can be dropped
+        Iterator<Map.Entry<Integer, Future<Bitmap>>> it = prefetches.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Future<Bitmap>> entry = it.next();
+
+            // The image the page is waiting for is kept as well
+            boolean choice = entry.getKey() == pendingImage;
+            for (int c = 0; c < count && !choice; c++)
+                choice = entry.getKey() == p.getChoice(c) - 1;
+
+            if (!choice) {
+                entry.getValue().cancel(false);
+                it.remove();
+            }
+        }
+
+        for (int c = 0; c < count; c++)
+            prefetch(p.getChoice(c) - 1);
+    }
+
+    /**
+     * Start decoding a page's image in the background if it is not decoded yet.
+     * The image is shown once it is decoded if the viewer is still waiting for it.
+     * @param index The index of the page, may be out of bounds for no page
+     */
+    private void prefetch(final int index) {
+        if (index < 0 || index >= story.size() || bitmaps.get(index) != null || prefetches.containsKey(index))
+            return;
+
+        prefetches.put(index, prefetchExecutor.submit(new Callable<Bitmap>() {
+            /**
+             * Decode the image of the page and hand it to the UI thread.
+             * @return The decoded image, or null if the page has none or it could not be decoded
+             */
+            @Override
+            public Bitmap call() {
+                Bitmap image = null;
+
+                try {
+                    if (story.getPageAt(index).hasImage())
+                        image = decodeImage(index);
+                } catch (UncheckedIOException e) {
+                    Log.e(TAG, "Failed to read the image of page " + (index + 1), e);
+                }
 
-        if (p.getChoice2() > 0)
-            gotoChoice2Button.setText(String.format("Turn to page: %d", p.getChoice2()));
+                final Bitmap decoded = image;
+                runOnUiThread(new Runnable() {
+                    /**
+                     * Show the image if the page is still waiting for it.
+                     */
+                    @Override
+                    public void run() {
+                        imageDecoded(index, decoded);
+                    }
+                });
+
+                return image;
+            }
+        }));
+    }
+
+    /**
+     * Finish decoding a page's image on the UI thread, showing it if the page is still shown.
+     * @param index The index of the page
+     * @param image The decoded image, or null if it could not be decoded
+     */
+    private void imageDecoded(int index, Bitmap image) {
+        prefetches.remove(index);
+
+        if (isDestroyed() || index != pendingImage)
+            return;
+
+        pendingImage = -1;
+        Log.d(TAG, String.format("Page %d image after %.1f ms", index + 1,
+                (SystemClock.elapsedRealtimeNanos() - pendingStart) / 1e6));
+
+        if (image != null)
+            pageImageView.setImageBitmap(image);
         else
-            gotoChoice2Button.setVisibility(View.INVISIBLE);
+            pageImageView.setImageResource(android.R.drawable.ic_menu_report_image);
+    }
+
+    /**
+     * Decode a page's image at the size of the image view and cache it. Safe to call from any thread.
+     * @param index The index of the page
+     * @return The decoded image, or null if it could not be decoded
+     */
+    private Bitmap decodeImage(int index) {
+        Bitmap image = PageImages.decodeSampled(story.getPageAt(index).getImage(), imageWidth, imageHeight);
+
+        if (image != null)
+            bitmaps.put(index, image);
+
+        return image;
     }
 }
@@ -0,0 +1,89 @@
+package xyz.topplekek.storybook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Save and load time of stories saved with each codec.
+ * Every other page has an image in an unrecognised format, half of them
+ * compressible and half random, which the writer should store as is.
+ * The file size with each codec is printed once per trial.
+ * @since 17-10-2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class CodecBenchmark {
+    @Param({"store", "huffman", "fast", "default", "best"})
+    public String codec;
+
+    @Param({"200", "2000"})
+    public int textLength;
+
+    private Story story;
+    private byte[] bytes;
+    private File output;
+
+    /**
+     * Build the story and its file once per trial.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        story = SyntheticStories.create(1000, textLength, 16384, 2);
+
+        for (int i = 0; i < story.size(); i += 2) {
+            byte[] image = story.getPageAt(i).getImage();
+
+            // Keep the random bytes on every other image, and make the rest compressible
+            if (i % 4 == 0) {
+                for (int j = 0; j < image.length; j++)
+                    image[j] = (byte) (j % 64);
+            }
+
+            story.getPageAt(i).setImage(image, Page.IMAGE_UNKNOWN);
+        }
+
+        story.setCodec(Codec.forName(codec));
+        bytes = SyntheticStories.toBytes(story);
+        output = File.createTempFile("output", ".storybook");
+        output.deleteOnExit();
+
+        System.out.println();
+        System.out.println("File size with " + codec + ": " + bytes.length + " bytes");
+    }
+
+    /**
+     * Decode a whole story from memory.
+     */
+    @Benchmark
+    public Story load() throws IOException {
+        return new Story(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Encode a whole story to a file.
+     */
+    @Benchmark
+    public File save() throws IOException {
+        story.saveStory(new FileOutputStream(output));
+        return output;
+    }
+}
@@ -0,0 +1,65 @@
+package xyz.topplekek.storybook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Inflater;
+
+/**
+ * Throughput and latency of compressing and decompressing single page texts.
+ * @since 17-10-2026
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+    @Param({"64", "1024", "16384"})
+    public int textLength;
+
+    private byte[] text;
+    private byte[] compressed;
+    private Inflater inflater;
+
+    /**
+     * Build a page text and its compressed form.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        text = SyntheticStories.create(1, textLength, 0, 1).getPageAt(0).getText().getBytes(StoryFormat.CHARSET);
+        compressed = StoryFormat.compress(text);
+        inflater = new Inflater();
+    }
+
+    /**
+     * Release the inflater.
+     */
+    @TearDown
+    public void tearDown() {
+        inflater.end();
+    }
+
+    @Benchmark
+    public byte[] compress() throws IOException {
+        return StoryFormat.compress(text);
+    }
+
+    @Benchmark
+    public byte[] decompress() throws IOException {
+        return StoryFormat.decompress(inflater, compressed, compressed.length);
+    }
+}
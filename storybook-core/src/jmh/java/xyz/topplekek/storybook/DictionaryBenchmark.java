@@ -0,0 +1,97 @@
+package xyz.topplekek.storybook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load time and page decode time of stories saved with and without a dictionary.
+ * The dictionary is built from a different story than the one measured, and the
+ * file size of each is printed once per trial.
+ * @since 17-10-2026
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class DictionaryBenchmark {
+    private static final int PAGES = 2000;
+
+    @Param({"64", "256", "2000"})
+    public int textLength;
+
+    @Param({"false", "true"})
+    public boolean dictionary;
+
+    private byte[] bytes;
+    private byte[] text;
+    private byte[] words;
+    private PageDecoder decoder;
+
+    /**
+     * Build the story, its dictionary and its file once per trial.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        Story story = SyntheticStories.create(PAGES, textLength, 0, 1);
+
+        if (dictionary) {
+            Story corpus = SyntheticStories.create(PAGES, textLength, 0, 1, 42);
+            words = StoryDictionary.build(Collections.singletonList(corpus));
+            story.setDictionary(words);
+        }
+
+        bytes = SyntheticStories.toBytes(story);
+        System.out.println();
+        System.out.println("File size with" + (dictionary ? "" : "out") + " dictionary: " + bytes.length + " bytes");
+
+        PageEncoder encoder = new PageEncoder(words, Codec.DEFAULT);
+        PageEncoder.EncodedPage encoded = new PageEncoder.EncodedPage();
+        encoder.encode(story.getPageAt(0), encoded, true);
+        encoder.end();
+
+        text = encoded.text;
+        decoder = new PageDecoder();
+    }
+
+    /**
+     * Release the decoder.
+     */
+    @TearDown
+    public void tearDown() {
+        decoder.end();
+    }
+
+    /**
+     * Decode a whole story from memory.
+     */
+    @Benchmark
+    public Story load() throws IOException {
+        return new Story(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Decode the text of one page, as the viewer does when it turns to it.
+     */
+    @Benchmark
+    public byte[] decodeText() throws IOException {
+        return decoder.decode(text, text.length, dictionary ? StoryFormat.ENCODING_DEFLATE_DICTIONARY
+                : StoryFormat.ENCODING_ZLIB, words);
+    }
+}
@@ -0,0 +1,101 @@
+package xyz.topplekek.storybook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The work done for each keystroke typed into the editor, which has to stay far below a frame however
+ * many pages the story has, against setting the page's text on every keystroke. A burst is the keystrokes
+ * typed before the editor pauses long enough to commit them.
+ * @since 17-10-2026
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class EditorBenchmark {
+    private static final int BURST = 20;
+
+    @Param({"1000", "10000"})
+    public int pages;
+
+    private Story story;
+    private PageEdits edits;
+    private Page edited;
+    private int id;
+    private StringBuilder typed;
+    private String text;
+    private boolean flip;
+
+    /**
+     * Build the story and its text index once per trial.
+     */
+    @Setup
+    public void setUp() {
+        story = SyntheticStories.create(pages, 300, 0, 1);
+        story.getTextIndex();
+        edits = new PageEdits();
+        edited = story.getPageAt(pages / 2);
+        id = edited.getId();
+        text = edited.getText();
+        typed = new StringBuilder(text);
+    }
+
+    /**
+     * Record one keystroke, as the editor's text watcher does.
+     */
+    @Benchmark
+    public void keystroke() {
+        typed.append('a');
+        edits.setText(id, typed);
+
+        // Keep the text from growing without committing it
+        if (typed.length() > text.length() + BURST)
+            typed.setLength(text.length());
+    }
+
+    /**
+     * Record a burst of keystrokes and a choice, then commit them to the story.
+     * @return The pages whose choices changed
+     */
+    @Benchmark
+    public int[] burstThenCommit() {
+        typed.setLength(text.length());
+
+        // Type something different each time, so the text really changes
+        flip = !flip;
+        for (int i = 0; i < BURST; i++) {
+            typed.append(flip ? 'a' : 'b');
+            edits.setText(id, typed);
+        }
+
+        edits.setChoice1(id, edited.getChoice1() == 1 ? "2" : "1");
+        return edits.commit(story);
+    }
+
+    /**
+     * Set the page's text on every keystroke of a burst, updating the text index each time.
+     */
+    @Benchmark
+    public void burstSettingText() {
+        typed.setLength(text.length());
+
+        for (int i = 0; i < BURST; i++) {
+            typed.append('a');
+            edited.setText(typed.toString());
+        }
+    }
+}
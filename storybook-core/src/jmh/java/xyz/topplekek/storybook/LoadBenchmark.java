@@ -0,0 +1,55 @@
+package xyz.topplekek.storybook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load a whole story from a file stream, as the apps do, so the cost of the reads
+ * themselves is measured along with decoding. Stories have short text and an image every 4 pages.
+ * @since 17-10-2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class LoadBenchmark {
+    @Param({"1000", "10000", "65535"})
+    public int pages;
+
+    private File file;
+
+    /**
+     * Save the story once per trial.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        file = SyntheticStories.save(SyntheticStories.create(pages, 200, 4096, 4));
+    }
+
+    /**
+     * Load the story from an unbuffered file stream.
+     * @return The story
+     */
+    @Benchmark
+    public Story load() throws IOException {
+        try (FileInputStream input = new FileInputStream(file)) {
+            return new Story(input);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package xyz.topplekek.storybook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Save and load throughput with pages compressed on 1, 2, 4 and 8 threads, against the
+ * serial codec as 0 threads. Images are left unknown so they are deflated like the text.
+ * @since 17-10-2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class ParallelCodecBenchmark {
+    @Param({"0", "1", "2", "4", "8"})
+    public int threads;
+
+    private Story story;
+    private byte[] bytes;
+    private File output;
+    private ExecutorService executor;
+
+    /**
+     * Build a 10,000 page story with a compressible 20 KB image on every other page.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        story = SyntheticStories.create(10000, 1000, 0, 1);
+
+        byte[] image = new byte[20 * 1024];
+        for (int i = 0; i < image.length; i++)
+            image[i] = (byte) (i % 64);
+
+        for (int i = 0; i < story.size(); i += 2)
+            story.getPageAt(i).setImage(image, Page.IMAGE_UNKNOWN);
+
+        bytes = SyntheticStories.toBytes(story);
+        output = File.createTempFile("output", ".storybook");
+        output.deleteOnExit();
+        executor = threads > 0 ? Executors.newFixedThreadPool(threads) : null;
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    @TearDown
+    public void tearDown() {
+        if (executor != null)
+            executor.shutdown();
+    }
+
+    /**
+     * Load the whole story from memory.
+     * @return The story
+     */
+    @Benchmark
+    public Story load() throws IOException {
+        return new Story(new ByteArrayInputStream(bytes), executor);
+    }
+
+    /**
+     * Save the whole story to a file.
+     * @return The file
+     */
+    @Benchmark
+    public File save() throws IOException {
+        story.saveStory(new FileOutputStream(output), executor);
+        return output;
+    }
+}
@@ -0,0 +1,88 @@
+package xyz.topplekek.storybook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and garbage of saving a story of 10,000 pages, half of them with an image of 20 to 40 KB.
+ * PNG images are stored as is, so saving them costs little more than the checksums, while images
+ * of unknown type are deflated. Run with the gc profiler (the default in build.gradle) for the
+ * garbage each save makes.
+ * @since 17-10-2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class SaveBenchmark {
+    private static final int PAGES = 10000;
+
+    @Param({"png", "unknown"})
+    public String imageType;
+
+    private Story story;
+    private byte[][] images;
+    private File output;
+
+    /**
+     * Build the story once per trial.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(PAGES);
+        story = SyntheticStories.create(PAGES, 200, 0, 1);
+        images = new byte[PAGES / 2][];
+
+        for (int i = 0; i < images.length; i++) {
+            images[i] = new byte[20 * 1024 + random.nextInt(20 * 1024)];
+            random.nextBytes(images[i]);
+            story.getPageAt(i * 2).setImage(images[i], imageType.equals("png") ? Page.IMAGE_PNG : Page.IMAGE_UNKNOWN);
+        }
+
+        output = File.createTempFile("output", ".storybook");
+        output.deleteOnExit();
+    }
+
+    /**
+     * Save the whole story to a file.
+     * @return The file
+     */
+    @Benchmark
+    public File save() throws IOException {
+        story.saveStory(new FileOutputStream(output));
+        return output;
+    }
+
+    /**
+     * Checksum every image, the part of saving a story of PNG images that is not writing.
+     * @return The last checksum
+     */
+    @Benchmark
+    public long checksumImages() {
+        Crc32c crc = new Crc32c();
+
+        for (byte[] image : images) {
+            crc.reset();
+            crc.update(image, 0, image.length);
+        }
+
+        return crc.getValue();
+    }
+}
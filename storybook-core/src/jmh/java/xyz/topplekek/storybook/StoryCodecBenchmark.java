@@ -0,0 +1,97 @@
+package xyz.topplekek.storybook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load and save throughput and latency of whole stories.
+ * Run with the gc profiler (the default in build.gradle) for allocation rates.
+ * @since 17-10-2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class StoryCodecBenchmark {
+    @Param({"1000", "10000", "65535"})
+    public int pages;
+
+    @Param({"200", "2000"})
+    public int textLength;
+
+    @Param({"0", "16384"})
+    public int imageLength;
+
+    private Story story;
+    private byte[] bytes;
+    private File file;
+    private File output;
+
+    /**
+     * Build the story and its file once per trial.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        story = SyntheticStories.create(pages, textLength, imageLength, 8);
+        file = SyntheticStories.save(story);
+        bytes = SyntheticStories.toBytes(story);
+        output = File.createTempFile("output", ".storybook");
+        output.deleteOnExit();
+    }
+
+    /**
+     * Decode a whole story from memory, so only the codec is measured.
+     */
+    @Benchmark
+    public Story load() throws IOException {
+        return new Story(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Encode a whole story to a file.
+     */
+    @Benchmark
+    public File save() throws IOException {
+        story.saveStory(new FileOutputStream(output));
+        return output;
+    }
+
+    /**
+     * Map a story and read its page directory.
+     */
+    @Benchmark
+    public MappedStory openMapped() throws IOException {
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            return new MappedStory(channel);
+        }
+    }
+
+    /**
+     * Map a story and show its first page, as the viewer does when it opens.
+     */
+    @Benchmark
+    public String openMappedFirstPage() throws IOException {
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            return new MappedStory(channel).turnToPage(0).getText();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package xyz.topplekek.storybook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Generates deterministic stories for the benchmarks.
+ * @since 17-10-2026
+ */
+final class SyntheticStories {
+    private static final String[] WORDS = {
+        "the", "hero", "walks", "down", "a", "long", "corridor", "and", "finds", "two", "doors",
+        "dragon", "sleeps", "beneath", "castle", "gold", "river", "forest", "lantern", "whispers",
+        "north", "stairs", "locked", "key", "map", "storm", "village", "you", "open", "run"
+    };
+
+    private SyntheticStories() {}
+
+    /**
+     * Create a story.
+     * @param numPages The number of pages
+     * @param textLength The approximate length of each page's text
+     * @param imageLength The length of each image, 0 for no images
+     * @param imageEvery How often a page has an image, 1 for every page
+     * @return The story
+     */
+    static Story create(int numPages, int textLength, int imageLength, int imageEvery) {
+        return create(numPages, textLength, imageLength, imageEvery, numPages * 31L + textLength);
+    }
+
+    /**
+     * Create a story from a given seed, such as a different story to train a dictionary on.
+     * @param numPages The number of pages
+     * @param textLength The approximate length of each page's text
+     * @param imageLength The length of each image, 0 for no images
+     * @param imageEvery How often a page has an image, 1 for every page
+     * @param seed The seed of the random text, images and choices
+     * @return The story
+     */
+    static Story create(int numPages, int textLength, int imageLength, int imageEvery, long seed) {
+        Random random = new Random(seed);
+        Story story = new Story("Synthetic story", "Benchmark");
+        StringBuilder text = new StringBuilder(textLength + 16);
+
+        for (int i = 0; i < numPages; i++) {
+            text.setLength(0);
+            while (text.length() < textLength)
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+
+            byte[] image = null;
+            if (imageLength > 0 && i % imageEvery == 0) {
+                // Random bytes behind a PNG signature, as incompressible as a real PNG
+                image = new byte[imageLength];
+                random.nextBytes(image);
+                image[0] = (byte) 0x89;
+                image[1] = 'P';
+                image[2] = 'N';
+                image[3] = 'G';
+            }
+
+            story.addPage(new Page(text.toString(), image, image == null ? Page.IMAGE_UNKNOWN : Page.IMAGE_PNG,
+                    1 + random.nextInt(numPages), random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(numPages)));
+        }
+
+        return story;
+    }
+
+    /**
+     * Save a story to a temporary file that is deleted on exit.
+     * @param story The story
+     * @return The file
+     */
+    static File save(Story story) throws IOException {
+        File file = File.createTempFile("synthetic", ".storybook");
+        file.deleteOnExit();
+        story.saveStory(new FileOutputStream(file));
+        return file;
+    }
+
+    /**
+     * Save a story and read the file back into memory.
+     * @param story The story
+     * @return The bytes of the file
+     */
+    static byte[] toBytes(Story story) throws IOException {
+        return Files.readAllBytes(save(story).toPath());
+    }
+}
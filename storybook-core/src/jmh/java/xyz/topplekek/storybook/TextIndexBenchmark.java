@@ -0,0 +1,97 @@
+package xyz.topplekek.storybook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches of the text index of a long story, and the cost of keeping it up to date as a page is edited.
+ * Every page mentions one of a few thousand characters, so a character's name is on a few dozen
+ * pages, while the common words of the synthetic text are on most of them.
+ * @since 17-10-2026
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class TextIndexBenchmark {
+    private static final int PAGES = 50000;
+    private static final int CHARACTERS = 2000;
+
+    private Story story;
+    private StoryIndex index;
+    private Page edited;
+    private String text, changed;
+
+    /**
+     * Build the story and its index once per trial.
+     */
+    @Setup
+    public void setUp() {
+        story = SyntheticStories.create(PAGES, 300, 0, 1);
+        Random random = new Random(PAGES);
+
+        for (int i = 0; i < story.size(); i++) {
+            Page p = story.getPageAt(i);
+            p.setText(p.getText() + " Character" + random.nextInt(CHARACTERS));
+        }
+
+        index = story.getTextIndex();
+        edited = story.getPageAt(PAGES / 2);
+        text = edited.getText();
+        changed = text + " Character" + CHARACTERS;
+    }
+
+    /**
+     * Find the pages that mention a character.
+     */
+    @Benchmark
+    public int[] findName() {
+        return index.find("Character17");
+    }
+
+    /**
+     * Find the pages with a word starting with a prefix, as the last word of a query being typed.
+     */
+    @Benchmark
+    public int[] searchPrefix() {
+        return index.search("Character12");
+    }
+
+    /**
+     * Find the pages that mention a character and a common word.
+     */
+    @Benchmark
+    public int[] searchNameAndWord() {
+        return index.search("Character17 dragon ");
+    }
+
+    /**
+     * Find the pages with a word on most pages.
+     */
+    @Benchmark
+    public int[] findCommonWord() {
+        return index.find("dragon");
+    }
+
+    /**
+     * Add a word to a page and take it away again, updating the index both times.
+     */
+    @Benchmark
+    public void setText() {
+        edited.setText(changed);
+        edited.setText(text);
+    }
+}
@@ -0,0 +1,189 @@
+package xyz.topplekek.storybook;
+
+/**
+ * Keeps track of which of the first two choices of each page of a story, the ones the editor shows,
+ * turn to a page that does not exist, as the story is edited.
+ * A choice is valid if it is 0 for no choice, or the number of a page in the story.
+ * Only the pages with an invalid choice are kept, by page ID so they stay put as the page order changes.
+ * Inserting, removing and moving pages renumbers choices without changing whether they are valid,
+ * as choices past the end of the story are renumbered too, and choices turning to a removed page are cleared.
+ * Adding a page to the end only checks the pages the story's reverse link index has turning to it,
+ * and a change to a page's choices only checks that page.
+ * @since 17-10-2026
+ */
+public class ChoiceValidator {
+    /**
+     * Listener for pages whose choices became valid or invalid because of a change to another page.
+     */
+    public interface Listener {
+        /**
+         * Called when the validity of a page's choices changed.
+         * @param index The index of the page
+         */
+        void onValidityChanged(int index);
+    }
+
+    // Flags of the invalid choices of a page
+    private static final int INVALID_1 = 1;
+    private static final int INVALID_2 = 2;
+
+    private final Story story;
+    private int invalidCount;
+    private Listener listener;
+
+    // The invalid choices of each page with any, by its ID
+    private final IntIntMap invalid = new IntIntMap(16);
+
+    /**
+     * Construct a new validator for the choices of a story.
+     * @param story The story
+     */
+    public ChoiceValidator(Story story) {
+        this.story = story;
+
+        for (int i = 0; i < story.size(); i++)
+            check(story.getPageAt(i));
+    }
+
+    /**
+     * Set the listener for pages whose validity changes because pages were added.
+     * @param listener The listener, or null for none
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Check a page again after its choices changed. Only that page's validity can change.
+     * @param index The index of the page
+     */
+    public void choicesChanged(int index) {
+        checkIndex(index);
+        check(story.getPageAt(index));
+    }
+
+    /**
+     * Check a page added to the end of the story. Pages with a choice turning to it become valid,
+     * and are passed to the listener. When several pages are added at once, each is passed in turn.
+     * @param index The index of the page
+     */
+    public void pageAdded(int index) {
+        checkIndex(index);
+        check(story.getPageAt(index));
+        int number = index + 1;
+
+        PageLinks links = story.links();
+        Page[] sources = links.sources(number);
+
+        // A page with both choices turning to the new page is listed twice, but only changes once
+        for (int i = 0; i < links.count(number); i++) {
+            if (check(sources[i]))
+                changed(sources[i].index);
+        }
+    }
+
+    /**
+     * Check a page just inserted into the story. Choices turning to the pages after it are renumbered
+     * along with those turning past the end of the story, so no other page's validity changes.
+     * @param index The index of the page
+     */
+    public void pageInserted(int index) {
+        checkIndex(index);
+        check(story.getPageAt(index));
+    }
+
+    /**
+     * Forget a page just removed from the story. Choices turning to it are cleared, which were
+     * already valid, so no other page's validity changes.
+     * @param p The removed page
+     */
+    public void pageRemoved(Page p) {
+        invalidCount -= Integer.bitCount(invalid.get(p.getId(), 0));
+        invalid.remove(p.getId());
+    }
+
+    /**
+     * Get the number of pages.
+     * @return The number of pages
+     */
+    public int size() {
+        return story.size();
+    }
+
+    /**
+     * Check whether a page's 1st choice turns to a page in the story.
+     * @param index The index of the page
+     * @return Whether the choice is valid
+     */
+    public boolean isChoice1Valid(int index) {
+        checkIndex(index);
+        return (invalid.get(story.getPageAt(index).getId(), 0) & INVALID_1) == 0;
+    }
+
+    /**
+     * Check whether a page's 2nd choice turns to a page in the story.
+     * @param index The index of the page
+     * @return Whether the choice is valid
+     */
+    public boolean isChoice2Valid(int index) {
+        checkIndex(index);
+        return (invalid.get(story.getPageAt(index).getId(), 0) & INVALID_2) == 0;
+    }
+
+    /**
+     * Get the number of choices in the story that turn to a page that does not exist.
+     * @return The number of invalid choices
+     */
+    public int getInvalidCount() {
+        return invalidCount;
+    }
+
+    /**
+     * Check whether a choice turns to a page in the story.
+     * @param choice The 1-based page number, or 0 for none
+     * @return Whether the choice is valid
+     */
+    private boolean isValid(int choice) {
+        return choice >= 0 && choice <= story.size();
+    }
+
+    /**
+     * Check the first two choices of a page, and remember them if any are invalid.
+     * @param p The page
+     * @return Whether the validity of the page's choices changed
+     */
+    private boolean check(Page p) {
+        int flags = (isValid(p.getChoice1()) ? 0 : INVALID_1) | (isValid(p.getChoice2()) ? 0 : INVALID_2);
+        int old = invalid.get(p.getId(), 0);
+
+        if (flags == old)
+            return false;
+
+        invalidCount += Integer.bitCount(flags) - Integer.bitCount(old);
+
+        if (flags == 0)
+            invalid.remove(p.getId());
+        else
+            invalid.put(p.getId(), flags);
+
+        return true;
+    }
+
+    /**
+     * Pass a page whose validity changed to the listener.
+     * @param index The index of the page
+     */
+    private void changed(int index) {
+        if (listener != null)
+            listener.onValidityChanged(index);
+    }
+
+    /**
+     * Check that a page index is in the story.
+     * @param index The index of the page
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= story.size())
+            throw new IndexOutOfBoundsException("Page " + index + " of " + story.size());
+    }
+}
@@ -0,0 +1,152 @@
+package xyz.topplekek.storybook;
+
+import java.io.IOException;
+
+/**
+ * How a story compresses page payloads when it is saved, trading save speed for file size.
+ * Every payload records the ID of the codec it was written with, and readers find the codec
+ * to decode it with by that ID, so files saved with any registered codec are read the same way.
+ * Payloads that do not get smaller are stored as is. Codecs that can read each other's payloads,
+ * such as the deflate levels, share an ID, and only one of them is registered for it.
+ * @since 17-10-2026
+ */
+public interface Codec {
+    /**
+     * Store every payload as is. The fastest to save and the largest files.
+     */
+    Codec STORE = CodecRegistry.STORE;
+
+    /**
+     * Deflate with Huffman coding only, without looking for repeats. Only worth it for payloads
+     * with few repeats but some bytes much more common than others, {@link #FAST} is usually better.
+     */
+    Codec HUFFMAN = CodecRegistry.HUFFMAN;
+
+    /**
+     * Deflate at the fastest level.
+     */
+    Codec FAST = CodecRegistry.FAST;
+
+    /**
+     * Deflate at the default level, which is what stories are saved with unless told otherwise.
+     */
+    Codec DEFAULT = CodecRegistry.DEFAULT;
+
+    /**
+     * Deflate at the smallest, slowest level.
+     */
+    Codec BEST = CodecRegistry.BEST;
+
+    /**
+     * Compresses payloads. An encoder may reuse native state between payloads,
+     * so it must only be used by one thread at a time.
+     */
+    interface Encoder {
+        /**
+         * Get the ID recorded with the payloads this encoder writes.
+         * @return The ID, which may differ from its codec's if it compresses with a dictionary
+         */
+        int getId();
+
+        /**
+         * Compress part of an array into the start of another, giving up once it would not fit.
+         * @param data The data to compress
+         * @param off The offset to start at
+         * @param len The number of bytes to compress
+         * @param output The array to compress into
+         * @return The compressed length, or -1 if it would be longer than {@code output}
+         */
+        int encode(byte[] data, int off, int len, byte[] output);
+
+        /**
+         * Release any native state. The encoder cannot be used afterwards.
+         */
+        void end();
+    }
+
+    /**
+     * Decompresses payloads. A decoder may reuse native state between payloads,
+     * so it must only be used by one thread at a time.
+     */
+    interface Decoder {
+        /**
+         * Decode the start of a payload array.
+         * @param data The payload
+         * @param length The number of bytes of {@code data} in the payload
+         * @param dictionary The dictionary of the file the payload is from, or null if it has none
+         * @return The decoded bytes, which may be {@code data} itself if it needed no decoding
+         * @throws IOException If the payload is corrupt, or needs a dictionary the file does not have
+         */
+        byte[] decode(byte[] data, int length, byte[] dictionary) throws IOException;
+
+        /**
+         * Release any native state. The decoder cannot be used afterwards.
+         */
+        void end();
+    }
+
+    /**
+     * Get the ID recorded with the payloads this codec writes, which readers find it by.
+     * @return The ID, from 0 to 255
+     */
+    int getId();
+
+    /**
+     * Get the name of this codec.
+     * @return The name, which {@link #forName(String)} accepts if the codec is registered
+     */
+    String getName();
+
+    /**
+     * Make an encoder for payloads.
+     * @param dictionary The dictionary to compress page text with, or null for none. Codecs that
+     *                   cannot use one ignore it, and encoders that do write a different ID
+     * @return The encoder
+     */
+    Encoder newEncoder(byte[] dictionary);
+
+    /**
+     * Make a decoder for payloads with this codec's ID.
+     * @return The decoder
+     */
+    Decoder newDecoder();
+
+    /**
+     * Get a codec that deflates at a level.
+     * @param level The level, from 1 for the fastest to 9 for the smallest, or -1 for the default
+     * @return The codec
+     * @throws IllegalArgumentException If the level is invalid
+     */
+    static Codec deflate(int level) {
+        return DeflateCodec.withLevel(level);
+    }
+
+    /**
+     * Get a codec by its name.
+     * @param name One of {@code store}, {@code huffman}, {@code fast}, {@code default}, {@code best},
+     *             {@code deflate} followed by a level from 1 to 9, or the name of a registered codec
+     * @return The codec
+     * @throws IllegalArgumentException If there is no codec with that name
+     */
+    static Codec forName(String name) {
+        return CodecRegistry.forName(name);
+    }
+
+    /**
+     * Get the codec that decodes payloads with an ID.
+     * @param id The ID recorded with the payload
+     * @return The codec, or null if none is registered for the ID
+     */
+    static Codec forId(int id) {
+        return CodecRegistry.forId(id);
+    }
+
+    /**
+     * Register a codec, so stories can be saved with it by name and payloads it wrote can be read.
+     * @param codec The codec
+     * @throws IllegalArgumentException If its ID is out of range, or its ID or name is already registered
+     */
+    static void register(Codec codec) {
+        CodecRegistry.register(codec);
+    }
+}
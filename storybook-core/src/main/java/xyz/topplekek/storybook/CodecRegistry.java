@@ -0,0 +1,240 @@
+package xyz.topplekek.storybook;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+
+/**
+ * The codecs that payloads are decoded with by ID, and that stories can be saved with by name.
+ * The built in codecs are registered when the class is loaded, others through {@link Codec#register(Codec)}.
+ * @since 17-10-2026
+ */
+final class CodecRegistry {
+    static final Codec STORE = new Codec() {
+        /**
+         * Get the ID of stored payloads.
+         * @return The ID
+         */
+        @Override
+        public int getId() {
+            return StoryFormat.ENCODING_NONE;
+        }
+
+        /**
+         * Get the name of this codec.
+         * @return The name
+         */
+        @Override
+        public String getName() {
+            return "store";
+        }
+
+        /**
+         * Make an encoder that never makes a payload smaller, so every payload is stored as is.
+         * @param dictionary Ignored
+         * @return The encoder
+         */
+        @Override
+        public Encoder newEncoder(byte[] dictionary) {
+            return new Encoder() {
+                /**
+                 * Get the ID of stored payloads.
+                 * @return The ID
+                 */
+                @Override
+                public int getId() {
+                    return StoryFormat.ENCODING_NONE;
+                }
+
+                /**
+                 * Leave a payload as is.
+                 * @return Always -1, as the payload is not made smaller
+                 */
+                @Override
+                public int encode(byte[] data, int off, int len, byte[] output) {
+                    return -1;
+                }
+
+                /**
+                 * Nothing to release.
+                 */
+                @Override
+                public void end() {}
+            };
+        }
+
+        /**
+         * Make a decoder that returns payloads as they are.
+         * @return The decoder
+         */
+        @Override
+        public Decoder newDecoder() {
+            return new Decoder() {
+                /**
+                 * Get the bytes of a stored payload.
+                 * @param data The payload
+                 * @param length The number of bytes of {@code data} in the payload
+                 * @param dictionary Ignored
+                 * @return {@code data} if it is all payload, otherwise a copy of the payload
+                 */
+                @Override
+                public byte[] decode(byte[] data, int length, byte[] dictionary) {
+                    return length == data.length ? data : Arrays.copyOf(data, length);
+                }
+
+                /**
+                 * Nothing to release.
+                 */
+                @Override
+                public void end() {}
+            };
+        }
+
+        /**
+         * Get the name of this codec.
+         * @return The name, which {@link Codec#forName(String)} accepts
+         */
+        @Override
+        public String toString() {
+            return getName();
+        }
+    };
+
+    static final Codec HUFFMAN = new DeflateCodec("huffman", Deflater.DEFAULT_COMPRESSION, Deflater.HUFFMAN_ONLY, false);
+    static final Codec FAST = DeflateCodec.withLevel(Deflater.BEST_SPEED);
+    static final Codec DEFAULT = DeflateCodec.withLevel(Deflater.DEFAULT_COMPRESSION);
+    static final Codec BEST = DeflateCodec.withLevel(Deflater.BEST_COMPRESSION);
+
+    // Page text compressed with the story's dictionary, which any deflate codec writes for stories with one
+    private static final Codec DICTIONARY = new DeflateCodec("dictionary", Deflater.DEFAULT_COMPRESSION,
+            Deflater.DEFAULT_STRATEGY, true);
+
+    // Version 1 images, ZLIB compressed base64 strings. Only read, and only given this ID in memory
+    private static final Codec ZLIB_BASE64 = new Codec() {
+        /**
+         * Get the ID version 1 images are given in memory.
+         * @return The ID
+         */
+        @Override
+        public int getId() {
+            return StoryFormat.ENCODING_ZLIB_BASE64;
+        }
+
+        /**
+         * Get the name of this codec.
+         * @return The name
+         */
+        @Override
+        public String getName() {
+            return "zlib-base64";
+        }
+
+        /**
+         * Version 1 images are always saved in a later encoding.
+         * @param dictionary Ignored
+         * @return Never
+         * @throws UnsupportedOperationException Always
+         */
+        @Override
+        public Encoder newEncoder(byte[] dictionary) {
+            throw new UnsupportedOperationException("Version 1 images are only read");
+        }
+
+        /**
+         * Make a decoder that inflates a base64 string and decodes it.
+         * @return The decoder
+         */
+        @Override
+        public Decoder newDecoder() {
+            final Decoder zlib = DEFAULT.newDecoder();
+
+            return new Decoder() {
+                /**
+                 * Inflate and decode the start of a payload array.
+                 * @param data The payload
+                 * @param length The number of bytes of {@code data} in the payload
+                 * @param dictionary Ignored
+                 * @return The decoded bytes
+                 */
+                @Override
+                public byte[] decode(byte[] data, int length, byte[] dictionary) throws IOException {
+                    return Base64.getMimeDecoder().decode(zlib.decode(data, length, null));
+                }
+
+                /**
+                 * Release the inflater.
+                 */
+                @Override
+                public void end() {
+                    zlib.end();
+                }
+            };
+        }
+    };
+
+    // The IDs recorded with payloads, and the names of the codecs to save with
+    private static final int MAX_ID = 255;
+    private static final Map<Integer, Codec> byId = new ConcurrentHashMap<>();
+    private static final Map<String, Codec> byName = new ConcurrentHashMap<>();
+
+    static {
+        for (Codec codec : new Codec[] {STORE, DEFAULT, DICTIONARY, ZLIB_BASE64})
+            byId.put(codec.getId(), codec);
+
+        for (Codec codec : new Codec[] {STORE, HUFFMAN, FAST, DEFAULT, BEST})
+            byName.put(codec.getName(), codec);
+
+        for (int level = Deflater.BEST_SPEED; level <= Deflater.BEST_COMPRESSION; level++) {
+            byName.put("deflate" + level, level == Deflater.BEST_SPEED ? FAST
+                    : level == Deflater.BEST_COMPRESSION ? BEST : DeflateCodec.withLevel(level));
+        }
+    }
+
+    private CodecRegistry() {}
+
+    /**
+     * Get a codec by its name.
+     * @param name The name
+     * @return The codec
+     * @throws IllegalArgumentException If there is no codec with that name
+     */
+    static Codec forName(String name) {
+        Codec codec = byName.get(name);
+
+        if (codec == null)
+            throw new IllegalArgumentException("Unknown codec: " + name);
+
+        return codec;
+    }
+
+    /**
+     * Get the codec that decodes payloads with an ID.
+     * @param id The ID
+     * @return The codec, or null if none is registered for the ID
+     */
+    static Codec forId(int id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Register a codec by its ID and name.
+     * @param codec The codec
+     * @throws IllegalArgumentException If its ID is out of range, or its ID or name is already registered
+     */
+    static synchronized void register(Codec codec) {
+        int id = codec.getId();
+
+        if (id < 0 || id > MAX_ID)
+            throw new IllegalArgumentException("Codec IDs are from 0 to " + MAX_ID + ": " + id);
+        else if (byId.containsKey(id))
+            throw new IllegalArgumentException("Codec ID " + id + " is already registered");
+        else if (byName.containsKey(codec.getName()))
+            throw new IllegalArgumentException("Codec " + codec.getName() + " is already registered");
+
+        byId.put(id, codec);
+        byName.put(codec.getName(), codec);
+    }
+}
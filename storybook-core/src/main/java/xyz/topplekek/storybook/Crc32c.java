@@ -0,0 +1,118 @@
+package xyz.topplekek.storybook;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C (Castagnoli) checksum, used for the section and page checksums in .storybook files.
+ * Arrays are processed 8 bytes at a time with the slicing-by-8 tables.
+ * @since 17-10-2026
+ */
+final class Crc32c implements Checksum {
+    private static final int[] TABLE = new int[8 * 256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+
+            for (int bit = 0; bit < 8; bit++)
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x82F63B78 : crc >>> 1;
+
+            TABLE[i] = crc;
+        }
+
+        // Table k holds the checksum of a byte followed by k zero bytes
+        for (int i = 256; i < TABLE.length; i++)
+            TABLE[i] = (TABLE[i - 256] >>> 8) ^ TABLE[TABLE[i - 256] & 0xFF];
+    }
+
+    private int crc = 0xFFFFFFFF;
+
+    /**
+     * Update the checksum with a byte.
+     * @param b The byte
+     */
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+    }
+
+    /**
+     * Update the checksum with part of an array.
+     * @param b The array
+     * @param off The offset to start at
+     * @param len The number of bytes
+     */
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int c = crc;
+        int end = off + len;
+        int i = off;
+
+        for (; i + 8 <= end; i += 8) {
+            int low = c ^ ((b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24);
+
+            c = TABLE[7 * 256 + (low & 0xFF)] ^
+                TABLE[6 * 256 + ((low >>> 8) & 0xFF)] ^
+                TABLE[5 * 256 + ((low >>> 16) & 0xFF)] ^
+                TABLE[4 * 256 + (low >>> 24)] ^
+                TABLE[3 * 256 + (b[i + 4] & 0xFF)] ^
+                TABLE[2 * 256 + (b[i + 5] & 0xFF)] ^
+                TABLE[256 + (b[i + 6] & 0xFF)] ^
+                TABLE[b[i + 7] & 0xFF];
+        }
+
+        for (; i < end; i++)
+            c = (c >>> 8) ^ TABLE[(c ^ b[i]) & 0xFF];
+
+        crc = c;
+    }
+
+    /**
+     * Update the checksum with the remaining bytes of a buffer, consuming them.
+     * @param buffer The buffer
+     */
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+
+        byte[] chunk = new byte[Math.min(buffer.remaining(), 8192)];
+
+        while (buffer.hasRemaining()) {
+            int n = Math.min(buffer.remaining(), chunk.length);
+            buffer.get(chunk, 0, n);
+            update(chunk, 0, n);
+        }
+    }
+
+    /**
+     * Get the checksum of everything since the last reset.
+     * @return The checksum as an unsigned 32 bit value
+     */
+    @Override
+    public long getValue() {
+        return ~crc & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Reset the checksum to its initial state.
+     */
+    @Override
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+
+    /**
+     * Compute the checksum of the remaining bytes of a buffer without consuming them.
+     * @param buffer The buffer
+     * @return The checksum as a 32 bit value
+     */
+    static int of(ByteBuffer buffer) {
+        Crc32c crc = new Crc32c();
+        crc.update(buffer.duplicate());
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,174 @@
+package xyz.topplekek.storybook;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codecs that deflate payloads as ZLIB streams at a level and strategy, and as raw deflate
+ * with a preset dictionary for page text when the story has a dictionary.
+ * @since 17-10-2026
+ */
+final class DeflateCodec implements Codec {
+    private final String name;
+    private final int level;
+    private final int strategy;
+
+    // Whether payloads are raw deflate with a dictionary rather than ZLIB streams
+    private final boolean raw;
+
+    /**
+     * Construct a new codec.
+     * @param name The name of the codec
+     * @param level The deflate level
+     * @param strategy The deflate strategy
+     * @param raw Whether every payload is raw deflate with a dictionary, rather than only text of stories with one
+     */
+    DeflateCodec(String name, int level, int strategy, boolean raw) {
+        this.name = name;
+        this.level = level;
+        this.strategy = strategy;
+        this.raw = raw;
+    }
+
+    /**
+     * Get a codec that deflates at a level.
+     * @param level The level, from 1 for the fastest to 9 for the smallest, or -1 for the default
+     * @return The codec
+     * @throws IllegalArgumentException If the level is invalid
+     */
+    static DeflateCodec withLevel(int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION))
+            throw new IllegalArgumentException("Invalid deflate level: " + level);
+
+        String name = level == Deflater.DEFAULT_COMPRESSION ? "default" : level == Deflater.BEST_SPEED ? "fast"
+                : level == Deflater.BEST_COMPRESSION ? "best" : "deflate" + level;
+
+        return new DeflateCodec(name, level, Deflater.DEFAULT_STRATEGY, false);
+    }
+
+    /**
+     * Get the ID recorded with the payloads this codec writes without a dictionary.
+     * @return The ID
+     */
+    @Override
+    public int getId() {
+        return raw ? StoryFormat.ENCODING_DEFLATE_DICTIONARY : StoryFormat.ENCODING_ZLIB;
+    }
+
+    /**
+     * Get the name of this codec.
+     * @return The name
+     */
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Make a deflater at this codec's level and strategy, raw with the dictionary if there is one.
+     * @param dictionary The dictionary to compress with, or null for none
+     * @return The encoder
+     * @throws IllegalArgumentException If this codec needs a dictionary and there is none
+     */
+    @Override
+    public Encoder newEncoder(final byte[] dictionary) {
+        if (raw && dictionary == null)
+            throw new IllegalArgumentException("The " + name + " codec needs a dictionary");
+
+        final Deflater deflater = new Deflater(level, dictionary != null);
+        deflater.setStrategy(strategy);
+
+        return new Encoder() {
+            /**
+             * Get the ID recorded with the payloads this encoder writes.
+             * @return The ID
+             */
+            @Override
+            public int getId() {
+                return dictionary != null ? StoryFormat.ENCODING_DEFLATE_DICTIONARY : StoryFormat.ENCODING_ZLIB;
+            }
+
+            /**
+             * Deflate part of an array, stopping once the output is full.
+             * @param data The data to compress
+             * @param off The offset to start at
+             * @param len The number of bytes to compress
+             * @param output The array to compress into
+             * @return The compressed length, or -1 if it would be longer than {@code output}
+             */
+            @Override
+            public int encode(byte[] data, int off, int len, byte[] output) {
+                deflater.reset();
+                if (dictionary != null)
+                    deflater.setDictionary(dictionary);
+
+                deflater.setInput(data, off, len);
+                deflater.finish();
+
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == output.length)
+                        return -1;
+
+                    length += deflater.deflate(output, length, output.length - length);
+                }
+
+                return length;
+            }
+
+            /**
+             * Release the deflater.
+             */
+            @Override
+            public void end() {
+                deflater.end();
+            }
+        };
+    }
+
+    /**
+     * Make an inflater for this codec's payloads.
+     * @return The decoder
+     */
+    @Override
+    public Decoder newDecoder() {
+        final Inflater inflater = new Inflater(raw);
+
+        return new Decoder() {
+            /**
+             * Inflate the start of a payload array.
+             * @param data The payload
+             * @param length The number of bytes of {@code data} in the payload
+             * @param dictionary The dictionary of the file the payload is from, or null if it has none
+             * @return The decoded bytes
+             */
+            @Override
+            public byte[] decode(byte[] data, int length, byte[] dictionary) throws IOException {
+                if (!raw)
+                    return StoryFormat.decompress(inflater, data, length);
+                else if (dictionary == null)
+                    throw new IOException("Payload needs a dictionary, but the file has none");
+
+                return StoryFormat.decompress(inflater, data, length, dictionary);
+            }
+
+            /**
+             * Release the inflater.
+             */
+            @Override
+            public void end() {
+                inflater.end();
+            }
+        };
+    }
+
+    /**
+     * Get the name of this codec.
+     * @return The name, which {@link Codec#forName(String)} accepts
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
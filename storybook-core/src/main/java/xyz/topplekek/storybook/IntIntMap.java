@@ -0,0 +1,165 @@
+package xyz.topplekek.storybook;
+
+import java.util.Arrays;
+
+/**
+ * A map from positive ints to ints with open addressing and linear probing, held in two primitive arrays.
+ * Lookups never allocate. Used to find pages by their ID.
+ * @since 17-10-2026
+ */
+final class IntIntMap {
+    // Key of empty slots, so keys must not be 0
+    private static final int EMPTY = 0;
+
+    private int[] keys, values;
+    private int mask;
+    private int size;
+
+    /**
+     * Construct a new map.
+     * @param expected The number of entries expected, so the map does not have to grow until then
+     */
+    IntIntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) * 2;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Get the value of a key.
+     * @param key The key
+     * @param missing The value to return if the key is not in the map
+     * @return The value, or {@code missing}
+     */
+    int get(int key, int missing) {
+        // 0 would match an empty slot
+        if (key == EMPTY)
+            return missing;
+
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key)
+                return values[slot];
+            else if (keys[slot] == EMPTY)
+                return missing;
+        }
+    }
+
+    /**
+     * Check whether a key is in the map.
+     * @param key The key
+     * @return Whether the map has the key
+     */
+    boolean containsKey(int key) {
+        if (key == EMPTY)
+            return false;
+
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key)
+                return true;
+            else if (keys[slot] == EMPTY)
+                return false;
+        }
+    }
+
+    /**
+     * Set the value of a key.
+     * @param key The key, which must not be 0
+     * @param value The value
+     */
+    void put(int key, int value) {
+        if (key == EMPTY)
+            throw new IllegalArgumentException("Key must not be 0");
+
+        int slot = slot(key);
+        while (keys[slot] != EMPTY && keys[slot] != key)
+            slot = (slot + 1) & mask;
+
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            size++;
+        }
+
+        values[slot] = value;
+
+        // Keep the map at most half full so probes stay short
+        if (size * 2 > keys.length)
+            grow();
+    }
+
+    /**
+     * Remove a key from the map, moving back the entries that probed past it.
+     * @param key The key
+     */
+    void remove(int key) {
+        if (key == EMPTY)
+            return;
+
+        int slot = slot(key);
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY)
+                return;
+
+            slot = (slot + 1) & mask;
+        }
+
+        size--;
+
+        for (int next = (slot + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slot(keys[next]);
+
+            // Move the entry back if the free slot is between its home and where it is now
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                keys[slot] = keys[next];
+                values[slot] = values[next];
+                slot = next;
+            }
+        }
+
+        keys[slot] = EMPTY;
+    }
+
+    /**
+     * Get the number of entries in the map.
+     * @return The number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Remove every entry.
+     */
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Get the slot a key would be in without collisions.
+     * @param key The key
+     * @return The slot
+     */
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Double the capacity of the map and add every entry again.
+     */
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys = new int[oldKeys.length * 2];
+        values = new int[keys.length];
+        mask = keys.length - 1;
+        size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY)
+                put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package xyz.topplekek.storybook;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read only story backed by a memory mapped .storybook file of any version.
+ * Pages are found through the page directory, or a single scan for version 1
+ * files. Pages only hold slices of the mapped file, and their text and images
+ * are decompressed into a {@link PageCache} when they are read.
+ * See STORYBOOK.md for information on this format.
+ * @since 17-10-2026
+ */
+public class MappedStory {
+    private static final long DEFAULT_CACHE_SIZE = 32 * 1024 * 1024;
+
+    private final ByteBuffer buffer;
+    private final int version;
+    private final ByteBuffer directory;
+    private ByteBuffer table;
+    private final Page[] pages;
+    private final PageCache cache;
+
+    // The ID of each page and the index of each ID, for all but version 1 files
+    private int[] pageIds;
+    private IntIntMap pageIndexes;
+
+    // The dictionary page text is compressed with, or null if the file has none
+    private byte[] dictionary;
+
+    private String title;
+    private String author;
+    private int currentPage;
+
+    /**
+     * Map a .storybook file and find its pages, with its own page cache.
+     * The channel may be closed once this returns.
+     * @param channel A channel of a .storybook file
+     * @throws EOFException If the file is truncated
+     * @throws IOException If the header or page directory is corrupt
+     */
+    public MappedStory(FileChannel channel) throws IOException {
+        this(channel, new PageCache(DEFAULT_CACHE_SIZE));
+    }
+
+    /**
+     * Map a .storybook file and find its pages.
+     * The channel may be closed once this returns.
+     * @param channel A channel of a .storybook file
+     * @param cache The cache to keep decompressed pages in
+     * @throws EOFException If the file is truncated
+     * @throws IOException If the header or page directory is corrupt
+     */
+    public MappedStory(FileChannel channel, PageCache cache) throws IOException {
+        this(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), cache);
+    }
+
+    /**
+     * Find the pages of a .storybook file held in a buffer.
+     * @param buffer The whole file
+     * @param cache The cache to keep decompressed pages in, or null if the caller decodes their payloads itself
+     * @throws EOFException If the file is truncated
+     * @throws IOException If the header or page directory is corrupt
+     */
+    MappedStory(ByteBuffer buffer, PageCache cache) throws IOException {
+        this.buffer = buffer;
+        this.cache = cache;
+
+        try {
+            version = readVersion(buffer);
+            directory = version == StoryFormat.VERSION_1 ? scanVersion1() : readSectionTable();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new EOFException("Storybook file is truncated");
+        }
+
+        pages = new Page[directory.capacity() / StoryFormat.PAGE_DIRECTORY_ENTRY_SIZE];
+        currentPage = 0;
+    }
+
+    /**
+     * Get the page at a specific index. Its checksum is checked the first time it is requested.
+     * Its text and image are decompressed when they are first read, and may
+     * throw an {@link UncheckedIOException} if the data is corrupt.
+     * Safe to call from several threads, such as a viewer prefetching pages in the background,
+     * and each page is only created once.
+     * @param i The index of the page
+     * @return The page
+     * @throws UncheckedIOException If the page fails its checksum
+     */
+    public synchronized Page getPageAt(int i) {
+        if (i < 0 || i >= pages.length)
+            throw new IndexOutOfBoundsException("Page " + i + " of " + pages.length);
+
+        if (pages[i] == null) {
+            try {
+                pages[i] = readPage(i);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        return pages[i];
+    }
+
+    /**
+     * Check the checksum of every page that has not been requested yet.
+     * @throws IOException If a page fails its checksum or is out of bounds
+     */
+    public synchronized void verify() throws IOException {
+        for (int i = 0; i < pages.length; i++) {
+            if (pages[i] == null)
+                pages[i] = readPage(i);
+        }
+    }
+
+    /**
+     * Get the format version of the mapped file.
+     * @return The version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the title of the story.
+     * @return The title
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Get the author of the story.
+     * @return The author
+     */
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * Get the index of the current page.
+     * @return The index of the current page
+     */
+    public int getCurrentPageIndex() {
+        return currentPage;
+    }
+
+    /**
+     * Turn the story to a specific page.
+     * @param i The index of the page to turn to
+     * @return The page that was turned to
+     */
+    public Page turnToPage(int i) {
+        Page p = getPageAt(i);
+        currentPage = i;
+        return p;
+    }
+
+    /**
+     * Get the size of the story (number of pages).
+     * @return The number of pages in the story
+     */
+    public int size() {
+        return pages.length;
+    }
+
+    /**
+     * Get the dictionary that page text is compressed with.
+     * @return The dictionary, or null if the file has none
+     */
+    byte[] getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Get the cache that this story's pages are decompressed into.
+     * @return The page cache
+     */
+    public PageCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Get the page directory, built by a scan for version 1 files.
+     * @return The page directory
+     */
+    ByteBuffer getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get the section table of the file.
+     * @return The section table contents, or null for version 1 files
+     */
+    ByteBuffer getSectionTable() {
+        return table;
+    }
+
+    /**
+     * Find and check the text index section.
+     * @return The section contents, or null if the file has none
+     * @throws IOException If its checksum does not match
+     */
+    ByteBuffer getTextIndex() throws IOException {
+        return table != null ? findSection(table, StoryFormat.SECTION_TEXT_INDEX) : null;
+    }
+
+    /**
+     * Get the length of the file.
+     * @return The length in bytes
+     */
+    long getLength() {
+        return buffer.limit();
+    }
+
+    /**
+     * Find a page through the directory, check it and wrap its payloads.
+     * @param i The index of the page
+     * @return The page
+     */
+    private Page readPage(int i) throws IOException {
+        int entry = i * StoryFormat.PAGE_DIRECTORY_ENTRY_SIZE;
+        ByteBuffer record = slice(directory.getInt(entry), directory.getInt(entry + 4));
+
+        if (version != StoryFormat.VERSION_1 && Crc32c.of(record) != directory.getInt(entry + 8))
+            throw new IOException("Checksum mismatch in page " + (i + 1));
+
+        try {
+            int[] choices;
+
+            if (version != StoryFormat.VERSION_1) {
+                int count = StoryFormat.getVarint(record);
+
+                // Every choice takes at least a byte
+                if (count < 0 || count > record.remaining())
+                    throw new BufferUnderflowException();
+
+                choices = new int[count];
+                for (int c = 0; c < count; c++)
+                    choices[c] = StoryFormat.choiceNumber(StoryFormat.storedVarintChoice(StoryFormat.getVarint(record)), pageIndexes);
+            } else
+                choices = new int[] {record.getShort() & 0xFFFF, record.getShort() & 0xFFFF};
+
+            int imageType = Page.IMAGE_UNKNOWN;
+            int imageEncoding = StoryFormat.ENCODING_ZLIB_BASE64;
+            int textEncoding = StoryFormat.ENCODING_ZLIB;
+
+            if (version != StoryFormat.VERSION_1) {
+                imageType = record.get() & 0xFF;
+                imageEncoding = record.get() & 0xFF;
+            }
+
+            ByteBuffer image = payload(record);
+
+            if (version != StoryFormat.VERSION_1)
+                textEncoding = record.get() & 0xFF;
+
+            ByteBuffer text = payload(record);
+
+            Page p = new Page(text, textEncoding, image, imageEncoding, imageType, choices, dictionary, cache);
+
+            // Version 1 files link pages by position
+            p.setId(pageIds != null ? pageIds[i] : i + 1);
+            return p;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Page " + (i + 1) + " is malformed");
+        }
+    }
+
+    /**
+     * Read the section table from the trailer, check the metadata and page directory, and read the metadata.
+     * @return The page directory
+     */
+    private ByteBuffer readSectionTable() throws IOException {
+        int trailer = buffer.limit() - StoryFormat.TRAILER_SIZE;
+
+        for (int i = 0; i < StoryFormat.MAGIC.length; i++) {
+            if (buffer.get(trailer + 8 + i) != StoryFormat.MAGIC[i])
+                throw new EOFException("Storybook file is truncated");
+        }
+
+        int tableOffset = buffer.getInt(trailer);
+        table = slice(tableOffset, 2 + (buffer.getShort(tableOffset) & 0xFFFF) * StoryFormat.SECTION_TABLE_ENTRY_SIZE);
+
+        if (Crc32c.of(table) != buffer.getInt(trailer + 4))
+            throw new IOException("Checksum mismatch in section table");
+
+        ByteBuffer metadata = section(table, StoryFormat.SECTION_META);
+        ByteBuffer directory = section(table, StoryFormat.SECTION_PAGE_DIRECTORY);
+
+        title = StoryFormat.readString(metadata);
+        author = StoryFormat.readString(metadata);
+        int numPages = StoryFormat.getVarint(metadata);
+
+        if (numPages < 0 || (long) numPages * StoryFormat.PAGE_DIRECTORY_ENTRY_SIZE != directory.capacity())
+            throw new IOException("Page directory does not match the page count");
+
+        pageIds = new int[numPages];
+        pageIndexes = StoryFormat.readPageIds(section(table, StoryFormat.SECTION_PAGE_IDS), numPages, pageIds);
+
+        ByteBuffer dictionarySection = findSection(table, StoryFormat.SECTION_DICTIONARY);
+        if (dictionarySection != null)
+            dictionary = StoryFormat.readDictionary(dictionarySection);
+
+        return directory;
+    }
+
+    /**
+     * Find a section in the section table and check its checksum.
+     * @param table The section table
+     * @param tag The tag of the section
+     * @return The section contents
+     * @throws IOException If the file has no such section
+     */
+    private ByteBuffer section(ByteBuffer table, int tag) throws IOException {
+        ByteBuffer section = findSection(table, tag);
+
+        if (section == null)
+            throw new IOException("Storybook file has no " + StoryFormat.sectionName(tag) + " section");
+
+        return section;
+    }
+
+    /**
+     * Find a section that may be missing in the section table and check its checksum.
+     * @param table The section table
+     * @param tag The tag of the section
+     * @return The section contents, or null if the file has no such section
+     */
+    private ByteBuffer findSection(ByteBuffer table, int tag) throws IOException {
+        int count = table.getShort(0) & 0xFFFF;
+
+        for (int i = 0; i < count; i++) {
+            int entry = 2 + i * StoryFormat.SECTION_TABLE_ENTRY_SIZE;
+
+            if (table.getInt(entry) == tag) {
+                ByteBuffer section = slice(table.getInt(entry + 4), table.getInt(entry + 8));
+
+                if (Crc32c.of(section) != table.getInt(entry + 12))
+                    throw new IOException("Checksum mismatch in section " + StoryFormat.sectionName(tag));
+
+                return section;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Read a version 1 header and scan every page to build an equivalent page directory.
+     * @return The page directory, without checksums
+     */
+    private ByteBuffer scanVersion1() throws IOException {
+        title = StoryFormat.readString(buffer);
+        author = StoryFormat.readString(buffer);
+
+        int numPages = buffer.getShort() & 0xFFFF;
+        ByteBuffer directory = ByteBuffer.allocate(numPages * StoryFormat.PAGE_DIRECTORY_ENTRY_SIZE);
+
+        // Record where each page is without touching its payloads
+        for (int i = 0; i < numPages; i++) {
+            int start = buffer.position();
+
+            // Step over the choices, which would move the position past the limit of a truncated file
+            if (buffer.remaining() < 4)
+                throw new EOFException("Storybook file is truncated");
+
+            buffer.position(start + 4);
+            payload(buffer);
+            payload(buffer);
+
+            directory.putInt(start);
+            directory.putInt(buffer.position() - start);
+            directory.putInt(0);
+        }
+
+        directory.flip();
+        return directory;
+    }
+
+    /**
+     * Read the magic and version of the file, or rewind if it is a version 1 file without them.
+     * @param buffer The buffer positioned at the start of the file
+     * @return The version of the file
+     * @throws IOException If the version is newer than this reader supports
+     */
+    private static int readVersion(ByteBuffer buffer) throws IOException {
+        byte[] magic = new byte[StoryFormat.MAGIC.length];
+        buffer.get(magic);
+
+        if (!StoryFormat.isMagic(magic)) {
+            buffer.position(0);
+            return StoryFormat.VERSION_1;
+        }
+
+        int version = buffer.getShort() & 0xFFFF;
+        if (version != StoryFormat.VERSION)
+            throw new IOException("Unsupported storybook version: " + version);
+
+        return version;
+    }
+
+    /**
+     * Get a slice of the mapped file.
+     * @param offset The offset of the slice
+     * @param length The length of the slice
+     * @return The slice
+     * @throws EOFException If the slice is past the end of the file
+     */
+    private ByteBuffer slice(int offset, int length) throws EOFException {
+        if (offset < 0 || length < 0 || offset > buffer.limit() - length)
+            throw new EOFException("Storybook file is truncated");
+
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.limit(offset + length);
+
+        return slice.slice();
+    }
+
+    /**
+     * Read a length prefixed payload and step over it, with a uint32 length in version 1 files and a varint since.
+     * @param buffer The buffer positioned at the length
+     * @return A slice of the payload, or null if the length is 0
+     */
+    private ByteBuffer payload(ByteBuffer buffer) throws IOException {
+        int length = version == StoryFormat.VERSION_1 ? buffer.getInt() : StoryFormat.getVarint(buffer);
+
+        if (length < 0 || length > buffer.remaining())
+            throw new BufferUnderflowException();
+
+        if (length == 0)
+            return null;
+
+        ByteBuffer payload = buffer.slice();
+        payload.limit(length);
+        buffer.position(buffer.position() + length);
+
+        return payload;
+    }
+}
@@ -0,0 +1,461 @@
+package xyz.topplekek.storybook;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A page in the storybook.
+ * Choices are 1-based page numbers, which the story renumbers as pages are inserted, removed
+ * and moved. Page IDs are only a stable handle to find a page by, and the form choices are
+ * saved in, they are never what a choice holds in memory.
+ * @author Braeden Hong
+ * @since 12-06-2020
+ */
+public class Page {
+    // Image types, stored as a tag next to the image data
+    public static final int IMAGE_UNKNOWN = 0;
+    public static final int IMAGE_PNG = 1;
+    public static final int IMAGE_JPEG = 2;
+    public static final int IMAGE_WEBP = 3;
+
+    private static final int[] NO_CHOICES = new int[0];
+
+    private int id;
+    private String text;
+    private byte[] image;
+    private int imageType;
+    private int[] choices;
+    private ByteBuffer textData, imageData;
+    private int textEncoding, imageEncoding;
+    private byte[] dictionary;
+    private PageCache cache;
+
+    // Where this page's record was last saved, so an incremental save can keep it
+    private Object savedIn;
+    private int recordOffset, recordLength, recordChecksum;
+
+    // The story this page is in, its index there and the last renumbering that changed it
+    Story story;
+    int index;
+    int renumberedIn;
+
+    /**
+     * Construct a new page.
+     * @param text The page text
+     * @param image The encoded page image, or null for no image
+     * @param imageType The type of the image, one of the IMAGE_ constants
+     * @param choice1 The 1st choice
+     * @param choice2 The 2nd choice
+     */
+    public Page(String text, byte[] image, int imageType, int choice1, int choice2) {
+        this(text, image, imageType, new int[] {choice1, choice2});
+    }
+
+    /**
+     * Construct a new page with any number of choices.
+     * @param text The page text
+     * @param image The encoded page image, or null for no image
+     * @param imageType The type of the image, one of the IMAGE_ constants
+     * @param choices The choices, 1-based page numbers or 0 for none. The array is copied
+     */
+    public Page(String text, byte[] image, int imageType, int[] choices) {
+        this.text = text;
+        this.image = image;
+        this.imageType = imageType;
+        this.choices = choices.length == 0 ? NO_CHOICES : choices.clone();
+    }
+
+    /**
+     * Construct a new page whose text and image are decoded on demand.
+     * @param textData The encoded text, or null for no text
+     * @param textEncoding The encoding of the text
+     * @param imageData The encoded image, or null for no image
+     * @param imageEncoding The encoding of the image
+     * @param imageType The type of the image, one of the IMAGE_ constants
+     * @param choices The choices, the array is kept rather than copied
+     * @param dictionary The dictionary of the file the payloads are in, or null if it has none
+     * @param cache The cache that decoded payloads are kept in
+     */
+    Page(ByteBuffer textData, int textEncoding, ByteBuffer imageData, int imageEncoding, int imageType,
+         int[] choices, byte[] dictionary, PageCache cache) {
+        this.textData = textData;
+        this.textEncoding = textEncoding;
+        this.dictionary = dictionary;
+        this.imageData = imageData;
+        this.imageEncoding = imageEncoding;
+        this.imageType = imageType;
+        this.choices = choices;
+        this.cache = cache;
+    }
+
+    /**
+     * Construct a new page with default values.
+     */
+    public Page() {
+        this.text = "Page text";
+        this.choices = NO_CHOICES;
+    }
+
+    /**
+     * Get the ID of this page, which stays the same as pages are inserted, removed and moved.
+     * Choices turning to this page still hold its page number, the ID is used when they are saved.
+     * @return The ID, or 0 if the page has not been added to a story
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Get the page text.
+     * @return The page text
+     */
+    public String getText() {
+        if (textData != null)
+            return cache.getText(this);
+
+        return text;
+    }
+
+    /**
+     * Get the encoded page image. The array is not copied and must not be modified.
+     * @return The image, or null if there is no image
+     */
+    public byte[] getImage() {
+        if (imageData != null)
+            return cache.getImage(this);
+
+        return image;
+    }
+
+    /**
+     * Get the encoded page image as a read only buffer.
+     * Images stored uncompressed in a mapped file are returned without being copied.
+     * @return The image, or null if there is no image
+     */
+    public ByteBuffer getImageBuffer() {
+        if (imageData != null && imageEncoding == StoryFormat.ENCODING_NONE)
+            return imageData.asReadOnlyBuffer();
+
+        byte[] image = getImage();
+        return image == null ? null : ByteBuffer.wrap(image).asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the type of the page image.
+     * @return One of the IMAGE_ constants
+     */
+    public int getImageType() {
+        return imageType;
+    }
+
+    /**
+     * Check whether this page has an image without decoding it.
+     * @return Whether there is an image
+     */
+    public boolean hasImage() {
+        return imageData != null || image != null;
+    }
+
+    /**
+     * Get the first choice.
+     * @return The first choice
+     */
+    public int getChoice1() {
+        return getChoice(0);
+    }
+
+    /**
+     * Get the second choice.
+     * @return The second choice
+     */
+    public int getChoice2() {
+        return getChoice(1);
+    }
+
+    /**
+     * Get the number of choices of this page, including any choices of 0 before the last one.
+     * Choices of 0 at the end of the list are not saved.
+     * @return The number of choices
+     */
+    public int getChoiceCount() {
+        return choices.length;
+    }
+
+    /**
+     * Get a choice of this page.
+     * @param i The index of the choice, choices past the end of the list are 0
+     * @return The choice, a 1-based page number or 0 for none
+     */
+    public int getChoice(int i) {
+        if (i < 0)
+            throw new IndexOutOfBoundsException("Choice " + i);
+
+        return i < choices.length ? choices[i] : 0;
+    }
+
+    /**
+     * Set the text for this page.
+     * @param text The new text
+     */
+    public void setText(String text) {
+        if (story != null)
+            story.textChanged(this, text);
+
+        detach();
+        savedIn = null;
+        this.text = text;
+
+        if (story != null)
+            story.pageChanged(this, Story.CHANGED_TEXT);
+    }
+
+    /**
+     * Set the first choice for this page.
+     * @param choice1 The first choice
+     */
+    public void setChoice1(int choice1) {
+        setChoice(0, choice1);
+    }
+
+    /**
+     * Set the second choice for this page.
+     * @param choice2 The second choice
+     */
+    public void setChoice2(int choice2) {
+        setChoice(1, choice2);
+    }
+
+    /**
+     * Set a choice for this page, adding choices of 0 before it if the list is shorter.
+     * @param i The index of the choice
+     * @param choice The choice, a 1-based page number or 0 for none
+     */
+    public void setChoice(int i, int choice) {
+        if (i < 0)
+            throw new IndexOutOfBoundsException("Choice " + i);
+
+        if (i >= choices.length) {
+            if (choice == 0)
+                return;
+
+            choices = Arrays.copyOf(choices, i + 1);
+        }
+
+        if (story != null)
+            story.choiceChanged(this, choices[i], choice);
+
+        savedIn = null;
+        choices[i] = choice;
+
+        if (story != null)
+            story.pageChanged(this, Story.CHANGED_CHOICES);
+    }
+
+    /**
+     * Replace every choice of this page.
+     * @param choices The choices, 1-based page numbers or 0 for none. The array is copied
+     */
+    public void setChoices(int[] choices) {
+        for (int i = 0; story != null && i < this.choices.length; i++)
+            story.choiceChanged(this, this.choices[i], 0);
+
+        savedIn = null;
+        this.choices = choices.length == 0 ? NO_CHOICES : choices.clone();
+
+        for (int i = 0; story != null && i < this.choices.length; i++)
+            story.choiceChanged(this, 0, this.choices[i]);
+
+        if (story != null)
+            story.pageChanged(this, Story.CHANGED_CHOICES);
+    }
+
+    /**
+     * Set the image for this page.
+     * @param image The encoded image, or null to remove the image
+     * @param imageType The type of the image, one of the IMAGE_ constants
+     */
+    public void setImage(byte[] image, int imageType) {
+        detach();
+        savedIn = null;
+        this.image = image;
+        this.imageType = imageType;
+
+        if (story != null)
+            story.pageChanged(this, Story.CHANGED_IMAGE);
+    }
+
+    /**
+     * Set a choice after the page it turns to was renumbered, without updating the story's links.
+     * Choices are saved as page IDs, so the page only becomes dirty if what is saved changed.
+     * @param i The index of the choice
+     * @param choice The renumbered choice
+     * @param dirty Whether the saved choice changed
+     */
+    void renumber(int i, int choice, boolean dirty) {
+        if (dirty)
+            savedIn = null;
+
+        choices[i] = choice;
+    }
+
+    /**
+     * Check whether any choice turns to a page number past the last page, which is saved as the
+     * number rather than a page ID. Such records are never kept, so they are written again once the page exists.
+     * @param numPages The number of pages in the story
+     * @return Whether a choice turns past the last page
+     */
+    boolean turnsPast(int numPages) {
+        for (int choice : choices) {
+            if (choice > numPages)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Check whether this page has changed since it was last saved, or has never been saved.
+     * @return Whether the page is dirty
+     */
+    public boolean isDirty() {
+        return savedIn == null;
+    }
+
+    /**
+     * Read a choice typed into a text box, without the cost of an exception for text that is not a number.
+     * @param text The text, which may be empty or have characters other than digits
+     * @return The page number, or 0 for none if the text is not a number or is too large to be a page number
+     */
+    public static int parseChoice(CharSequence text) {
+        int length = text.length();
+        if (length == 0)
+            return 0;
+
+        long choice = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9')
+                return 0;
+
+            choice = choice * 10 + (c - '0');
+
+            // The largest int is kept for pages removed while their choices are renumbered
+            if (choice >= Integer.MAX_VALUE)
+                return 0;
+        }
+
+        return (int) choice;
+    }
+
+    /**
+     * Guess the type of an encoded image from its first bytes.
+     * @param image The encoded image
+     * @return One of the IMAGE_ constants
+     */
+    public static int detectImageType(byte[] image) {
+        if (image.length >= 8 && (image[0] & 0xFF) == 0x89 && image[1] == 'P' && image[2] == 'N' && image[3] == 'G')
+            return IMAGE_PNG;
+
+        if (image.length >= 3 && (image[0] & 0xFF) == 0xFF && (image[1] & 0xFF) == 0xD8 && (image[2] & 0xFF) == 0xFF)
+            return IMAGE_JPEG;
+
+        if (image.length >= 12 && image[0] == 'R' && image[1] == 'I' && image[2] == 'F' && image[3] == 'F' &&
+                image[8] == 'W' && image[9] == 'E' && image[10] == 'B' && image[11] == 'P')
+            return IMAGE_WEBP;
+
+        return IMAGE_UNKNOWN;
+    }
+
+    /**
+     * Decode the text held by a page that is backed by a file.
+     * @param decoder The decoder to decode with
+     * @return The text, or null if there is none
+     */
+    String decodeText(PageDecoder decoder) throws IOException {
+        if (textData == null)
+            return null;
+
+        return new String(decoder.decode(textData, textEncoding, dictionary), StoryFormat.CHARSET);
+    }
+
+    /**
+     * Decode the image held by a page that is backed by a file.
+     * @param decoder The decoder to decode with
+     * @return The image, or null if there is none
+     */
+    byte[] decodeImage(PageDecoder decoder) throws IOException {
+        return imageData == null ? null : decoder.decode(imageData, imageEncoding, dictionary);
+    }
+
+    /**
+     * Remember where this page's record was saved, marking it clean.
+     * @param story The story whose file the record is in
+     * @param offset The offset of the record in the file
+     * @param length The length of the record
+     * @param checksum The checksum of the record
+     */
+    void markSaved(Object story, int offset, int length, int checksum) {
+        savedIn = story;
+        recordOffset = offset;
+        recordLength = length;
+        recordChecksum = checksum;
+    }
+
+    /**
+     * Check whether this page is unchanged since a story last saved it.
+     * @param story The story
+     * @return Whether the page's saved record can be kept
+     */
+    boolean isSavedIn(Object story) {
+        return savedIn == story;
+    }
+
+    /**
+     * Set the ID of this page, as the story or file it is in gives it.
+     * @param id The ID, unique within the story
+     */
+    void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Get where this page's record was last saved.
+     * @return The offset of the record in the file, only meaningful while {@link #isSavedIn(Object)}
+     */
+    int getRecordOffset() {
+        return recordOffset;
+    }
+
+    /**
+     * Get the length of this page's record as last saved.
+     * @return The length of the record in bytes
+     */
+    int getRecordLength() {
+        return recordLength;
+    }
+
+    /**
+     * Get the checksum of this page's record as last saved, for the page directory.
+     * @return The CRC32C of the record
+     */
+    int getRecordChecksum() {
+        return recordChecksum;
+    }
+
+    /**
+     * Decode any payloads still held in the file so the page no longer depends on its cache.
+     */
+    private void detach() {
+        if (cache == null)
+            return;
+
+        text = getText();
+        image = getImage();
+        textData = null;
+        imageData = null;
+        dictionary = null;
+        cache.remove(this);
+        cache = null;
+    }
+}
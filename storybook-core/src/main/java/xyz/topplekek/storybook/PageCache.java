@@ -0,0 +1,247 @@
+package xyz.topplekek.storybook;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of decompressed page text and images.
+ * The cache is bounded by the approximate number of bytes the decompressed
+ * text and images take up on the heap rather than by the number of pages.
+ * A page's text and image are cached separately, so reading the text of a page
+ * never decodes its image, and a large image can be evicted while the text stays.
+ * Payloads are decoded outside the cache's lock, so a background thread decoding a large
+ * image never holds up another thread reading text that is already cached.
+ * @since 17-10-2026
+ */
+public class PageCache {
+    /**
+     * The key of one payload of a page, its text or its image.
+     */
+    private static final class Key {
+        final Page page;
+        final boolean image;
+
+        /**
+         * Construct a new key.
+         * @param page The page
+         * @param image Whether the key is for the image rather than the text
+         */
+        Key(Page page, boolean image) {
+            this.page = page;
+            this.image = image;
+        }
+
+        /**
+         * Check whether another key is for the same payload of the same page.
+         * @param o The other object
+         * @return Whether they are equal
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+
+            Key other = (Key) o;
+            return page == other.page && image == other.image;
+        }
+
+        /**
+         * Get the hash code of the key.
+         * @return The hash code
+         */
+        @Override
+        public int hashCode() {
+            return 2 * System.identityHashCode(page) + (image ? 1 : 0);
+        }
+    }
+
+    /**
+     * One decompressed payload of a page.
+     */
+    private static class Entry {
+        final Object value;
+        final long bytes;
+
+        /**
+         * Construct a new entry.
+         * @param value The text or image
+         * @param bytes The approximate number of bytes it takes up
+         */
+        Entry(Object value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    private final LinkedHashMap<Key, Entry> entries;
+
+    // Decoders not in use, each only used by one thread at a time
+    private final ArrayDeque<PageDecoder> decoders = new ArrayDeque<>();
+
+    private final long maxBytes;
+    private long bytes;
+    private long hits, misses, evictions;
+
+    /**
+     * Construct a new cache.
+     * @param maxBytes The maximum number of bytes of decompressed data to keep
+     */
+    public PageCache(long maxBytes) {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+
+        this.maxBytes = maxBytes;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Get the decompressed text of a page.
+     * @param p The page
+     * @return The text, or null if the page has none
+     * @throws UncheckedIOException If the page data can not be decompressed
+     */
+    String getText(Page p) {
+        return (String) get(new Key(p, false));
+    }
+
+    /**
+     * Get the decoded image of a page.
+     * @param p The page
+     * @return The image, or null if the page has none
+     * @throws UncheckedIOException If the page data can not be decompressed
+     */
+    byte[] getImage(Page p) {
+        return (byte[]) get(new Key(p, true));
+    }
+
+    /**
+     * Drop a page from the cache, used when its payloads are replaced.
+     * @param p The page
+     */
+    synchronized void remove(Page p) {
+        remove(new Key(p, false));
+        remove(new Key(p, true));
+    }
+
+    /**
+     * Get the number of lookups that found the payload already decompressed.
+     * @return The number of hits
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Get the number of lookups that had to decompress the payload.
+     * @return The number of misses
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Get the number of payloads dropped to stay under the size limit.
+     * @return The number of evictions
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Get the approximate number of bytes currently cached.
+     * @return The size of the cache in bytes
+     */
+    public synchronized long getSize() {
+        return bytes;
+    }
+
+    /**
+     * Get the maximum number of bytes this cache will hold.
+     * @return The maximum size of the cache in bytes
+     */
+    public long getMaxSize() {
+        return maxBytes;
+    }
+
+    /**
+     * Drop one payload from the cache.
+     * @param key The key of the payload
+     */
+    private void remove(Key key) {
+        Entry e = entries.remove(key);
+
+        if (e != null)
+            bytes -= e.bytes;
+    }
+
+    /**
+     * Look up a payload, decompressing only it and caching it on a miss.
+     * The lock is only held to look it up and to insert it, not while it is decoded.
+     * @param key The key of the payload
+     * @return The text or image, or null if the page has none
+     */
+    private Object get(Key key) {
+        PageDecoder decoder;
+
+        synchronized (this) {
+            Entry e = entries.get(key);
+
+            if (e != null) {
+                hits++;
+                return e.value;
+            }
+
+            misses++;
+            decoder = decoders.isEmpty() ? new PageDecoder() : decoders.pop();
+        }
+
+        Object value;
+        long size;
+
+        try {
+            if (key.image) {
+                byte[] image = key.page.decodeImage(decoder);
+                value = image;
+                size = image == null ? 0 : image.length;
+            } else {
+                // Strings are stored as UTF-16 in the worst case
+                String text = key.page.decodeText(decoder);
+                value = text;
+                size = text == null ? 0 : 2L * text.length();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            synchronized (this) {
+                decoders.push(decoder);
+            }
+        }
+
+        // Missing payloads are not kept, and a payload bigger than the whole cache is handed out but not kept
+        if (value == null || size > maxBytes)
+            return value;
+
+        synchronized (this) {
+            // Another thread may have decoded the same payload meanwhile
+            Entry e = entries.get(key);
+            if (e != null)
+                return e.value;
+
+            entries.put(key, new Entry(value, size));
+            bytes += size;
+
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes) {
+                bytes -= eldest.next().getValue().bytes;
+                eldest.remove();
+                evictions++;
+            }
+        }
+
+        return value;
+    }
+}
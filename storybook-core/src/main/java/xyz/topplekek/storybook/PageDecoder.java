@@ -0,0 +1,73 @@
+package xyz.topplekek.storybook;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the payloads of pages for a {@link StoryReader} or a {@link PageCache}, with the
+ * codec registered for the ID each payload records. One decoder reuses the decoders of each
+ * codec for every page, so a decoder must only be used by one thread at a time.
+ * @since 17-10-2026
+ */
+class PageDecoder {
+    // Decoders by payload ID, made when a payload with the ID is first decoded
+    private final Codec.Decoder[] decoders = new Codec.Decoder[StoryFormat.ENCODING_ZLIB_BASE64 + 1];
+
+    /**
+     * Decode a payload slice.
+     * @param data The payload
+     * @param encoding The encoding of the payload
+     * @param dictionary The dictionary of the file the payload is from, or null if it has none
+     * @return The decoded bytes
+     */
+    byte[] decode(ByteBuffer data, int encoding, byte[] dictionary) throws IOException {
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+
+        return decode(bytes, bytes.length, encoding, dictionary);
+    }
+
+    /**
+     * Decode the start of a payload array.
+     * @param data The payload
+     * @param length The number of bytes of {@code data} in the payload
+     * @param encoding The encoding of the payload
+     * @param dictionary The dictionary of the file the payload is from, or null if it has none
+     * @return The decoded bytes, which may be {@code data} itself if it needed no decoding
+     */
+    byte[] decode(byte[] data, int length, int encoding, byte[] dictionary) throws IOException {
+        return decoder(encoding).decode(data, length, dictionary);
+    }
+
+    /**
+     * Release the decoders.
+     */
+    void end() {
+        for (Codec.Decoder decoder : decoders) {
+            if (decoder != null)
+                decoder.end();
+        }
+    }
+
+    /**
+     * Get the decoder for a payload ID, making it from the registered codec the first time.
+     * @param encoding The ID recorded with the payload
+     * @return The decoder
+     * @throws IOException If no codec is registered for the ID
+     */
+    private Codec.Decoder decoder(int encoding) throws IOException {
+        boolean inRange = encoding >= 0 && encoding < decoders.length;
+        Codec.Decoder decoder = inRange ? decoders[encoding] : null;
+
+        if (decoder == null) {
+            Codec codec = inRange ? Codec.forId(encoding) : null;
+
+            if (codec == null)
+                throw new IOException("Unknown payload encoding: " + encoding);
+
+            decoder = decoders[encoding] = codec.newDecoder();
+        }
+
+        return decoder;
+    }
+}
@@ -0,0 +1,195 @@
+package xyz.topplekek.storybook;
+
+import java.util.Arrays;
+
+/**
+ * Edits typed into the editor that are not yet in the story, kept by page ID so they survive rows being
+ * reused and pages moving. Recording an edit only keeps a reference to the text being typed, so each
+ * keystroke takes constant time however long the page or story is. The text is read, choices parsed and
+ * the pages changed once, when the edits are committed after typing pauses.
+ * @since 17-10-2026
+ */
+public class PageEdits {
+    // Slot of each page with edits, by its ID
+    private final IntIntMap slots = new IntIntMap(16);
+
+    // The page ID, text and first two choices of each slot, null where they were not edited
+    private int[] ids = new int[16];
+    private CharSequence[] texts = new CharSequence[16];
+    private CharSequence[] choices = new CharSequence[32];
+    private int size;
+
+    /**
+     * Record an edit to a page's text.
+     * @param id The ID of the page
+     * @param text The text being typed, read when the edits are committed
+     */
+    public void setText(int id, CharSequence text) {
+        texts[slot(id)] = text;
+    }
+
+    /**
+     * Record an edit to a page's first choice.
+     * @param id The ID of the page
+     * @param text The text of the choice being typed, read when the edits are committed
+     */
+    public void setChoice1(int id, CharSequence text) {
+        choices[2 * slot(id)] = text;
+    }
+
+    /**
+     * Record an edit to a page's second choice.
+     * @param id The ID of the page
+     * @param text The text of the choice being typed, read when the edits are committed
+     */
+    public void setChoice2(int id, CharSequence text) {
+        choices[2 * slot(id) + 1] = text;
+    }
+
+    /**
+     * Get the text typed for a page that is not yet committed.
+     * @param id The ID of the page
+     * @return The text, or null if it was not edited
+     */
+    public CharSequence getText(int id) {
+        int slot = find(id);
+        return slot < 0 ? null : texts[slot];
+    }
+
+    /**
+     * Get the first choice typed for a page that is not yet committed.
+     * @param id The ID of the page
+     * @return The text of the choice, or null if it was not edited
+     */
+    public CharSequence getChoice1(int id) {
+        int slot = find(id);
+        return slot < 0 ? null : choices[2 * slot];
+    }
+
+    /**
+     * Get the second choice typed for a page that is not yet committed.
+     * @param id The ID of the page
+     * @return The text of the choice, or null if it was not edited
+     */
+    public CharSequence getChoice2(int id) {
+        int slot = find(id);
+        return slot < 0 ? null : choices[2 * slot + 1];
+    }
+
+    /**
+     * Copy what was typed for a page, so it is kept when the text boxes it was typed in are reused for another page.
+     * @param id The ID of the page
+     */
+    public void freeze(int id) {
+        int slot = find(id);
+        if (slot < 0)
+            return;
+
+        if (texts[slot] != null)
+            texts[slot] = texts[slot].toString();
+
+        for (int i = 2 * slot; i < 2 * slot + 2; i++) {
+            if (choices[i] != null)
+                choices[i] = choices[i].toString();
+        }
+    }
+
+    /**
+     * Check whether there are edits to commit.
+     * @return Whether no page was edited since the last commit
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Apply every edit to the story at once, and forget them. Text that did not change is not set, so the page
+     * stays clean and the text index is not updated. Edits to pages that were removed are dropped.
+     * @param story The story the pages are in
+     * @return The indexes of the pages whose choices changed, in the order they were first edited
+     */
+    public int[] commit(Story story) {
+        int[] changed = new int[size];
+        int numChanged = 0;
+
+        for (int slot = 0; slot < size; slot++) {
+            int index = story.indexOfId(ids[slot]);
+            if (index < 0)
+                continue;
+
+            Page p = story.getPageAt(index);
+
+            if (texts[slot] != null) {
+                String text = texts[slot].toString();
+                String previous = p.getText();
+
+                // An empty text box is a page without text
+                if (previous == null ? !text.isEmpty() : !text.equals(previous))
+                    p.setText(text);
+            }
+
+            boolean choicesChanged = false;
+            for (int i = 0; i < 2; i++) {
+                if (choices[2 * slot + i] == null)
+                    continue;
+
+                int choice = Page.parseChoice(choices[2 * slot + i]);
+
+                // Out of bounds choices are kept, they become valid once the page they turn to is added
+                if (choice != p.getChoice(i)) {
+                    p.setChoice(i, choice);
+                    choicesChanged = true;
+                }
+            }
+
+            if (choicesChanged)
+                changed[numChanged++] = index;
+        }
+
+        clear();
+        return Arrays.copyOf(changed, numChanged);
+    }
+
+    /**
+     * Forget every edit without applying it.
+     */
+    public void clear() {
+        Arrays.fill(texts, 0, size, null);
+        Arrays.fill(choices, 0, 2 * size, null);
+        slots.clear();
+        size = 0;
+    }
+
+    /**
+     * Find the slot of a page's edits.
+     * @param id The ID of the page, or 0 for a row not yet bound to a page
+     * @return The slot, or -1 if the page has no edits
+     */
+    private int find(int id) {
+        return id <= 0 ? -1 : slots.get(id, -1);
+    }
+
+    /**
+     * Get the slot of a page's edits, taking a new one if it has none.
+     * @param id The ID of the page
+     * @return The slot
+     */
+    private int slot(int id) {
+        if (id <= 0)
+            throw new IllegalArgumentException("Page is not in a story");
+
+        int slot = slots.get(id, -1);
+        if (slot >= 0)
+            return slot;
+
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            texts = Arrays.copyOf(texts, size * 2);
+            choices = Arrays.copyOf(choices, size * 4);
+        }
+
+        ids[size] = id;
+        slots.put(id, size);
+        return size++;
+    }
+}
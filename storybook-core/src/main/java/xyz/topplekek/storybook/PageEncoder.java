@@ -0,0 +1,204 @@
+package xyz.topplekek.storybook;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Encodes the payloads of pages for a {@link StoryWriter}.
+ * One encoder reuses its codec's encoders and scratch arrays for every page, so
+ * an encoder must only be used by one thread at a time. Payloads that the codec
+ * would not make smaller are stored as is.
+ * @since 17-10-2026
+ */
+class PageEncoder {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Payloads at least this long are sampled before compressing, and stored as is if the sample looks random
+    private static final int SAMPLE_LENGTH = 4096;
+    private static final double RANDOM_BITS_PER_BYTE = 7.9;
+
+    /**
+     * A page with its payloads encoded, ready to be written.
+     */
+    static class EncodedPage {
+        int[] choices = new int[2];
+        int choiceCount, imageType;
+        int imageEncoding, imageLength;
+        int textEncoding, textLength;
+        byte[] image, text;
+    }
+
+    private final boolean compresses;
+    private final Codec.Encoder imageEncoder;
+    private final CharsetEncoder encoder;
+
+    // The encoder for page text, the image encoder unless text is compressed with a dictionary
+    private final Codec.Encoder textEncoder;
+
+    // Scratch space for compressed payloads and encoded text, grown as needed
+    private byte[] compressedImage, compressedText;
+    private ByteBuffer encoded;
+    private final int[] histogram = new int[256];
+
+    /**
+     * Construct a new encoder that compresses at the default level without a dictionary.
+     */
+    PageEncoder() {
+        this(null, Codec.DEFAULT);
+    }
+
+    /**
+     * Construct a new encoder.
+     * @param dictionary The dictionary to compress page text with, or null for none
+     * @param codec The codec to compress payloads with
+     */
+    PageEncoder(byte[] dictionary, Codec codec) {
+        compresses = codec.getId() != StoryFormat.ENCODING_NONE;
+        imageEncoder = codec.newEncoder(null);
+        textEncoder = compresses && dictionary != null ? codec.newEncoder(dictionary) : imageEncoder;
+
+        encoder = StoryFormat.CHARSET.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        compressedImage = new byte[BUFFER_SIZE];
+        compressedText = new byte[BUFFER_SIZE];
+        encoded = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Encode a page.
+     * @param p The page to encode
+     * @param into The encoded page to fill in
+     * @param copy Whether compressed payloads must be copied out of the scratch arrays,
+     *             so they stay valid after the next call
+     */
+    void encode(Page p, EncodedPage into, boolean copy) {
+        // Choices of 0 at the end of the list are not saved
+        into.choiceCount = p.getChoiceCount();
+        while (into.choiceCount > 0 && p.getChoice(into.choiceCount - 1) == 0)
+            into.choiceCount--;
+
+        if (into.choices.length < into.choiceCount)
+            into.choices = new int[Math.max(into.choiceCount, into.choices.length * 2)];
+
+        for (int i = 0; i < into.choiceCount; i++)
+            into.choices[i] = p.getChoice(i);
+
+        into.imageType = p.getImageType();
+
+        byte[] image = p.getImage();
+
+        into.imageEncoding = StoryFormat.ENCODING_NONE;
+        into.image = image;
+        into.imageLength = image == null ? 0 : image.length;
+
+        // Known image formats are already compressed, so they are stored as is
+        if (image != null && p.getImageType() == Page.IMAGE_UNKNOWN && shouldCompress(image, image.length)) {
+            compressedImage = ensureCapacity(compressedImage, image.length);
+            int length = imageEncoder.encode(image, 0, image.length, compressedImage);
+
+            if (length >= 0 && length < image.length) {
+                into.imageEncoding = imageEncoder.getId();
+                into.imageLength = length;
+                into.image = copy ? Arrays.copyOf(compressedImage, length) : compressedImage;
+            }
+        }
+
+        String text = p.getText();
+
+        if (text == null) {
+            into.textEncoding = StoryFormat.ENCODING_NONE;
+            into.text = null;
+            into.textLength = 0;
+            return;
+        }
+
+        int length = encode(text);
+        int compressed = -1;
+
+        if (shouldCompress(encoded.array(), length)) {
+            compressedText = ensureCapacity(compressedText, length);
+            compressed = textEncoder.encode(encoded.array(), 0, length, compressedText);
+        }
+
+        if (compressed >= 0 && compressed < length) {
+            into.textEncoding = textEncoder.getId();
+            into.textLength = compressed;
+            into.text = copy ? Arrays.copyOf(compressedText, compressed) : compressedText;
+        } else {
+            into.textEncoding = StoryFormat.ENCODING_NONE;
+            into.textLength = length;
+            into.text = copy ? Arrays.copyOf(encoded.array(), length) : encoded.array();
+        }
+    }
+
+    /**
+     * Release the codec's encoders.
+     */
+    void end() {
+        imageEncoder.end();
+
+        if (textEncoder != imageEncoder)
+            textEncoder.end();
+    }
+
+    /**
+     * Make sure a scratch array can hold a payload compressed to no more than its own length.
+     * @param buffer The current array
+     * @param length The length of the payload
+     * @return The array, or a bigger replacement if it was too small
+     */
+    private static byte[] ensureCapacity(byte[] buffer, int length) {
+        return buffer.length >= length ? buffer : new byte[Math.max(length, buffer.length * 2)];
+    }
+
+    /**
+     * Check whether a payload is worth compressing with this encoder's codec.
+     * Long payloads whose first bytes look random, such as images in compressed formats
+     * that were not recognised, are not.
+     * @param data The payload
+     * @param length The length of the payload
+     * @return Whether to compress it
+     */
+    private boolean shouldCompress(byte[] data, int length) {
+        if (!compresses)
+            return false;
+        else if (length < SAMPLE_LENGTH)
+            return true;
+
+        Arrays.fill(histogram, 0);
+        for (int i = 0; i < SAMPLE_LENGTH; i++)
+            histogram[data[i] & 0xFF]++;
+
+        // Shannon entropy of the sample in bits per byte
+        double bits = 0;
+        for (int count : histogram) {
+            if (count > 0)
+                bits -= count * Math.log((double) count / SAMPLE_LENGTH);
+        }
+
+        return bits / Math.log(2) / SAMPLE_LENGTH < RANDOM_BITS_PER_BYTE;
+    }
+
+    /**
+     * Encode a string into the scratch buffer.
+     * @param text The string
+     * @return The encoded length
+     */
+    private int encode(String text) {
+        int maxLength = (int) Math.ceil(encoder.maxBytesPerChar() * text.length());
+
+        if (encoded.capacity() < maxLength)
+            encoded = ByteBuffer.allocate(Math.max(maxLength, encoded.capacity() * 2));
+
+        encoded.clear();
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(text), encoded, true);
+        encoder.flush(encoded);
+
+        return encoded.position();
+    }
+}
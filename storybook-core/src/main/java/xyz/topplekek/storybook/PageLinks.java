@@ -0,0 +1,153 @@
+package xyz.topplekek.storybook;
+
+import java.util.Arrays;
+
+/**
+ * A reverse index of the choices of a story, from each 1-based page number to the pages with a choice
+ * turning to it. Page numbers past the end of the story are indexed too, so they can be renumbered
+ * with the rest. A page with both choices turning to the same number is listed twice.
+ * @since 17-10-2026
+ */
+final class PageLinks {
+    private static final Page[] EMPTY = new Page[0];
+
+    private Page[][] sources = new Page[16][];
+    private int[] counts = new int[16];
+
+    // One past the highest page number that has ever been linked to
+    private int end = 1;
+
+    /**
+     * Add a choice to the index.
+     * @param number The page number the choice turns to, choices of 0 or less are not indexed
+     * @param source The page with the choice
+     */
+    void add(int number, Page source) {
+        if (number < 1)
+            return;
+
+        ensureCapacity(number + 1);
+        end = Math.max(end, number + 1);
+
+        Page[] bucket = sources[number];
+        if (bucket == null)
+            bucket = sources[number] = new Page[2];
+        else if (counts[number] == bucket.length)
+            bucket = sources[number] = Arrays.copyOf(bucket, bucket.length * 2);
+
+        bucket[counts[number]++] = source;
+    }
+
+    /**
+     * Remove a choice from the index.
+     * @param number The page number the choice turns to
+     * @param source The page with the choice
+     */
+    void remove(int number, Page source) {
+        if (number < 1 || number >= end)
+            return;
+
+        Page[] bucket = sources[number];
+        for (int i = 0; i < counts[number]; i++) {
+            if (bucket[i] == source) {
+                bucket[i] = bucket[--counts[number]];
+                bucket[counts[number]] = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get one past the highest page number that may have choices turning to it.
+     * @return The end of the indexed page numbers
+     */
+    int end() {
+        return end;
+    }
+
+    /**
+     * Get the number of choices turning to a page number.
+     * @param number The page number
+     * @return The number of choices
+     */
+    int count(int number) {
+        return number < end ? counts[number] : 0;
+    }
+
+    /**
+     * Get the pages with a choice turning to a page number.
+     * @param number The page number
+     * @return The pages, only the first {@link #count(int)} are set
+     */
+    Page[] sources(int number) {
+        return number < end && sources[number] != null ? sources[number] : EMPTY;
+    }
+
+    /**
+     * Move the choices of page numbers from a number on up by one, leaving the number without choices.
+     * @param number The page number a page was inserted at
+     */
+    void insertNumber(int number) {
+        if (number >= end)
+            return;
+
+        ensureCapacity(end + 1);
+        System.arraycopy(sources, number, sources, number + 1, end - number);
+        System.arraycopy(counts, number, counts, number + 1, end - number);
+        sources[number] = null;
+        counts[number] = 0;
+        end++;
+    }
+
+    /**
+     * Drop the choices of a page number, and move the choices of the numbers after it down by one.
+     * @param number The page number of a removed page
+     */
+    void removeNumber(int number) {
+        if (number >= end)
+            return;
+
+        System.arraycopy(sources, number + 1, sources, number, end - number - 1);
+        System.arraycopy(counts, number + 1, counts, number, end - number - 1);
+        end--;
+        sources[end] = null;
+        counts[end] = 0;
+    }
+
+    /**
+     * Move the choices of a page number to another, and those of the numbers in between by one towards it.
+     * @param from The page number of the moved page
+     * @param to The page number it was moved to
+     */
+    void moveNumber(int from, int to) {
+        ensureCapacity(Math.max(from, to) + 1);
+        end = Math.max(end, Math.max(from, to) + 1);
+
+        Page[] bucket = sources[from];
+        int count = counts[from];
+
+        if (from < to) {
+            System.arraycopy(sources, from + 1, sources, from, to - from);
+            System.arraycopy(counts, from + 1, counts, from, to - from);
+        } else {
+            System.arraycopy(sources, to, sources, to + 1, from - to);
+            System.arraycopy(counts, to, counts, to + 1, from - to);
+        }
+
+        sources[to] = bucket;
+        counts[to] = count;
+    }
+
+    /**
+     * Grow the index to hold a number of page numbers.
+     * @param length The number of page numbers, including 0
+     */
+    private void ensureCapacity(int length) {
+        if (length <= sources.length)
+            return;
+
+        int capacity = Math.max(length, sources.length * 2);
+        sources = Arrays.copyOf(sources, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+    }
+}
@@ -0,0 +1,787 @@
+package xyz.topplekek.storybook;
+
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An object representing a story in .storybook format.
+ * Choices are page numbers while the story is in memory, renumbered as pages are inserted,
+ * removed and moved. They are only turned into page IDs when the story is saved, and back when it is loaded.
+ * See STORYBOOK.md for information on this format.
+ * @author Braeden Hong
+ * @since 12-06-2020
+ */
+public class Story {
+    /**
+     * Listener for changes to the pages in the story, so a view of them only redraws what changed.
+     */
+    public interface Listener {
+        /**
+         * Called when a page's choices were renumbered because other pages were inserted, removed or moved.
+         * @param index The index of the page, after the change
+         */
+        void onChoicesRenumbered(int index);
+
+        /**
+         * Called when a page was changed through one of its setters.
+         * @param index The index of the page
+         * @param change What changed, one of the CHANGED_ constants
+         */
+        void onPageChanged(int index, int change);
+    }
+
+    // What changed about a page, passed to the listener
+    public static final int CHANGED_TEXT = 1;
+    public static final int CHANGED_CHOICES = 2;
+    public static final int CHANGED_IMAGE = 3;
+
+    // Page number a removed page is moved to, its choices are renumbered to 0
+    private static final int REMOVED = Integer.MAX_VALUE;
+
+    // Journaled saves after which the file is compacted by rewriting it
+    private static final int MAX_JOURNALED_SAVES = 16;
+
+    private ArrayList<Page> pages;
+
+    // The index of each page by its ID, and the next ID to give a page
+    private IntIntMap ids;
+    private int nextId = 1;
+    private String title;
+    private String author;
+    private int currentPage;
+
+    // The section table and length of the file this story was last loaded from or saved to
+    private ByteBuffer savedTable;
+    private long savedLength;
+
+    // The dictionary page text is compressed with, and the one in the file last loaded from or saved to
+    private byte[] dictionary;
+    private byte[] savedDictionary;
+    private Codec codec = Codec.DEFAULT;
+
+    // Index of the pages with a choice turning to each page number, built on the first change to the page order
+    private PageLinks links;
+    private Listener listener;
+    private int renumberings;
+
+    // The index of the words in page text, built on first use, and the text index section of the
+    // file last loaded from or saved to while it still matches the pages
+    private StoryIndex textIndex;
+    private byte[] savedTextIndex;
+    private final ArrayList<Page> renumbered = new ArrayList<>();
+
+    /**
+     * Construct a new blank story.
+     * @param title The title of this story
+     * @param author The author of this story
+     */
+    public Story(String title, String author) {
+        this.title = title;
+        this.author = author;
+        currentPage = 0;
+        pages = new ArrayList<>();
+        ids = new IntIntMap(16);
+    }
+
+    /**
+     * Construct a new story from a .storybook file of any version.
+     * Version 1 files will read garbage data if they are malformed, later versions are checksummed.
+     * @param input An input stream of a .storybook file.
+     * @throws EOFException If the file is truncated
+     * @throws IOException If the file is corrupt
+     */
+    public Story(InputStream input) throws IOException {
+        this(input, null);
+    }
+
+    /**
+     * Construct a new story from a .storybook file of any version, decompressing pages in parallel.
+     * Version 1 files will read garbage data if they are malformed, later versions are checksummed.
+     * @param input An input stream of a .storybook file.
+     * @param executor The executor to decompress pages on, or null to decompress them on this thread
+     * @throws EOFException If the file is truncated
+     * @throws IOException If the file is corrupt
+     */
+    public Story(InputStream input, ExecutorService executor) throws IOException {
+        try (StoryReader reader = new StoryReader(input)) {
+            title = reader.getTitle();
+            author = reader.getAuthor();
+            pages = new ArrayList<>(reader.getNumPages());
+
+            // Read all pages
+            if (executor != null)
+                reader.readPages(pages, executor);
+            else {
+                while (reader.hasNextPage())
+                    pages.add(reader.readPage());
+            }
+
+            reader.verify();
+
+            // Files before page IDs get IDs in page order, the same as their positional choices
+            ids = new IntIntMap(pages.size());
+            for (int i = 0; i < pages.size(); i++)
+                identify(pages.get(i), i);
+
+            loaded(reader);
+        }
+
+        currentPage = 0;
+    }
+
+    /**
+     * Get the dictionary that page text is compressed with when saving.
+     * @return A copy of the dictionary, or null if there is none
+     */
+    public byte[] getDictionary() {
+        return dictionary == null ? null : dictionary.clone();
+    }
+
+    /**
+     * Set the dictionary to compress page text with when saving, such as one built by
+     * {@link StoryDictionary}. It is stored once in the file, and the next
+     * save rewrites the whole file if it changed.
+     * @param dictionary The dictionary, or null for none
+     * @throws IllegalArgumentException If the dictionary is empty or longer than 32 KiB
+     */
+    public void setDictionary(byte[] dictionary) {
+        if (dictionary != null && (dictionary.length == 0 || dictionary.length > StoryFormat.MAX_DICTIONARY_SIZE))
+            throw new IllegalArgumentException("Invalid dictionary length: " + dictionary.length);
+
+        this.dictionary = dictionary == null ? null : dictionary.clone();
+    }
+
+    /**
+     * Get the codec that payloads are compressed with when saving.
+     * @return The codec
+     */
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Set the codec to compress payloads with when saving, such as {@link Codec#FAST} to save
+     * faster at the cost of a larger file. Files saved with any codec are read the same way.
+     * @param codec The codec
+     * @throws IllegalArgumentException If the codec is null
+     */
+    public void setCodec(Codec codec) {
+        if (codec == null)
+            throw new IllegalArgumentException("Codec must not be null");
+
+        this.codec = codec;
+    }
+
+    /**
+     * Add a new page to the story.
+     * @param p The page to add
+     * @throws IllegalArgumentException If the page is in another story
+     */
+    public void addPage(Page p) {
+        checkOwner(p);
+        pages.add(p);
+        identify(p, pages.size() - 1);
+        textAdded(p);
+
+        if (links != null)
+            link(p, pages.size() - 1);
+    }
+
+    /**
+     * Insert a new page into the story. Choices turning to the page at the index or later are
+     * renumbered, only the pages with those choices are changed.
+     * @param index The index to insert the page at, from 0 to the size of the story
+     * @param p The page to insert, its choices are page numbers after it is inserted
+     * @throws IllegalArgumentException If the page is in another story
+     */
+    public void insertPage(int index, Page p) {
+        if (index < 0 || index > pages.size())
+            throw new IndexOutOfBoundsException("Index " + index + " of " + pages.size());
+
+        checkOwner(p);
+        indexLinks();
+        renumber(REMOVED, index + 1);
+        links.insertNumber(index + 1);
+        pages.add(index, p);
+        identify(p, index);
+        reindex(index, pages.size());
+        link(p, index);
+        textAdded(p);
+
+        if (currentPage >= index && pages.size() > 1)
+            currentPage++;
+
+        renumbered();
+    }
+
+    /**
+     * Remove a page from the story. Choices turning to it are set to 0 and choices turning to later
+     * pages are renumbered, only the pages with those choices are changed.
+     * @param index The index of the page
+     * @return The removed page
+     */
+    public Page removePage(int index) {
+        Page p = pages.get(index);
+
+        indexLinks();
+        for (int i = 0; i < p.getChoiceCount(); i++)
+            links.remove(p.getChoice(i), p);
+        p.story = null;
+
+        savedTextIndex = null;
+        if (textIndex != null)
+            textIndex.remove(p.getId(), p.getText());
+
+        renumber(index + 1, REMOVED);
+        links.removeNumber(index + 1);
+        pages.remove(index);
+        ids.remove(p.getId());
+        reindex(index, pages.size());
+
+        if (currentPage > index || currentPage == pages.size())
+            currentPage = Math.max(currentPage - 1, 0);
+
+        renumbered();
+        return p;
+    }
+
+    /**
+     * Move a page to another index, shifting the pages in between. Choices turning to the moved
+     * and shifted pages are renumbered, only the pages with those choices are changed.
+     * @param from The index of the page
+     * @param to The index to move it to
+     */
+    public void movePage(int from, int to) {
+        if (from < 0 || from >= pages.size() || to < 0 || to >= pages.size())
+            throw new IndexOutOfBoundsException("Move " + from + " to " + to + " of " + pages.size());
+
+        if (from == to)
+            return;
+
+        indexLinks();
+        renumber(from + 1, to + 1);
+        links.moveNumber(from + 1, to + 1);
+        pages.add(to, pages.remove(from));
+        reindex(Math.min(from, to), Math.max(from, to) + 1);
+        currentPage = renumbered(currentPage + 1, from + 1, to + 1) - 1;
+
+        renumbered();
+    }
+
+    /**
+     * Find a page by its ID.
+     * @param id The ID of the page
+     * @return The index of the page, or -1 if no page in the story has the ID
+     */
+    public int indexOfId(int id) {
+        return ids.get(id, -1);
+    }
+
+    /**
+     * Get the index of the words in page text, to find the pages that mention a word.
+     * It is read from the file the story was loaded from if it was saved there, or built
+     * from every page the first time, and kept up to date as pages and their text change.
+     * Once it exists, it is saved with the story so it does not have to be built again.
+     * @return The text index
+     */
+    public StoryIndex getTextIndex() {
+        if (textIndex == null && savedTextIndex != null) {
+            try {
+                textIndex = StoryIndex.read(this, ByteBuffer.wrap(savedTextIndex));
+            } catch (IOException e) {
+                // Checksummed, so only a file this version did not write gets here, and the index is rebuilt
+                savedTextIndex = null;
+            }
+        }
+
+        if (textIndex == null)
+            textIndex = StoryIndex.build(this);
+
+        return textIndex;
+    }
+
+    /**
+     * Set the listener for pages that change, or whose choices are renumbered when pages are inserted, removed or moved.
+     * @param listener The listener, or null for none
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Set the title of the story.
+     * @param title The new title
+     */
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    /**
+     * Set the author of the story.
+     * @param author The new author of the story
+     */
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    /**
+     * Get the page at a specific index.
+     * @param i The index of the page
+     * @return The page
+     */
+    public Page getPageAt(int i) {
+        return pages.get(i);
+    }
+
+    /**
+     * Get the title of the story.
+     * @return The title
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Get the author of the story.
+     * @return The author
+     */
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * Get the index of the current page.
+     * @return The index of the current page
+     */
+    public int getCurrentPageIndex() {
+        return currentPage;
+    }
+
+    /**
+     * Turn the story to a specific page.
+     * @param i The index of the page to turn to
+     * @return The page that was turned to
+     */
+    public Page turnToPage(int i) {
+        currentPage = i;
+        return pages.get(i);
+    }
+
+    /**
+     * Get the size of the story (number of pages).
+     * @return The number of pages in the story
+     */
+    public int size() {
+        return pages.size();
+    }
+
+    /**
+     * Save the story to the provided output stream in the latest .storybook format.
+     * @param output A stream to output the data to.
+     */
+    public void saveStory(FileOutputStream output) throws IOException {
+        saveStory(output, null);
+    }
+
+    /**
+     * Save the story to the provided output stream in the latest .storybook format,
+     * compressing pages in parallel. Pages are still written in order.
+     * @param output A stream to output the data to.
+     * @param executor The executor to compress pages on, or null to compress them on this thread
+     */
+    public void saveStory(FileOutputStream output, ExecutorService executor) throws IOException {
+        write(output.getChannel(), executor);
+        output.close();
+    }
+
+    /**
+     * Save the story back to the file it was last loaded from or saved to, appending only
+     * the pages that changed since then. The whole file is rewritten instead if it is not
+     * that file, if it is a version 1 file, or to compact it once most of it is stale.
+     * @param channel A writable channel of the file, it is left open
+     * @return Whether the changes were appended rather than the whole file rewritten
+     */
+    public boolean saveChanges(FileChannel channel) throws IOException {
+        if (!canAppend(channel)) {
+            channel.truncate(0);
+            channel.position(0);
+            write(channel, null);
+            return false;
+        }
+
+        try (StoryWriter writer = new StoryWriter(channel, savedTable, title, author, pageIds(), imageCount(), dictionary, codec)) {
+            for (int i = 0; i < pages.size(); i++) {
+                Page p = pages.get(i);
+
+                if (p.isSavedIn(this))
+                    writer.keepPage(p);
+                else
+                    writer.writePage(p);
+            }
+
+            // The index already in the file is kept unless text changed since
+            if (savedTextIndex != null)
+                writer.keepTextIndex();
+            else if (textIndex != null)
+                writer.setTextIndex(savedTextIndex = textIndex.toByteArray());
+
+            writer.finish();
+            saved(writer);
+        }
+
+        return true;
+    }
+
+    /**
+     * Write the whole story to a channel from its start.
+     * @param channel The channel to write to
+     * @param executor The executor to compress pages on, or null to compress them on this thread
+     */
+    private void write(WritableByteChannel channel, ExecutorService executor) throws IOException {
+        try (StoryWriter writer = new StoryWriter(channel, title, author, pageIds(), imageCount(), dictionary, codec)) {
+            // Write each page
+            if (executor != null)
+                writer.writePages(pages, executor);
+            else {
+                for (int i = 0; i < pages.size(); i++)
+                    writer.writePage(pages.get(i));
+            }
+
+            // The index in the file last loaded or saved is written as is while it still matches the pages
+            byte[] index = savedTextIndex != null ? savedTextIndex : textIndex != null ? textIndex.toByteArray() : null;
+            if (index != null)
+                writer.setTextIndex(index);
+
+            writer.finish();
+            savedTextIndex = index;
+            saved(writer);
+        }
+    }
+
+    /**
+     * Remember the file a reader just verified, so later changes can be appended to it.
+     * Version 1 files are always rewritten, so their pages are not kept.
+     * @param reader The reader, after every page was added to this story
+     */
+    void loaded(StoryReader reader) {
+        dictionary = reader.getDictionary();
+
+        if (reader.getVersion() == StoryFormat.VERSION_1)
+            return;
+
+        reader.markSaved(pages, this);
+        savedTextIndex = reader.getTextIndex();
+        savedTable = reader.getSectionTable();
+        savedLength = reader.getLength();
+        savedDictionary = dictionary;
+    }
+
+    /**
+     * Remember the file a writer just finished, so later changes can be appended to it.
+     * @param writer The writer
+     */
+    private void saved(StoryWriter writer) {
+        writer.markSaved(pages, this);
+        savedTable = writer.getSectionTable();
+        savedLength = writer.getLength();
+        savedDictionary = dictionary;
+    }
+
+    /**
+     * Get the reverse link index of the choices of the pages, building it if it is not built yet.
+     * @return The pages with a choice turning to each page number
+     */
+    PageLinks links() {
+        indexLinks();
+        return links;
+    }
+
+    /**
+     * Update the reverse link index after a page's choice changed.
+     * @param p The page, which is in this story
+     * @param from The old choice
+     * @param to The new choice
+     */
+    void choiceChanged(Page p, int from, int to) {
+        if (links == null)
+            return;
+
+        links.remove(from, p);
+        links.add(to, p);
+    }
+
+    /**
+     * Update the text index before a page's text changes.
+     * @param p The page, which is in this story and still has its old text
+     * @param text The new text
+     */
+    void textChanged(Page p, String text) {
+        savedTextIndex = null;
+
+        if (textIndex != null)
+            textIndex.update(p.getId(), p.getText(), text);
+    }
+
+    /**
+     * Pass a page that changed to the listener.
+     * @param p The page, which is in this story
+     * @param change What changed, one of the CHANGED_ constants
+     */
+    void pageChanged(Page p, int change) {
+        if (listener != null)
+            listener.onPageChanged(p.index, change);
+    }
+
+    /**
+     * Add the text of a page that was just added to the text index.
+     * @param p The page
+     */
+    private void textAdded(Page p) {
+        savedTextIndex = null;
+
+        if (textIndex != null)
+            textIndex.add(p.getId(), p.getText());
+    }
+
+    /**
+     * Build the reverse link index if it is not built yet. Pages then keep it up to date as their choices change.
+     */
+    private void indexLinks() {
+        if (links != null)
+            return;
+
+        links = new PageLinks();
+        for (int i = 0; i < pages.size(); i++)
+            link(pages.get(i), i);
+    }
+
+    /**
+     * Add a page's choices to the reverse link index.
+     * @param p The page
+     * @param index The index of the page
+     */
+    private void link(Page p, int index) {
+        p.story = this;
+        p.index = index;
+        for (int i = 0; i < p.getChoiceCount(); i++)
+            links.add(p.getChoice(i), p);
+    }
+
+    /**
+     * Update the indexes of a range of pages after they moved.
+     * @param start The first index
+     * @param end One past the last index
+     */
+    private void reindex(int start, int end) {
+        for (int i = start; i < end; i++) {
+            Page p = pages.get(i);
+            p.index = i;
+            ids.put(p.getId(), i);
+        }
+    }
+
+    /**
+     * Check that a page can be added, before anything is changed for it.
+     * @param p The page
+     * @throws IllegalArgumentException If the page is in another story
+     */
+    private void checkOwner(Page p) {
+        if (p.story != null && p.story != this)
+            throw new IllegalArgumentException("Page is already in another story");
+    }
+
+    /**
+     * Give a page an ID if it has none or its ID is taken, and add it to the ID map.
+     * @param p The page
+     * @param index The index of the page
+     */
+    private void identify(Page p, int index) {
+        p.story = this;
+        p.index = index;
+
+        if (p.getId() <= 0 || ids.containsKey(p.getId())) {
+            while (ids.containsKey(nextId))
+                nextId++;
+
+            p.setId(nextId);
+        }
+
+        nextId = Math.max(nextId, p.getId() + 1);
+        ids.put(p.getId(), index);
+    }
+
+    /**
+     * Get the ID of every page, in page order.
+     * @return The page IDs
+     */
+    private int[] pageIds() {
+        int[] pageIds = new int[pages.size()];
+
+        for (int i = 0; i < pageIds.length; i++)
+            pageIds[i] = pages.get(i).getId();
+
+        return pageIds;
+    }
+
+    /**
+     * Renumber the choices turning to a moved page and the pages it moved past, before the reverse
+     * link index is changed. Only the pages found through the index are changed.
+     * @param from The page number of the moved page, or REMOVED for an inserted page
+     * @param to The page number it moved to, or REMOVED for a removed page
+     */
+    private void renumber(int from, int to) {
+        int start = Math.min(from, to);
+        int end = Math.min(Math.max(from, to), links.end() - 1) + 1;
+
+        renumberings++;
+        for (int number = start; number < end; number++) {
+            Page[] sources = links.sources(number);
+
+            for (int i = links.count(number) - 1; i >= 0; i--) {
+                Page p = sources[i];
+
+                // A page with several choices in the range is found once for each
+                if (p.renumberedIn == renumberings)
+                    continue;
+
+                p.renumberedIn = renumberings;
+                for (int j = 0; j < p.getChoiceCount(); j++) {
+                    int choice = p.getChoice(j);
+                    int renumbered = renumbered(choice, from, to);
+
+                    // Clean pages save their choices as page IDs, so only a cleared choice changes what is saved
+                    if (renumbered != choice)
+                        p.renumber(j, renumbered, renumbered == 0);
+                }
+
+                renumbered.add(p);
+            }
+        }
+    }
+
+    /**
+     * Get the page number a choice turns to after a page moved.
+     * @param choice The choice
+     * @param from The page number of the moved page, or REMOVED for an inserted page
+     * @param to The page number it moved to, or REMOVED for a removed page
+     * @return The renumbered choice
+     */
+    private static int renumbered(int choice, int from, int to) {
+        if (choice < 1)
+            return choice;
+        else if (choice == from)
+            return to == REMOVED ? 0 : to;
+        else if (from < to && choice > from && choice <= to)
+            return choice - 1;
+        else if (from > to && choice >= to && choice < from)
+            return choice + 1;
+
+        return choice;
+    }
+
+    /**
+     * Pass the pages that were renumbered, and are still in the story, to the listener.
+     */
+    private void renumbered() {
+        for (int i = 0; i < renumbered.size(); i++) {
+            Page p = renumbered.get(i);
+
+            if (listener != null && p.story == this)
+                listener.onChoicesRenumbered(p.index);
+        }
+
+        renumbered.clear();
+    }
+
+    /**
+     * Count the pages with an image, which is saved in the header for listing stories without reading their pages.
+     * @return The number of pages with an image
+     */
+    private int imageCount() {
+        int count = 0;
+        for (int i = 0; i < pages.size(); i++) {
+            if (pages.get(i).hasImage())
+                count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Check whether changes can be appended to a file, rather than rewriting it.
+     * @param channel The channel of the file
+     * @return Whether the file looks like the one last saved and is not due for compaction
+     */
+    private boolean canAppend(FileChannel channel) throws IOException {
+        if (savedTable == null || channel.size() != savedLength || !endsWithSavedTable(channel))
+            return false;
+
+        // Kept records were compressed with the file's dictionary, which is only written in full
+        if (!Arrays.equals(dictionary, savedDictionary))
+            return false;
+
+        // Every journaled save adds a page section
+        int count = savedTable.getShort(0) & 0xFFFF;
+        int pageSections = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (savedTable.getInt(2 + i * StoryFormat.SECTION_TABLE_ENTRY_SIZE) == StoryFormat.SECTION_PAGES)
+                pageSections++;
+        }
+
+        if (pageSections > MAX_JOURNALED_SAVES)
+            return false;
+
+        // Compact once the records that would be kept are less than half of the file
+        long live = 0;
+        for (int i = 0; i < pages.size(); i++) {
+            if (pages.get(i).isSavedIn(this))
+                live += pages.get(i).getRecordLength();
+        }
+
+        return live * 2 >= savedLength;
+    }
+
+    /**
+     * Check that a file still ends with the section table and trailer this story last wrote or read there,
+     * so a journal is never appended to a different file that only happens to have the same length.
+     * The table holds the checksum of every section, so it identifies the file's contents.
+     * @param channel A channel of the file, which is savedLength bytes long
+     * @return Whether the file is the one this story was last saved to
+     */
+    private boolean endsWithSavedTable(FileChannel channel) throws IOException {
+        ByteBuffer saved = savedTable.duplicate();
+        saved.clear();
+
+        int tableLength = saved.capacity();
+        long tableOffset = savedLength - tableLength - StoryFormat.TRAILER_SIZE;
+        if (tableOffset < StoryFormat.HEADER_SIZE)
+            return false;
+
+        ByteBuffer end = ByteBuffer.allocate(tableLength + StoryFormat.TRAILER_SIZE);
+        while (end.hasRemaining()) {
+            if (channel.read(end, tableOffset + end.position()) < 0)
+                return false;
+        }
+
+        for (int i = 0; i < StoryFormat.MAGIC.length; i++) {
+            if (end.get(tableLength + 8 + i) != StoryFormat.MAGIC[i])
+                return false;
+        }
+
+        if ((end.getInt(tableLength) & 0xFFFFFFFFL) != tableOffset)
+            return false;
+
+        end.position(0);
+        end.limit(tableLength);
+        return end.equals(saved);
+    }
+}
@@ -0,0 +1,262 @@
+package xyz.topplekek.storybook;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Builds a dictionary for compressing page text from a corpus of stories.
+ * Page texts are short, so most of them are too small for deflate to find repeats
+ * in on its own; a dictionary of the phrases common across pages gives it some.
+ * Segments of the corpus are picked by how many pages share the short substrings
+ * in them, one segment per slice of the corpus, and later picks skip substrings
+ * earlier ones already cover. This is a simplified form of the COVER algorithm
+ * used by zstd's dictionary builder.
+ * @since 17-10-2026
+ */
+public final class StoryDictionary {
+    /**
+     * The dictionary size used when none is given.
+     */
+    public static final int DEFAULT_SIZE = 16 * 1024;
+
+    // Length of the substrings that are counted, and of each segment of the dictionary
+    private static final int DMER_LENGTH = 6;
+    private static final int SEGMENT_LENGTH = 48;
+
+    // Corpus bytes sampled per dictionary byte, larger corpora are sampled evenly by page
+    private static final int MAX_SAMPLES_PER_BYTE = 100;
+
+    private StoryDictionary() {}
+
+    /**
+     * Build a dictionary of the default size.
+     * @param corpus The stories to build it from
+     * @return The dictionary
+     * @throws IllegalArgumentException If the stories have no text to build it from
+     */
+    public static byte[] build(List<Story> corpus) {
+        return build(corpus, DEFAULT_SIZE);
+    }
+
+    /**
+     * Build a dictionary.
+     * @param corpus The stories to build it from
+     * @param size The maximum size of the dictionary, at most 32 KiB
+     * @return The dictionary, which may be shorter than {@code size} for small corpora
+     * @throws IllegalArgumentException If the size is invalid or the stories have no text to build it from
+     */
+    public static byte[] build(List<Story> corpus, int size) {
+        if (size < SEGMENT_LENGTH || size > StoryFormat.MAX_DICTIONARY_SIZE)
+            throw new IllegalArgumentException("Invalid dictionary size: " + size);
+
+        // Page text is encoded the same way it is when saved
+        ArrayList<byte[]> samples = new ArrayList<>();
+        long total = 0;
+
+        for (Story story : corpus) {
+            for (int i = 0; i < story.size(); i++) {
+                String text = story.getPageAt(i).getText();
+
+                if (text != null && text.length() >= DMER_LENGTH) {
+                    byte[] sample = text.getBytes(StoryFormat.CHARSET);
+                    samples.add(sample);
+                    total += sample.length;
+                }
+            }
+        }
+
+        if (samples.isEmpty())
+            throw new IllegalArgumentException("The stories have no text to build a dictionary from");
+
+        byte[] text = sample(samples, total, (long) size * MAX_SAMPLES_PER_BYTE);
+        int[] dmers = hashDmers(text);
+        IntIntMap frequencies = countFrequencies(samples, text, dmers);
+
+        return selectSegments(text, dmers, frequencies, size);
+    }
+
+    /**
+     * Join the samples, taking every nth one if there are too many bytes.
+     * Every sample is followed by a zero byte, so substrings never span two of them.
+     */
+    private static byte[] sample(ArrayList<byte[]> samples, long total, long limit) {
+        int step = (int) Math.max(1, (total + limit - 1) / limit);
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(total + samples.size(), limit + limit / 8));
+        ArrayList<byte[]> kept = new ArrayList<>();
+
+        for (int i = 0; i < samples.size(); i += step) {
+            out.write(samples.get(i), 0, samples.get(i).length);
+            out.write(0);
+            kept.add(samples.get(i));
+        }
+
+        samples.clear();
+        samples.addAll(kept);
+        return out.toByteArray();
+    }
+
+    /**
+     * Hash the substring starting at each position of the joined samples.
+     * @return The hash of each substring, never 0, or 0 where it would span a sample boundary
+     */
+    private static int[] hashDmers(byte[] text) {
+        int[] dmers = new int[text.length];
+        int valid = 0;
+
+        for (int i = text.length - 1; i >= 0; i--) {
+            valid = text[i] == 0 ? 0 : valid + 1;
+
+            if (valid >= DMER_LENGTH) {
+                long h = 0;
+                for (int j = 0; j < DMER_LENGTH; j++)
+                    h = (h << 8) | (text[i + j] & 0xFF);
+
+                int hash = (int) ((h * 0x9E3779B97F4A7C15L) >>> 32);
+                dmers[i] = hash == 0 ? 1 : hash;
+            }
+        }
+
+        return dmers;
+    }
+
+    /**
+     * Count the number of samples each substring appears in.
+     */
+    private static IntIntMap countFrequencies(ArrayList<byte[]> samples, byte[] text, int[] dmers) {
+        IntIntMap frequencies = new IntIntMap(text.length / 4);
+        IntIntMap seen = new IntIntMap(64);
+        int start = 0;
+
+        for (byte[] sample : samples) {
+            seen.clear();
+
+            for (int i = start; i < start + sample.length; i++) {
+                if (dmers[i] != 0 && !seen.containsKey(dmers[i])) {
+                    seen.put(dmers[i], 1);
+                    frequencies.put(dmers[i], frequencies.get(dmers[i], 0) + 1);
+                }
+            }
+
+            start += sample.length + 1;
+        }
+
+        return frequencies;
+    }
+
+    /**
+     * Pick the best segment of each slice of the joined samples, and put them together
+     * with the best last, where deflate can reach them with the shortest distances.
+     */
+    private static byte[] selectSegments(byte[] text, int[] dmers, IntIntMap frequencies, int size) {
+        int epochs = Math.max(1, Math.min(size / SEGMENT_LENGTH, text.length / SEGMENT_LENGTH));
+        int epochLength = text.length / epochs;
+        int[] starts = new int[epochs];
+        long[] scores = new long[epochs];
+        int found = 0;
+
+        // Substrings in the current window, with how often each is in it
+        IntIntMap window = new IntIntMap(SEGMENT_LENGTH * 2);
+
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            int from = epoch * epochLength;
+            int to = Math.min(text.length, from + epochLength);
+            long best = 0, score = 0;
+            int bestStart = -1;
+            window.clear();
+
+            // Slide a segment over the slice, scoring each substring shared by other samples once
+            for (int end = from; end < to; end++) {
+                score += enter(window, frequencies, dmers[end]);
+
+                int start = end - SEGMENT_LENGTH + 1;
+                if (start > from)
+                    score -= leave(window, frequencies, dmers[start - 1]);
+
+                if (start >= from && score > best) {
+                    best = score;
+                    bestStart = start;
+                }
+            }
+
+            if (bestStart < 0)
+                continue;
+
+            // Later segments only score for what this one does not cover already
+            for (int i = bestStart; i < bestStart + SEGMENT_LENGTH; i++) {
+                if (dmers[i] != 0 && frequencies.containsKey(dmers[i]))
+                    frequencies.put(dmers[i], 0);
+            }
+
+            starts[found] = bestStart;
+            scores[found++] = best;
+        }
+
+        // Sort the segments by score, lowest first
+        Integer[] order = new Integer[found];
+        for (int i = 0; i < found; i++)
+            order[i] = i;
+
+        final long[] segmentScores = scores;
+        Arrays.sort(order, new Comparator<Integer>() {
+            /**
+             * Compare two segments by score.
+             */
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(segmentScores[a], segmentScores[b]);
+            }
+        });
+
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(size);
+        for (int i = Math.max(0, found - size / SEGMENT_LENGTH); i < found; i++)
+            dictionary.write(text, starts[order[i]], SEGMENT_LENGTH);
+
+        if (dictionary.size() == 0)
+            throw new IllegalArgumentException("The stories have no text to build a dictionary from");
+
+        return dictionary.toByteArray();
+    }
+
+    /**
+     * Add a substring to the window.
+     * @return The score it adds, if it was not in the window yet
+     */
+    private static int enter(IntIntMap window, IntIntMap frequencies, int dmer) {
+        if (dmer == 0)
+            return 0;
+
+        int count = window.get(dmer, 0);
+        window.put(dmer, count + 1);
+
+        return count == 0 ? score(frequencies, dmer) : 0;
+    }
+
+    /**
+     * Remove a substring from the window.
+     * @return The score it takes away, if it is no longer in the window
+     */
+    private static int leave(IntIntMap window, IntIntMap frequencies, int dmer) {
+        if (dmer == 0)
+            return 0;
+
+        int count = window.get(dmer, 0);
+        if (count > 1) {
+            window.put(dmer, count - 1);
+            return 0;
+        }
+
+        window.remove(dmer);
+        return score(frequencies, dmer);
+    }
+
+    /**
+     * Get the score of a substring: the number of samples it is in, if there is more than one.
+     */
+    private static int score(IntIntMap frequencies, int dmer) {
+        int frequency = frequencies.get(dmer, 0);
+        return frequency >= 2 ? frequency : 0;
+    }
+}
@@ -0,0 +1,336 @@
+package xyz.topplekek.storybook;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterOutputStream;
+
+/**
+ * Constants and helpers shared by the .storybook readers and writers.
+ * See STORYBOOK.md for information on this format.
+ * @since 17-10-2026
+ */
+final class StoryFormat {
+    /**
+     * The first bytes of every file but version 1 files,
+     * which start with a title, which can never begin with 0x89 in UTF-8.
+     */
+    static final byte[] MAGIC = {(byte) 0x89, 'S', 'B', 'K'};
+
+    // Charset of every string in the file, header strings and page text alike
+    static final Charset CHARSET = StandardCharsets.UTF_8;
+    static final int VERSION_1 = 1;
+    static final int VERSION = 4;
+
+    /** Header flag set once pages have been appended, so the sections can only be found through the section table. */
+    static final int FLAG_JOURNALED = 1;
+    static final int FLAGS_OFFSET = 6;
+
+    // Section tags, as big endian four character codes
+    static final int SECTION_META = 0x4D455441;  // "META"
+    static final int SECTION_PAGE_IDS = 0x50494453; // "PIDS"
+    static final int SECTION_DICTIONARY = 0x44494354; // "DICT"
+    static final int SECTION_PAGES = 0x50414745; // "PAGE"
+    static final int SECTION_PAGE_DIRECTORY = 0x50444952; // "PDIR"
+    static final int SECTION_TEXT_INDEX = 0x54494458; // "TIDX"
+    static final int SECTION_TABLE = 0x53544142; // "STAB"
+
+    /** Set in a stored choice that is a page number past the last page, rather than the ID of a page. */
+    static final int CHOICE_NUMBER = 0x80000000;
+
+    /** The most bytes an unsigned LEB128 varint of 32 bits takes. */
+    static final int MAX_VARINT_SIZE = 5;
+
+    /** Section length written for the page section, whose real length is only known once it is written. */
+    static final int LENGTH_STREAMED = 0xFFFFFFFF;
+
+    // Size of the fixed header and trailer, and of the structures at known offsets
+    static final int HEADER_SIZE = 8;
+    static final int TRAILER_SIZE = 12;
+    static final int SECTION_TABLE_ENTRY_SIZE = 16;
+    static final int PAGE_DIRECTORY_ENTRY_SIZE = 12;
+
+    // Payload encodings as stored in the file
+    static final int ENCODING_NONE = 0;
+    static final int ENCODING_ZLIB = 1;
+
+    /** Raw deflate without a ZLIB header or checksum, with the file's dictionary preset. Only used for text. */
+    static final int ENCODING_DEFLATE_DICTIONARY = 2;
+
+    /** The largest useful dictionary, the size of the deflate window. */
+    static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    // Only used in memory for version 1 images, which are ZLIB compressed base64 strings
+    static final int ENCODING_ZLIB_BASE64 = 0x100;
+
+    private StoryFormat() {}
+
+    /**
+     * Check whether a header starts with the magic.
+     * @param header At least the first 4 bytes of a file
+     * @return Whether the magic matches
+     */
+    static boolean isMagic(byte[] header) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the printable name of a section tag.
+     * @param tag The tag
+     * @return The four character code
+     */
+    static String sectionName(int tag) {
+        return new String(new char[] {(char) (tag >>> 24), (char) ((tag >>> 16) & 0xFF),
+                (char) ((tag >>> 8) & 0xFF), (char) (tag & 0xFF)});
+    }
+
+    /**
+     * Read an unsigned LEB128 varint, 7 bits per byte from the lowest, with the top bit set on every byte but the last.
+     * @param buffer The buffer positioned at the varint
+     * @return The value, as an unsigned 32 bit int
+     * @throws IOException If the varint is longer than 32 bits
+     */
+    static int getVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = buffer.get();
+            value |= (b & 0x7F) << shift;
+
+            if (b >= 0)
+                return value;
+        }
+
+        throw new IOException("Varint is longer than 32 bits");
+    }
+
+    /**
+     * Put an unsigned LEB128 varint.
+     * @param buffer The buffer, with at least {@link #MAX_VARINT_SIZE} bytes remaining
+     * @param value The value, as an unsigned 32 bit int
+     */
+    static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Get the number of bytes a value takes as an unsigned LEB128 varint.
+     * @param value The value, as an unsigned 32 bit int
+     * @return The size, from 1 to {@link #MAX_VARINT_SIZE}
+     */
+    static int varintSize(int value) {
+        return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    /**
+     * Read the page ID section, a varint ID for each page.
+     * @param section The section contents
+     * @param numPages The number of pages in the file
+     * @param ids The array to put the ID of each page in, in page order
+     * @return A map from each page ID to the index of its page
+     * @throws IOException If the section does not match the page count, or an ID is invalid or repeated
+     */
+    static IntIntMap readPageIds(ByteBuffer section, int numPages, int[] ids) throws IOException {
+        if (section.remaining() < numPages)
+            throw new IOException("Page ID section does not match the page count");
+
+        IntIntMap indexes = new IntIntMap(numPages);
+
+        try {
+            for (int i = 0; i < numPages; i++) {
+                ids[i] = getVarint(section);
+
+                if (ids[i] <= 0 || indexes.containsKey(ids[i]))
+                    throw new IOException("Invalid page ID " + ids[i] + " of page " + (i + 1));
+
+                indexes.put(ids[i], i);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Page ID section does not match the page count");
+        }
+
+        if (section.hasRemaining())
+            throw new IOException("Page ID section does not match the page count");
+
+        return indexes;
+    }
+
+    /**
+     * Read a null terminated UTF-8 string, scanning the backing array directly when there is one.
+     * @param buffer The buffer positioned at the start of the string, it is left after the terminator
+     * @return The string
+     * @throws BufferUnderflowException If the buffer ends before the terminator
+     */
+    static String readString(ByteBuffer buffer) {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        int end = start;
+
+        if (buffer.hasArray()) {
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset();
+
+            while (end < limit && array[offset + end] != '\0')
+                end++;
+
+            if (end == limit)
+                throw new BufferUnderflowException();
+
+            buffer.position(end + 1);
+            return new String(array, offset + start, end - start, CHARSET);
+        }
+
+        while (end < limit && buffer.get(end) != '\0')
+            end++;
+
+        if (end == limit)
+            throw new BufferUnderflowException();
+
+        byte[] bytes = new byte[end - start];
+        buffer.get(bytes);
+        buffer.get();
+
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * Read the dictionary section: a uint8 encoding followed by the encoded dictionary.
+     * @param section The section contents
+     * @return The dictionary
+     * @throws IOException If the section is malformed or the dictionary is empty or too long
+     */
+    static byte[] readDictionary(ByteBuffer section) throws IOException {
+        if (!section.hasRemaining())
+            throw new IOException("Dictionary section is empty");
+
+        int encoding = section.get() & 0xFF;
+        if (encoding != ENCODING_NONE && encoding != ENCODING_ZLIB)
+            throw new IOException("Unknown dictionary encoding: " + encoding);
+
+        PageDecoder decoder = new PageDecoder();
+        byte[] dictionary;
+
+        try {
+            dictionary = decoder.decode(section, encoding, null);
+        } finally {
+            decoder.end();
+        }
+
+        if (dictionary.length == 0 || dictionary.length > MAX_DICTIONARY_SIZE)
+            throw new IOException("Invalid dictionary length: " + dictionary.length);
+
+        return dictionary;
+    }
+
+    /**
+     * Get the page number a stored choice turns to.
+     * @param choice The stored choice, a page ID or a page number with {@link #CHOICE_NUMBER} set
+     * @param indexes A map from each page ID to the index of its page
+     * @return The 1-based page number, or 0 for no choice or the ID of a missing page
+     */
+    static int choiceNumber(int choice, IntIntMap indexes) {
+        if (choice == 0)
+            return 0;
+        else if ((choice & CHOICE_NUMBER) != 0)
+            return choice & ~CHOICE_NUMBER;
+
+        return indexes.get(choice, -1) + 1;
+    }
+
+    /**
+     * Get the stored form of a choice.
+     * @param number The 1-based page number the choice turns to, or 0 for none
+     * @param ids The ID of each page, in page order
+     * @return The ID of the page, or the page number with {@link #CHOICE_NUMBER} set if it is past the last page
+     */
+    static int storedChoice(int number, int[] ids) {
+        if (number <= 0)
+            return 0;
+        else if (number <= ids.length)
+            return ids[number - 1];
+
+        return number | CHOICE_NUMBER;
+    }
+
+    /**
+     * Get a stored choice in the form it takes as a varint, rotated so it stays small:
+     * page IDs are doubled and page numbers past the last page are doubled plus one.
+     * @param choice The stored choice
+     * @return The varint value
+     */
+    static int varintChoice(int choice) {
+        return Integer.rotateLeft(choice, 1);
+    }
+
+    /**
+     * Get the stored choice of a varint choice.
+     * @param value The varint value
+     * @return The stored choice
+     */
+    static int storedVarintChoice(int value) {
+        return Integer.rotateRight(value, 1);
+    }
+
+    /**
+     * Compress a byte array with ZLIB compression.
+     * @param data The data to compress
+     * @return The compressed data
+     */
+    static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DeflaterOutputStream compressedOut = new DeflaterOutputStream(output);
+
+        compressedOut.write(data);
+        compressedOut.close();
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Decompress the start of a byte array with ZLIB compression, reusing an inflater.
+     * @param inflater The inflater to use, it is reset before use
+     * @param data The data to decompress
+     * @param length The number of bytes of {@code data} to decompress
+     * @return The decompressed data
+     */
+    static byte[] decompress(Inflater inflater, byte[] data, int length) throws IOException {
+        return decompress(inflater, data, length, null);
+    }
+
+    /**
+     * Decompress the start of a byte array, reusing an inflater.
+     * @param inflater The inflater to use, it is reset before use. Raw deflate needs an inflater made with {@code nowrap}
+     * @param data The data to decompress
+     * @param length The number of bytes of {@code data} to decompress
+     * @param dictionary The dictionary the data was compressed with, or null for none
+     * @return The decompressed data
+     */
+    static byte[] decompress(Inflater inflater, byte[] data, int length, byte[] dictionary) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(length * 4);
+        InflaterOutputStream decompressedOut = new InflaterOutputStream(output, inflater);
+
+        inflater.reset();
+        if (dictionary != null)
+            inflater.setDictionary(dictionary);
+
+        decompressedOut.write(data, 0, length);
+        decompressedOut.finish();
+
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,525 @@
+package xyz.topplekek.storybook;
+
+import java.util.Arrays;
+
+/**
+ * An index of the page graph of a story, where each page links to the pages its choices turn to.
+ * Finds the pages that can not be reached from page 1, the endings (pages without choices),
+ * the dead ends that can never reach an ending, the pages in cycles (through strongly connected
+ * components), and the shortest number of turns from page 1 to each page and from each page to an
+ * ending. Everything is held in primitive arrays and computed in O(pages) time.
+ * Changing a page's choices or adding a page only marks the analysis out of date, it is done again
+ * for the whole story the next time the graph is queried. A single choice can change the distances
+ * and components of every page, so updating them in place would not be cheaper in the worst case,
+ * and the editor only queries the graph when the story is checked, not on every edit.
+ * When pages are inserted, removed or moved, every page's choices are read from the story again,
+ * but only the next time the graph is queried.
+ * @since 17-10-2026
+ */
+public class StoryGraph {
+    /** Distance of a page that can not be reached, or that can not reach an ending. */
+    public static final int UNREACHABLE = -1;
+
+    private static final int[] NO_CHOICES = new int[0];
+
+    private final Story story;
+    private int size;
+
+    // Whether the page order changed, so the choices must be read from the story again
+    private boolean stale;
+
+    // The 1-based page numbers each page's choices turn to, as stored in the pages
+    private int[][] choices;
+
+    // Results of the last analysis
+    private boolean analysed;
+    private int[] distanceFromStart, distanceToEnding;
+    private int[] component, componentSize;
+    private int componentCount, endingCount, unreachableCount, deadEndCount, cyclicCount;
+
+    // Scratch arrays, kept between analyses
+    private int[] order, low, stack, callStack, callEdge, queue;
+    private int[] reverseStart, reverseEdges;
+
+    /**
+     * Construct a new graph of a story's choices.
+     * @param story The story
+     */
+    public StoryGraph(Story story) {
+        this.story = story;
+        choices = new int[16][];
+        read();
+    }
+
+    /**
+     * Update the choices of a page.
+     * @param index The index of the page
+     * @param choices The choices, 1-based page numbers or 0 for none
+     */
+    public void setChoices(int index, int... choices) {
+        checkIndex(index);
+        this.choices[index] = choices.clone();
+        analysed = false;
+    }
+
+    /**
+     * Update the choices of a page from the page itself.
+     * @param index The index of the page
+     * @param p The page
+     */
+    public void setChoices(int index, Page p) {
+        checkIndex(index);
+        choices[index] = choicesOf(p);
+        analysed = false;
+    }
+
+    /**
+     * Add a page to the end of the graph. If the page order changed since the graph was last used,
+     * the choices are read from the story instead, which must already have the page.
+     * @param choices The choices, 1-based page numbers or 0 for none
+     */
+    public void addPage(int... choices) {
+        add(choices.clone());
+    }
+
+    /**
+     * Add a page to the end of the graph from the page itself, once it is added to the story.
+     * @param p The page
+     */
+    public void addPage(Page p) {
+        add(choicesOf(p));
+    }
+
+    /**
+     * Mark the choices of every page out of date, after pages were inserted, removed or moved in the story.
+     * They are read from the story again the next time the graph is used.
+     */
+    public void pageOrderChanged() {
+        stale = true;
+        analysed = false;
+    }
+
+    /**
+     * Get the number of pages in the graph.
+     * @return The number of pages
+     */
+    public int size() {
+        refresh();
+        return size;
+    }
+
+    /**
+     * Check whether a page can be reached from page 1.
+     * @param index The index of the page
+     * @return Whether the page is reachable
+     */
+    public boolean isReachable(int index) {
+        return getDistanceFromStart(index) != UNREACHABLE;
+    }
+
+    /**
+     * Get the number of pages that can not be reached from page 1.
+     * @return The number of unreachable pages
+     */
+    public int getUnreachableCount() {
+        analyse();
+        return unreachableCount;
+    }
+
+    /**
+     * Check whether a page is an ending, with no valid choices.
+     * @param index The index of the page
+     * @return Whether the page is an ending
+     */
+    public boolean isEnding(int index) {
+        checkIndex(index);
+        return hasNoChoices(index);
+    }
+
+    /**
+     * Get the number of endings.
+     * @return The number of pages with no valid choices
+     */
+    public int getEndingCount() {
+        analyse();
+        return endingCount;
+    }
+
+    /**
+     * Get the number of dead ends, pages that can never reach an ending because every path from them loops.
+     * @return The number of dead ends
+     */
+    public int getDeadEndCount() {
+        analyse();
+        return deadEndCount;
+    }
+
+    /**
+     * Check whether a page is part of a cycle, so it can be turned to again after leaving it.
+     * @param index The index of the page
+     * @return Whether the page is in a cycle
+     */
+    public boolean isInCycle(int index) {
+        analyse();
+        checkIndex(index);
+        return componentSize[component[index]] > 1 || turnsTo(index, index);
+    }
+
+    /**
+     * Get the number of pages that are part of a cycle.
+     * @return The number of pages in cycles
+     */
+    public int getCyclicCount() {
+        analyse();
+        return cyclicCount;
+    }
+
+    /**
+     * Get the strongly connected component of a page. Pages in the same component can all be turned to from each other.
+     * @param index The index of the page
+     * @return The component, from 0 to {@link #getComponentCount()}
+     */
+    public int getComponent(int index) {
+        analyse();
+        checkIndex(index);
+        return component[index];
+    }
+
+    /**
+     * Get the number of strongly connected components.
+     * @return The number of components
+     */
+    public int getComponentCount() {
+        analyse();
+        return componentCount;
+    }
+
+    /**
+     * Get the fewest turns it takes to get from page 1 to a page.
+     * @param index The index of the page
+     * @return The number of turns, or {@link #UNREACHABLE}
+     */
+    public int getDistanceFromStart(int index) {
+        analyse();
+        checkIndex(index);
+        return distanceFromStart[index];
+    }
+
+    /**
+     * Get the fewest turns it takes to get from a page to any ending.
+     * @param index The index of the page
+     * @return The number of turns, 0 for an ending, or {@link #UNREACHABLE} if the page can never end
+     */
+    public int getDistanceToEnding(int index) {
+        analyse();
+        checkIndex(index);
+        return distanceToEnding[index];
+    }
+
+    /**
+     * Get the page a page's choice turns to.
+     * @param v The index of the page
+     * @param c The index of the choice
+     * @return The index of the page turned to, or -1 for no choice or an invalid one
+     */
+    private int next(int v, int c) {
+        int choice = choices[v][c];
+        return choice >= 1 && choice <= size ? choice - 1 : -1;
+    }
+
+    /**
+     * Check whether a page has no valid choices.
+     * @param v The index of the page
+     * @return Whether the page is an ending
+     */
+    private boolean hasNoChoices(int v) {
+        for (int c = 0; c < choices[v].length; c++) {
+            if (next(v, c) >= 0)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Check whether any of a page's choices turns to another page.
+     * @param v The index of the page
+     * @param w The index of the other page
+     * @return Whether a choice turns to it
+     */
+    private boolean turnsTo(int v, int w) {
+        for (int c = 0; c < choices[v].length; c++) {
+            if (next(v, c) == w)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Add a page to the end of the graph.
+     * @param choices The choices of the page, kept rather than copied
+     */
+    private void add(int[] choices) {
+        // Pages are added to the story first, so reading it again already finds this one
+        if (stale) {
+            refresh();
+            return;
+        }
+
+        if (size == this.choices.length)
+            this.choices = Arrays.copyOf(this.choices, size * 2);
+
+        this.choices[size++] = choices;
+        analysed = false;
+    }
+
+    /**
+     * Copy the choices of a page.
+     * @param p The page
+     * @return The choices
+     */
+    private static int[] choicesOf(Page p) {
+        if (p.getChoiceCount() == 0)
+            return NO_CHOICES;
+
+        int[] choices = new int[p.getChoiceCount()];
+        for (int c = 0; c < choices.length; c++)
+            choices[c] = p.getChoice(c);
+
+        return choices;
+    }
+
+    /**
+     * Read the choices of every page from the story again if the page order changed.
+     */
+    private void refresh() {
+        if (!stale)
+            return;
+
+        stale = false;
+        read();
+    }
+
+    /**
+     * Read the choices of every page from the story.
+     */
+    private void read() {
+        int old = size;
+        size = story.size();
+
+        if (size > choices.length)
+            choices = new int[Math.max(size, choices.length * 2)][];
+        else if (size < old)
+            Arrays.fill(choices, size, old, null);
+
+        for (int i = 0; i < size; i++)
+            choices[i] = choicesOf(story.getPageAt(i));
+    }
+
+    /**
+     * Bring the graph up to date with the story and check that a page exists.
+     * @param index The index of the page
+     * @throws IndexOutOfBoundsException If there is no page at the index
+     */
+    private void checkIndex(int index) {
+        refresh();
+
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Page " + index + " of " + size);
+    }
+
+    /**
+     * Analyse the graph if it changed since the last analysis.
+     */
+    private void analyse() {
+        refresh();
+
+        if (analysed)
+            return;
+
+        if (distanceFromStart == null || distanceFromStart.length < size) {
+            int capacity = choices.length;
+            distanceFromStart = new int[capacity];
+            distanceToEnding = new int[capacity];
+            component = new int[capacity];
+            componentSize = new int[capacity];
+            order = new int[capacity];
+            low = new int[capacity];
+            stack = new int[capacity];
+            callStack = new int[capacity];
+            callEdge = new int[capacity];
+            queue = new int[capacity];
+            reverseStart = new int[capacity + 1];
+        }
+
+        findDistancesFromStart();
+        findDistancesToEndings();
+        findComponents();
+        analysed = true;
+    }
+
+    /**
+     * Breadth first search from page 1.
+     */
+    private void findDistancesFromStart() {
+        Arrays.fill(distanceFromStart, 0, size, UNREACHABLE);
+        unreachableCount = size;
+
+        if (size == 0)
+            return;
+
+        int head = 0, tail = 0;
+        distanceFromStart[0] = 0;
+        queue[tail++] = 0;
+
+        while (head < tail) {
+            int v = queue[head++];
+
+            for (int c = 0; c < choices[v].length; c++)
+                tail = visit(next(v, c), distanceFromStart[v] + 1, distanceFromStart, tail);
+        }
+
+        unreachableCount = size - tail;
+    }
+
+    /**
+     * Breadth first search from every ending at once, following choices backwards.
+     */
+    private void findDistancesToEndings() {
+        // Build the reverse links, indexed by the page they turn to
+        Arrays.fill(reverseStart, 0, size + 1, 0);
+        for (int v = 0; v < size; v++) {
+            for (int c = 0; c < choices[v].length; c++) {
+                int w = next(v, c);
+
+                if (w >= 0)
+                    reverseStart[w + 1]++;
+            }
+        }
+
+        for (int v = 0; v < size; v++)
+            reverseStart[v + 1] += reverseStart[v];
+
+        if (reverseEdges == null || reverseEdges.length < reverseStart[size])
+            reverseEdges = new int[Math.max(reverseStart[size], choices.length * 2)];
+
+        // Fill each page's range, using the queue to track how much of it is filled
+        System.arraycopy(reverseStart, 0, queue, 0, size);
+        for (int v = 0; v < size; v++) {
+            for (int c = 0; c < choices[v].length; c++) {
+                int w = next(v, c);
+
+                if (w >= 0)
+                    reverseEdges[queue[w]++] = v;
+            }
+        }
+
+        Arrays.fill(distanceToEnding, 0, size, UNREACHABLE);
+        int head = 0, tail = 0;
+
+        for (int v = 0; v < size; v++) {
+            if (hasNoChoices(v)) {
+                distanceToEnding[v] = 0;
+                queue[tail++] = v;
+            }
+        }
+
+        endingCount = tail;
+
+        while (head < tail) {
+            int v = queue[head++];
+
+            for (int e = reverseStart[v]; e < reverseStart[v + 1]; e++)
+                tail = visit(reverseEdges[e], distanceToEnding[v] + 1, distanceToEnding, tail);
+        }
+
+        deadEndCount = size - tail;
+    }
+
+    /**
+     * Queue a page for a breadth first search if it has not been visited.
+     * @param v The page, or -1 for none
+     * @param distance The distance to give it
+     * @param distances The distances found so far
+     * @param tail The end of the queue
+     * @return The new end of the queue
+     */
+    private int visit(int v, int distance, int[] distances, int tail) {
+        if (v < 0 || distances[v] != UNREACHABLE)
+            return tail;
+
+        distances[v] = distance;
+        queue[tail] = v;
+        return tail + 1;
+    }
+
+    /**
+     * Find the strongly connected components with Tarjan's algorithm, without recursion.
+     */
+    private void findComponents() {
+        Arrays.fill(order, 0, size, -1);
+        Arrays.fill(component, 0, size, -1);
+        componentCount = 0;
+        cyclicCount = 0;
+
+        int counter = 0, sp = 0;
+
+        for (int root = 0; root < size; root++) {
+            if (order[root] != -1)
+                continue;
+
+            int cp = 0;
+            order[root] = low[root] = counter++;
+            stack[sp++] = root;
+            callStack[cp] = root;
+            callEdge[cp++] = 0;
+
+            while (cp > 0) {
+                int v = callStack[cp - 1];
+
+                // Follow the next choice of the page on top of the call stack
+                if (callEdge[cp - 1] < choices[v].length) {
+                    int w = next(v, callEdge[cp - 1]++);
+
+                    if (w < 0)
+                        continue;
+
+                    if (order[w] == -1) {
+                        order[w] = low[w] = counter++;
+                        stack[sp++] = w;
+                        callStack[cp] = w;
+                        callEdge[cp++] = 0;
+                    } else if (component[w] == -1)
+                        low[v] = Math.min(low[v], order[w]);
+
+                    continue;
+                }
+
+                // Every choice is followed, so close the component if this page is its root
+                cp--;
+
+                if (low[v] == order[v]) {
+                    int count = 0, w;
+
+                    do {
+                        w = stack[--sp];
+                        component[w] = componentCount;
+                        count++;
+                    } while (w != v);
+
+                    componentSize[componentCount++] = count;
+                    if (count > 1)
+                        cyclicCount += count;
+                    else if (turnsTo(v, v))
+                        cyclicCount++;
+                }
+
+                if (cp > 0) {
+                    int u = callStack[cp - 1];
+                    low[u] = Math.min(low[u], low[v]);
+                }
+            }
+        }
+    }
+}
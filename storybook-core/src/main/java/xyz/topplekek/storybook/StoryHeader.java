@@ -0,0 +1,222 @@
+package xyz.topplekek.storybook;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The title, author, page count and image count of a story, read without its pages.
+ * Files are read through their trailer and section table, so only the trailer, the table
+ * and the metadata section are read however large the file is. Version 1 files are mapped
+ * instead and the image count is found from the page records, still without decompressing anything.
+ * @since 17-10-2026
+ */
+public final class StoryHeader {
+    private final String title;
+    private final String author;
+    private final int numPages;
+    private final int imageCount;
+    private final int version;
+
+    /**
+     * Construct a new header.
+     * @param title The title of the story
+     * @param author The author of the story
+     * @param numPages The number of pages
+     * @param imageCount The number of pages with an image
+     * @param version The format version of the file
+     */
+    StoryHeader(String title, String author, int numPages, int imageCount, int version) {
+        this.title = title;
+        this.author = author;
+        this.numPages = numPages;
+        this.imageCount = imageCount;
+        this.version = version;
+    }
+
+    /**
+     * Read the header of a .storybook file of any version.
+     * @param channel A channel of the file, its position is not used or changed
+     * @return The header
+     * @throws EOFException If the file is truncated
+     * @throws IOException If the header is corrupt
+     */
+    public static StoryHeader read(FileChannel channel) throws IOException {
+        // Version 1 files have no magic, and the smallest are shorter than a later header
+        ByteBuffer header = read(channel, 0, (int) Math.min(channel.size(), StoryFormat.HEADER_SIZE));
+
+        if (header.limit() == StoryFormat.HEADER_SIZE && StoryFormat.isMagic(header.array())) {
+            int version = header.getShort(4) & 0xFFFF;
+
+            if (version != StoryFormat.VERSION)
+                throw new IOException("Unsupported storybook version: " + version);
+
+            return readMetadata(channel, version);
+        }
+
+        return scan(new MappedStory(channel, new PageCache(1)));
+    }
+
+    /**
+     * Get the title of the story.
+     * @return The title
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Get the author of the story.
+     * @return The author
+     */
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * Get the number of pages in the story.
+     * @return The number of pages
+     */
+    public int getNumPages() {
+        return numPages;
+    }
+
+    /**
+     * Get the number of pages with an image.
+     * @return The number of pages with an image
+     */
+    public int getImageCount() {
+        return imageCount;
+    }
+
+    /**
+     * Check whether any page has an image.
+     * @return Whether the story has images
+     */
+    public boolean hasImages() {
+        return imageCount > 0;
+    }
+
+    /**
+     * Get the format version of the file.
+     * @return The version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Find the metadata section through the trailer and section table, and read it.
+     * @param channel The channel of the file
+     * @param version The version of the file
+     * @return The header
+     */
+    private static StoryHeader readMetadata(FileChannel channel, int version) throws IOException {
+        long size = channel.size();
+        if (size < StoryFormat.HEADER_SIZE + StoryFormat.TRAILER_SIZE)
+            throw new EOFException("Storybook file is truncated");
+
+        ByteBuffer trailer = read(channel, size - StoryFormat.TRAILER_SIZE, StoryFormat.TRAILER_SIZE);
+        byte[] magic = new byte[StoryFormat.MAGIC.length];
+        trailer.position(8);
+        trailer.get(magic);
+
+        if (!StoryFormat.isMagic(magic))
+            throw new IOException("Storybook file has no trailer");
+
+        long tableOffset = trailer.getInt(0) & 0xFFFFFFFFL;
+        if (tableOffset + 2 > size)
+            throw new EOFException("Storybook file is truncated");
+
+        int count = read(channel, tableOffset, 2).getShort(0) & 0xFFFF;
+        ByteBuffer table = read(channel, tableOffset, 2 + count * StoryFormat.SECTION_TABLE_ENTRY_SIZE);
+
+        if (Crc32c.of(table) != trailer.getInt(4))
+            throw new IOException("Checksum mismatch in section table");
+
+        for (int i = 0; i < count; i++) {
+            int entry = 2 + i * StoryFormat.SECTION_TABLE_ENTRY_SIZE;
+
+            if (table.getInt(entry) == StoryFormat.SECTION_META) {
+                ByteBuffer metadata = read(channel, table.getInt(entry + 4) & 0xFFFFFFFFL, table.getInt(entry + 8));
+
+                if (Crc32c.of(metadata) != table.getInt(entry + 12))
+                    throw new IOException("Checksum mismatch in section META");
+
+                return parseMetadata(metadata, version);
+            }
+        }
+
+        throw new IOException("Storybook file has no metadata section");
+    }
+
+    /**
+     * Parse the metadata section.
+     * @param metadata The section contents
+     * @param version The version of the file
+     * @return The header
+     */
+    private static StoryHeader parseMetadata(ByteBuffer metadata, int version) throws IOException {
+        try {
+            String title = StoryFormat.readString(metadata);
+            String author = StoryFormat.readString(metadata);
+            int numPages = StoryFormat.getVarint(metadata);
+            int imageCount = StoryFormat.getVarint(metadata);
+
+            if (numPages < 0 || imageCount < 0 || imageCount > numPages)
+                throw new IOException("Invalid page or image count");
+
+            return new StoryHeader(title, author, numPages, imageCount, version);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Metadata section is truncated");
+        }
+    }
+
+    /**
+     * Count the images of a mapped story from its page records.
+     * @param story The story
+     * @return The header
+     */
+    private static StoryHeader scan(MappedStory story) throws IOException {
+        int imageCount = 0;
+
+        try {
+            for (int i = 0; i < story.size(); i++) {
+                if (story.getPageAt(i).hasImage())
+                    imageCount++;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        return new StoryHeader(story.getTitle(), story.getAuthor(), story.size(), imageCount, story.getVersion());
+    }
+
+    /**
+     * Read part of a file.
+     * @param channel The channel of the file
+     * @param position The offset to read from
+     * @param length The number of bytes to read
+     * @return A heap buffer of the bytes read
+     * @throws EOFException If the file ends first
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        if (length < 0)
+            throw new IOException("Negative section length: " + length);
+        else if (position + length > channel.size())
+            throw new EOFException("Storybook file is truncated");
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Storybook file is truncated");
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,539 @@
+package xyz.topplekek.storybook;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An inverted index of the words in the page text of a story, to find the pages that mention a word
+ * or a word starting with a prefix without reading every page.
+ * Each word keeps the IDs of the pages it is on, sorted, as varint deltas, so a word on most pages
+ * takes about a byte per page. Pages are indexed by ID, so inserting, removing and moving pages
+ * only changes the lists of the words on those pages, and editing a page's text only changes the
+ * lists of the words it gained or lost.
+ * Get it from {@link Story#getTextIndex()}, which keeps it up to date and saves it with the story.
+ * @since 17-10-2026
+ */
+public class StoryIndex {
+    // Longer words are not indexed
+    private static final int MAX_WORD_LENGTH = 64;
+
+    private static final int[] NO_PAGES = new int[0];
+
+    /**
+     * The IDs of the pages a word is on.
+     */
+    private static final class Postings {
+        // Deltas between increasing page IDs, each a varint
+        byte[] data = new byte[4];
+        int length;
+        int count;
+        int last;
+
+        /**
+         * Add a page, appending it if its ID is the largest yet.
+         * @param id The page ID
+         */
+        void add(int id) {
+            if (id > last) {
+                append(id - last);
+                last = id;
+                count++;
+                return;
+            }
+
+            int[] ids = decode(count + 1);
+            int i = Arrays.binarySearch(ids, 0, count, id);
+            if (i >= 0)
+                return;
+
+            i = -i - 1;
+            System.arraycopy(ids, i, ids, i + 1, count - i);
+            ids[i] = id;
+            encode(ids, count + 1);
+        }
+
+        /**
+         * Remove a page.
+         * @param id The page ID
+         * @return Whether the page was in the list
+         */
+        boolean remove(int id) {
+            if (id > last)
+                return false;
+
+            int[] ids = decode(count);
+            int i = Arrays.binarySearch(ids, 0, count, id);
+            if (i < 0)
+                return false;
+
+            System.arraycopy(ids, i + 1, ids, i, count - i - 1);
+            encode(ids, count - 1);
+            return true;
+        }
+
+        /**
+         * Decode the page IDs.
+         * @param capacity The length of the array to decode them into, at least the count
+         * @return The IDs, in increasing order
+         */
+        int[] decode(int capacity) {
+            int[] ids = new int[capacity];
+            int id = 0;
+
+            for (int i = 0, position = 0; i < count; i++) {
+                int delta = 0;
+
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[position++];
+                    delta |= (b & 0x7F) << shift;
+
+                    if (b >= 0)
+                        break;
+                }
+
+                id += delta;
+                ids[i] = id;
+            }
+
+            return ids;
+        }
+
+        /**
+         * Replace the list.
+         * @param ids The page IDs, in increasing order
+         * @param count The number of IDs
+         */
+        private void encode(int[] ids, int count) {
+            length = 0;
+            last = 0;
+
+            for (int i = 0; i < count; i++) {
+                append(ids[i] - last);
+                last = ids[i];
+            }
+
+            this.count = count;
+        }
+
+        /**
+         * Append a delta as a varint.
+         * @param delta The delta
+         */
+        private void append(int delta) {
+            if (length + StoryFormat.MAX_VARINT_SIZE > data.length)
+                data = Arrays.copyOf(data, Math.max(length + StoryFormat.MAX_VARINT_SIZE, data.length * 2));
+
+            while ((delta & ~0x7F) != 0) {
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+
+            data[length++] = (byte) delta;
+        }
+    }
+
+    private final Story story;
+
+    // Every word in the story, sorted so the words with a prefix are next to each other
+    private final TreeMap<String, Postings> words = new TreeMap<>();
+
+    /**
+     * Construct an empty index of a story.
+     * @param story The story
+     */
+    private StoryIndex(Story story) {
+        this.story = story;
+    }
+
+    /**
+     * Build the index of every page of a story.
+     * @param story The story
+     * @return The index
+     */
+    static StoryIndex build(Story story) {
+        StoryIndex index = new StoryIndex(story);
+
+        // Pages in ID order, so every page is appended to the end of each list it is in
+        int[] ids = new int[story.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = story.getPageAt(i).getId();
+        Arrays.sort(ids);
+
+        for (int id : ids)
+            index.add(id, story.getPageAt(story.indexOfId(id)).getText());
+
+        return index;
+    }
+
+    /**
+     * Read an index that {@link #toByteArray()} wrote.
+     * @param story The story it is of
+     * @param section The text index section
+     * @return The index
+     * @throws IOException If the section is corrupt
+     */
+    static StoryIndex read(Story story, ByteBuffer section) throws IOException {
+        StoryIndex index = new StoryIndex(story);
+        String previous = "";
+
+        try {
+            int count = StoryFormat.getVarint(section);
+
+            for (int i = 0; i < count; i++) {
+                int shared = StoryFormat.getVarint(section);
+                int length = StoryFormat.getVarint(section);
+
+                if (shared < 0 || shared > previous.length() || length < 0 || length > section.remaining())
+                    throw new IOException("Text index section is corrupt");
+
+                byte[] suffix = new byte[length];
+                section.get(suffix);
+                String word = previous.substring(0, shared) + new String(suffix, StoryFormat.CHARSET);
+
+                Postings postings = new Postings();
+                postings.count = StoryFormat.getVarint(section);
+                postings.last = StoryFormat.getVarint(section);
+                postings.length = StoryFormat.getVarint(section);
+
+                if (postings.count <= 0 || postings.last <= 0 || postings.length < postings.count
+                        || postings.length > section.remaining())
+                    throw new IOException("Text index section is corrupt");
+
+                postings.data = new byte[postings.length];
+                section.get(postings.data);
+                index.words.put(word, postings);
+                previous = word;
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Text index section is truncated");
+        }
+
+        return index;
+    }
+
+    /**
+     * Encode the index for the text index section. Each word only holds the part that
+     * differs from the word before it.
+     * @return The section contents
+     */
+    byte[] toByteArray() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(words.size() * 16);
+        String previous = "";
+
+        writeVarint(out, words.size());
+        for (Map.Entry<String, Postings> e : words.entrySet()) {
+            String word = e.getKey();
+            Postings postings = e.getValue();
+
+            int shared = 0;
+            int max = Math.min(word.length(), previous.length());
+            while (shared < max && word.charAt(shared) == previous.charAt(shared))
+                shared++;
+
+            // Never split a surrogate pair
+            if (shared > 0 && Character.isHighSurrogate(word.charAt(shared - 1)))
+                shared--;
+
+            byte[] suffix = word.substring(shared).getBytes(StoryFormat.CHARSET);
+            writeVarint(out, shared);
+            writeVarint(out, suffix.length);
+            out.write(suffix, 0, suffix.length);
+
+            writeVarint(out, postings.count);
+            writeVarint(out, postings.last);
+            writeVarint(out, postings.length);
+            out.write(postings.data, 0, postings.length);
+            previous = word;
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Find the pages that have a word, ignoring case.
+     * @param word The word
+     * @return The indexes of the pages, in page order
+     */
+    public int[] find(String word) {
+        return toIndexes(wordPages(toLowerCase(word)));
+    }
+
+    /**
+     * Find the pages that have a word starting with a prefix, ignoring case.
+     * @param prefix The prefix
+     * @return The indexes of the pages, in page order
+     */
+    public int[] findPrefix(String prefix) {
+        return toIndexes(prefixPages(toLowerCase(prefix)));
+    }
+
+    /**
+     * Find the pages that have every word of a query, ignoring case. The last word also
+     * matches longer words starting with it, unless the query ends with a space or
+     * punctuation, so pages are found while the query is still being typed.
+     * @param query The words to search for
+     * @return The indexes of the pages, in page order, or none for a query without words
+     */
+    public int[] search(String query) {
+        ArrayList<String> queryWords = new ArrayList<>();
+        split(query, queryWords);
+
+        if (queryWords.isEmpty())
+            return NO_PAGES;
+
+        // Pages are matched by ID, and only the pages left at the end are looked up
+        boolean prefix = Character.isLetterOrDigit(query.codePointBefore(query.length()));
+        BitSet pages = null;
+
+        for (int i = 0; i < queryWords.size(); i++) {
+            String word = queryWords.get(i);
+            BitSet found = prefix && i == queryWords.size() - 1 ? prefixPages(word) : wordPages(word);
+
+            if (pages == null)
+                pages = found;
+            else
+                pages.and(found);
+
+            if (pages.isEmpty())
+                break;
+        }
+
+        return toIndexes(pages);
+    }
+
+    /**
+     * Get the number of different words in the story.
+     * @return The number of words
+     */
+    public int getWordCount() {
+        return words.size();
+    }
+
+    /**
+     * Add the words of a page.
+     * @param id The ID of the page
+     * @param text The text of the page
+     */
+    void add(int id, String text) {
+        for (String word : wordsOf(text)) {
+            Postings postings = words.get(word);
+
+            if (postings == null) {
+                postings = new Postings();
+                words.put(word, postings);
+            }
+
+            postings.add(id);
+        }
+    }
+
+    /**
+     * Remove the words of a page.
+     * @param id The ID of the page
+     * @param text The text of the page, as it was indexed
+     */
+    void remove(int id, String text) {
+        for (String word : wordsOf(text))
+            removeWord(id, word);
+    }
+
+    /**
+     * Update the words of a page after its text changed, only changing the lists of the words it gained or lost.
+     * @param id The ID of the page
+     * @param from The text as it was indexed
+     * @param to The new text
+     */
+    void update(int id, String from, String to) {
+        HashSet<String> removed = wordsOf(from);
+        HashSet<String> added = wordsOf(to);
+
+        for (String word : removed) {
+            if (!added.remove(word))
+                removeWord(id, word);
+        }
+
+        for (String word : added) {
+            Postings postings = words.get(word);
+
+            if (postings == null) {
+                postings = new Postings();
+                words.put(word, postings);
+            }
+
+            postings.add(id);
+        }
+    }
+
+    /**
+     * Remove a page from the list of a word, and the word once it is on no page.
+     * @param id The ID of the page
+     * @param word The word
+     */
+    private void removeWord(int id, String word) {
+        Postings postings = words.get(word);
+
+        if (postings != null && postings.remove(id) && postings.count == 0)
+            words.remove(word);
+    }
+
+    /**
+     * Find the pages that have a word.
+     * @param word The word, in lower case
+     * @return The IDs of the pages
+     */
+    private BitSet wordPages(String word) {
+        BitSet ids = new BitSet();
+        Postings postings = words.get(word);
+
+        if (postings != null)
+            mark(postings, ids);
+
+        return ids;
+    }
+
+    /**
+     * Find the pages that have a word starting with a prefix.
+     * @param prefix The prefix, in lower case
+     * @return The IDs of the pages
+     */
+    private BitSet prefixPages(String prefix) {
+        BitSet ids = new BitSet();
+
+        for (Postings postings : words.subMap(prefix, prefix + Character.MAX_VALUE).values())
+            mark(postings, ids);
+
+        return ids;
+    }
+
+    /**
+     * Set the bit of every page in a list.
+     * @param postings The list
+     * @param ids The bits, one for each page ID
+     */
+    private static void mark(Postings postings, BitSet ids) {
+        byte[] data = postings.data;
+        int id = 0;
+
+        for (int position = 0; position < postings.length; ) {
+            int delta = 0;
+
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[position++];
+                delta |= (b & 0x7F) << shift;
+
+                if (b >= 0)
+                    break;
+            }
+
+            id += delta;
+            ids.set(id);
+        }
+    }
+
+    /**
+     * Find the indexes of pages by their IDs. Many pages are found by going through every
+     * page once, which gives them in page order, and a few by looking each ID up.
+     * @param ids The bits of the page IDs
+     * @return The page indexes, in page order
+     */
+    private int[] toIndexes(BitSet ids) {
+        int count = ids.cardinality();
+        int[] indexes = new int[count];
+        int found = 0;
+
+        if (count > story.size() / 16) {
+            for (int i = 0; i < story.size() && found < count; i++) {
+                if (ids.get(story.getPageAt(i).getId()))
+                    indexes[found++] = i;
+            }
+        } else {
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                int index = story.indexOfId(id);
+                if (index >= 0)
+                    indexes[found++] = index;
+            }
+
+            Arrays.sort(indexes, 0, found);
+        }
+
+        return found == count ? indexes : Arrays.copyOf(indexes, found);
+    }
+
+    /**
+     * Get the different words of a text.
+     * @param text The text, or null
+     * @return The words, in lower case
+     */
+    private static HashSet<String> wordsOf(String text) {
+        HashSet<String> words = new HashSet<>();
+        split(text, words);
+        return words;
+    }
+
+    /**
+     * Split a text into words: runs of letters and digits, in lower case. Words too long to be indexed are left out.
+     * @param text The text, or null
+     * @param words The collection to add the words to
+     */
+    static void split(String text, Collection<String> words) {
+        if (text == null)
+            return;
+
+        StringBuilder word = new StringBuilder();
+
+        for (int i = 0; i <= text.length(); ) {
+            int c = i < text.length() ? text.codePointAt(i) : ' ';
+
+            if (Character.isLetterOrDigit(c))
+                word.appendCodePoint(Character.toLowerCase(c));
+            else if (word.length() > 0) {
+                if (word.length() <= MAX_WORD_LENGTH)
+                    words.add(word.toString());
+
+                word.setLength(0);
+            }
+
+            i += Character.charCount(c);
+        }
+    }
+
+    /**
+     * Convert a word to lower case the same way as {@link #split}.
+     * @param word The word
+     * @return The word in lower case
+     */
+    private static String toLowerCase(String word) {
+        StringBuilder lower = new StringBuilder(word.length());
+
+        for (int i = 0; i < word.length(); ) {
+            int c = word.codePointAt(i);
+            lower.appendCodePoint(Character.toLowerCase(c));
+            i += Character.charCount(c);
+        }
+
+        return lower.toString();
+    }
+
+    /**
+     * Write an unsigned LEB128 varint.
+     * @param out The stream to write to
+     * @param value The value
+     */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+}
@@ -0,0 +1,272 @@
+package xyz.topplekek.storybook;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An index of the headers of many stories, keyed by where each story is and when it was
+ * last modified, so a library can be listed and searched without opening every file.
+ * The index is saved to and loaded from a file of its own, and a story only has to be
+ * read again once its modification time changes. Not thread safe.
+ * @since 17-10-2026
+ */
+public final class StoryLibrary {
+    // "SBLI", and the version of the index file
+    private static final int MAGIC = 0x53424C49;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A story in the library.
+     */
+    public static final class Entry {
+        private final String uri;
+        private final long modified;
+        private final StoryHeader header;
+
+        // Title and author in lower case, for searching
+        private final String key;
+
+        /**
+         * Construct a new entry.
+         * @param uri Where the story is
+         * @param modified When the story was last modified
+         * @param header The header of the story
+         */
+        private Entry(String uri, long modified, StoryHeader header) {
+            this.uri = uri;
+            this.modified = modified;
+            this.header = header;
+            key = (header.getTitle() + '\n' + header.getAuthor()).toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * Get where the story is.
+         * @return The URI or path the story was added with
+         */
+        public String getUri() {
+            return uri;
+        }
+
+        /**
+         * Get when the story was last modified.
+         * @return The modification time it was added with
+         */
+        public long getModified() {
+            return modified;
+        }
+
+        /**
+         * Get the header of the story.
+         * @return The header
+         */
+        public StoryHeader getHeader() {
+            return header;
+        }
+    }
+
+    private final HashMap<String, Entry> entries = new HashMap<>();
+
+    // Every entry sorted by title, made when first needed after a change
+    private ArrayList<Entry> sorted;
+
+    /**
+     * Load a library from its index file.
+     * @param file The index file
+     * @return The library, empty if the file does not exist
+     * @throws IOException If the file is corrupt or cannot be read
+     */
+    public static StoryLibrary load(File file) throws IOException {
+        StoryLibrary library = new StoryLibrary();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a library index: " + file);
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String uri = in.readUTF();
+                long modified = in.readLong();
+                String title = in.readUTF();
+                String author = in.readUTF();
+
+                StoryHeader header = new StoryHeader(title, author, in.readInt(), in.readInt(), in.readUnsignedShort());
+                library.entries.put(uri, new Entry(uri, modified, header));
+            }
+        } catch (FileNotFoundException e) {
+            return library;
+        }
+
+        return library;
+    }
+
+    /**
+     * Save this library to an index file. The file is replaced in one step, so a failed
+     * save leaves the previous index intact.
+     * @param file The index file
+     */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE))) {
+            // Entries whose strings are too long for the index are left out, and read again next time
+            ArrayList<Entry> saved = new ArrayList<>(entries.size());
+            for (Entry e : entries.values()) {
+                if (fits(e.uri) && fits(e.header.getTitle()) && fits(e.header.getAuthor()))
+                    saved.add(e);
+            }
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(saved.size());
+
+            for (Entry e : saved) {
+                out.writeUTF(e.uri);
+                out.writeLong(e.modified);
+                out.writeUTF(e.header.getTitle());
+                out.writeUTF(e.header.getAuthor());
+                out.writeInt(e.header.getNumPages());
+                out.writeInt(e.header.getImageCount());
+                out.writeShort(e.header.getVersion());
+            }
+        }
+
+        if (!temp.renameTo(file))
+            throw new IOException("Could not replace " + file);
+    }
+
+    /**
+     * Get the header of a story, if it has not been modified since it was added.
+     * @param uri Where the story is
+     * @param modified When the story was last modified
+     * @return The header, or null if the story is not in the library or was modified since
+     */
+    public StoryHeader get(String uri, long modified) {
+        Entry e = entries.get(uri);
+        return e == null || e.modified != modified ? null : e.header;
+    }
+
+    /**
+     * Add a story to the library, replacing any entry for the same URI.
+     * @param uri Where the story is
+     * @param modified When the story was last modified
+     * @param header The header of the story, such as from {@link StoryHeader#read}
+     */
+    public void put(String uri, long modified, StoryHeader header) {
+        entries.put(uri, new Entry(uri, modified, header));
+        sorted = null;
+    }
+
+    /**
+     * Remove every story that is not in a collection, such as after listing the folder the library is of.
+     * @param uris Where the stories to keep are
+     * @return Whether any story was removed
+     */
+    public boolean retainAll(Collection<String> uris) {
+        HashSet<String> keep = new HashSet<>(uris);
+        boolean removed = false;
+
+        for (Iterator<String> i = entries.keySet().iterator(); i.hasNext(); ) {
+            if (!keep.contains(i.next())) {
+                i.remove();
+                removed = true;
+            }
+        }
+
+        if (removed)
+            sorted = null;
+
+        return removed;
+    }
+
+    /**
+     * Get the number of stories in the library.
+     * @return The number of stories
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get every story in the library.
+     * @return The stories sorted by title, which must not be modified
+     */
+    public List<Entry> getEntries() {
+        if (sorted == null) {
+            sorted = new ArrayList<>(entries.values());
+            Collections.sort(sorted, new Comparator<Entry>() {
+                /**
+                 * Compare two stories by title, then by author.
+                 */
+                @Override
+                public int compare(Entry a, Entry b) {
+                    int c = a.header.getTitle().compareToIgnoreCase(b.header.getTitle());
+                    return c != 0 ? c : a.header.getAuthor().compareToIgnoreCase(b.header.getAuthor());
+                }
+            });
+        }
+
+        return Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Find the stories whose title or author contain every word of a query, ignoring case.
+     * @param query The words to search for
+     * @return The matching stories sorted by title, every story for a blank query
+     */
+    public List<Entry> search(String query) {
+        String[] words = query.trim().toLowerCase(Locale.ROOT).split("\\s+");
+        List<Entry> all = getEntries();
+
+        if (words.length == 1 && words[0].isEmpty())
+            return all;
+
+        ArrayList<Entry> found = new ArrayList<>();
+
+        for (Entry e : all) {
+            boolean matches = true;
+            for (int i = 0; i < words.length && matches; i++)
+                matches = e.key.contains(words[i]);
+
+            if (matches)
+                found.add(e);
+        }
+
+        return found;
+    }
+
+    /**
+     * Check whether a string fits in the index file.
+     * @param s The string
+     * @return Whether its modified UTF-8 form is at most 65535 bytes
+     */
+    private static boolean fits(String s) {
+        // Every char takes at most 3 bytes, so only long strings need counting
+        if (s.length() <= 0xFFFF / 3)
+            return true;
+
+        long length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+
+        return length <= 0xFFFF;
+    }
+}
@@ -0,0 +1,180 @@
+package xyz.topplekek.storybook;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads a story in the background, handing over the first page as soon as it is read.
+ * The story is created once the header and first page are read, and the rest of the
+ * pages are added to it in batches. Every callback, and so every change to the story,
+ * happens on the callback executor, so the story can be shown while it loads.
+ * Run a loader on a background executor, it closes its input when done.
+ * @since 17-10-2026
+ */
+public class StoryLoader implements Runnable {
+    // Pages handed over per callback after the first
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * Load listener. Methods are called on the callback executor, and never once the loader is cancelled.
+     */
+    public interface Listener {
+        /**
+         * Called once the header and first page are read.
+         * @param story The story, holding only its first page if it has any
+         * @param numPages The number of pages the story will have
+         */
+        void onStoryStarted(Story story, int numPages);
+
+        /**
+         * Called after more pages are added to the story.
+         * @param story The story
+         * @param start The index of the first page added
+         * @param count The number of pages added
+         */
+        void onPagesLoaded(Story story, int start, int count);
+
+        /**
+         * Called once every page is added and the file is verified.
+         * @param story The story
+         */
+        void onStoryLoaded(Story story);
+
+        /**
+         * Called if the file can not be read. No more callbacks follow.
+         * @param e The error
+         */
+        void onLoadFailed(IOException e);
+    }
+
+    private final InputStream input;
+    private final Executor callbackExecutor;
+    private final Listener listener;
+    private volatile boolean cancelled;
+
+    /**
+     * Construct a new loader.
+     * @param input An input stream of a .storybook file, closed once loading ends
+     * @param callbackExecutor The executor to call the listener on, usually the UI thread
+     * @param listener The listener
+     */
+    public StoryLoader(InputStream input, Executor callbackExecutor, Listener listener) {
+        this.input = input;
+        this.callbackExecutor = callbackExecutor;
+        this.listener = listener;
+    }
+
+    /**
+     * Stop loading. No more callbacks are made once this returns, if it is called on the callback executor.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Check whether loading was cancelled.
+     * @return Whether {@link #cancel()} was called
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Read the story, handing it and its pages over to the callback executor.
+     */
+    @Override
+    public void run() {
+        try (InputStream in = input; StoryReader reader = new StoryReader(in)) {
+            final Story story = new Story(reader.getTitle(), reader.getAuthor());
+            final int numPages = reader.getNumPages();
+            final Page first = reader.hasNextPage() ? reader.readPage() : null;
+
+            post(new Runnable() {
+                /**
+                 * Hand over the story with its first page.
+                 */
+                @Override
+                public void run() {
+                    if (first != null)
+                        story.addPage(first);
+
+                    listener.onStoryStarted(story, numPages);
+                }
+            });
+
+            int loaded = first == null ? 0 : 1;
+
+            while (reader.hasNextPage() && !cancelled) {
+                final List<Page> batch = new ArrayList<>(Math.min(BATCH_SIZE, numPages - loaded));
+                while (reader.hasNextPage() && batch.size() < BATCH_SIZE)
+                    batch.add(reader.readPage());
+
+                final int start = loaded;
+                loaded += batch.size();
+
+                post(new Runnable() {
+                    /**
+                     * Add a batch of pages to the story.
+                     */
+                    @Override
+                    public void run() {
+                        for (Page p : batch)
+                            story.addPage(p);
+
+                        listener.onPagesLoaded(story, start, batch.size());
+                    }
+                });
+            }
+
+            if (cancelled)
+                return;
+
+            reader.verify();
+
+            final StoryReader verified = reader;
+            post(new Runnable() {
+                /**
+                 * Remember the file the story came from and report it loaded.
+                 */
+                @Override
+                public void run() {
+                    story.loaded(verified);
+                    listener.onStoryLoaded(story);
+                }
+            });
+        } catch (final IOException e) {
+            post(new Runnable() {
+                /**
+                 * Report the error.
+                 */
+                @Override
+                public void run() {
+                    listener.onLoadFailed(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Run a callback on the callback executor unless loading was cancelled by then.
+     * @param callback The callback
+     */
+    private void post(final Runnable callback) {
+        if (cancelled)
+            return;
+
+        callbackExecutor.execute(new Runnable() {
+            /**
+             * Run the callback if loading is still wanted.
+             */
+            @Override
+            public void run() {
+                if (!cancelled)
+                    callback.run();
+            }
+        });
+    }
+}
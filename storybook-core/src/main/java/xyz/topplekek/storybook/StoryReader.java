@@ -0,0 +1,794 @@
+package xyz.topplekek.storybook;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * A sequential reader for .storybook files of any version.
+ * The header is read on construction, pages are then read one at a time or
+ * decompressed in batches on an executor, and {@link #verify()} checks the
+ * section checksums once every page is read.
+ * Journaled files, whose sections are out of order, are mapped instead of read
+ * into memory, and their pages are found through the page directory.
+ * See STORYBOOK.md for information on this format.
+ * @since 17-10-2026
+ */
+class StoryReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Pages decompressed per task, and batches read ahead of the one being collected
+    private static final int BATCH_SIZE = 64;
+    private static final int BATCHES_AHEAD = 16;
+
+    /**
+     * A page record as stored, before its payloads are decoded.
+     */
+    private static class Record {
+        int id, imageType;
+        int[] choices;
+        int imageEncoding, imageLength;
+        int textEncoding, textLength;
+        byte[] image, text;
+    }
+
+    private final InputStream input;
+    private final DataInputStream in;
+    private final Crc32c crc;
+    private final PageDecoder decoder;
+    private final int version;
+    private String title;
+    private String author;
+    private int numPages;
+    private int pagesRead;
+    private final Record record;
+
+    // The ID of each page and the index of each ID, for all but version 1 files
+    private int[] pageIds;
+    private IntIntMap pageIndexes;
+
+    // The dictionary page text is compressed with, or null if the file has none
+    private byte[] dictionary;
+
+    // Checksums of the sections read so far, checked against the section table
+    private int[] sectionTags = new int[8];
+    private int[] sectionChecksums = new int[8];
+    private int sectionCount;
+    private int sectionLength;
+
+    // The page directory and section table once verified, and the length of the file
+    private ByteBuffer directory;
+    private ByteBuffer table;
+    private long length;
+
+    // The text index section, or null if the file has none
+    private byte[] textIndex;
+
+    // Where the file starts in the stream's file, or -1 if the stream is not of a file that can be mapped
+    private final long start;
+
+    // The whole file, for journaled files
+    private MappedStory journal;
+
+    // Scratch buffers for the header strings and compressed images, and for compressed text
+    private byte[] buffer;
+    private byte[] textBuffer;
+
+    /**
+     * Construct a new reader and read the header of the file.
+     * @param input An input stream of a .storybook file, it is not closed by this reader
+     * @throws EOFException If the file ends inside the header
+     */
+    StoryReader(InputStream input) throws IOException {
+        this.input = input;
+        start = position(input);
+        BufferedInputStream buffered = new BufferedInputStream(input, BUFFER_SIZE);
+        crc = new Crc32c();
+        in = new DataInputStream(new CheckedInputStream(buffered, crc));
+        decoder = new PageDecoder();
+        record = new Record();
+        buffer = new byte[BUFFER_SIZE];
+        textBuffer = new byte[BUFFER_SIZE];
+
+        // Version 1 files have no magic, so rewind into the title if it is missing
+        buffered.mark(StoryFormat.MAGIC.length);
+        in.readFully(buffer, 0, StoryFormat.MAGIC.length);
+
+        if (!StoryFormat.isMagic(buffer)) {
+            buffered.reset();
+            version = StoryFormat.VERSION_1;
+            readMetadata();
+            return;
+        }
+
+        version = in.readUnsignedShort();
+        int flags = in.readUnsignedShort();
+
+        if (version != StoryFormat.VERSION)
+            throw new IOException("Unsupported storybook version: " + version);
+
+        if ((flags & StoryFormat.FLAG_JOURNALED) != 0) {
+            readJournal(flags);
+            return;
+        }
+
+        // Skip to the start of the pages, reading the metadata on the way
+        boolean hasMetadata = false;
+        int tag;
+
+        while ((tag = readSectionHeader()) != StoryFormat.SECTION_PAGES) {
+            if (tag == StoryFormat.SECTION_META) {
+                readMetadata();
+                hasMetadata = true;
+            } else if (tag == StoryFormat.SECTION_PAGE_IDS && hasMetadata)
+                readPageIds();
+            else if (tag == StoryFormat.SECTION_DICTIONARY)
+                readDictionary();
+            else
+                skip(sectionLength);
+
+            endSection(tag);
+        }
+
+        if (!hasMetadata)
+            throw new IOException("Storybook file has no metadata section");
+
+        if (pageIds == null)
+            throw new IOException("Storybook file has no page ID section");
+
+        if (numPages == 0)
+            endSection(StoryFormat.SECTION_PAGES);
+    }
+
+    /**
+     * Get the format version of the file.
+     * @return The version
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the title of the story.
+     * @return The title
+     */
+    String getTitle() {
+        return title;
+    }
+
+    /**
+     * Get the author of the story.
+     * @return The author
+     */
+    String getAuthor() {
+        return author;
+    }
+
+    /**
+     * Get the number of pages in the file.
+     * @return The number of pages
+     */
+    int getNumPages() {
+        return numPages;
+    }
+
+    /**
+     * Get the dictionary that page text in the file is compressed with.
+     * @return The dictionary, or null if the file has none
+     */
+    byte[] getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Check whether there are pages left to read.
+     * @return Whether {@link #readPage()} can be called
+     */
+    boolean hasNextPage() {
+        return pagesRead < numPages;
+    }
+
+    /**
+     * Read and decompress the next page.
+     * @return The page
+     * @throws EOFException If the file ends inside the page
+     */
+    Page readPage() throws IOException {
+        if (journal != null)
+            return readJournalPage();
+
+        readRecord(record, false);
+        return read(decode(record, decoder, dictionary));
+    }
+
+    /**
+     * Read every remaining page, decompressing them in batches on an executor.
+     * Pages are added in order, and only a bounded number of batches are held
+     * compressed in memory at once.
+     * @param pages The list to add the pages to
+     * @param executor The executor to decompress on
+     */
+    void readPages(List<Page> pages, ExecutorService executor) throws IOException {
+        // Journaled files are mapped, and their pages are decoded in place
+        if (journal != null) {
+            while (hasNextPage())
+                pages.add(readJournalPage());
+            return;
+        }
+
+        ArrayDeque<Future<Page[]>> batches = new ArrayDeque<>();
+
+        try {
+            while (hasNextPage() || !batches.isEmpty()) {
+                while (hasNextPage() && batches.size() < BATCHES_AHEAD) {
+                    final Record[] batch = new Record[Math.min(BATCH_SIZE, numPages - pagesRead)];
+
+                    for (int i = 0; i < batch.length; i++) {
+                        batch[i] = new Record();
+                        readRecord(batch[i], true);
+                    }
+
+                    batches.add(executor.submit(new Callable<Page[]>() {
+                        /**
+                         * Decompress one batch of pages.
+                         * @return The pages
+                         */
+                        @Override
+                        public Page[] call() throws IOException {
+                            return decodeBatch(batch, dictionary);
+                        }
+                    }));
+                }
+
+                for (Page p : batches.remove().get())
+                    pages.add(read(p));
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+
+            throw new IOException("Failed to decompress pages", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing pages");
+        } finally {
+            for (Future<Page[]> f : batches)
+                f.cancel(true);
+        }
+    }
+
+    /**
+     * Read the rest of the file after the last page and check every section checksum.
+     * Version 1 files have no checksums, so this does nothing for them.
+     * @throws IOException If a checksum does not match or the file is truncated
+     */
+    void verify() throws IOException {
+        if (hasNextPage())
+            throw new IllegalStateException((numPages - pagesRead) + " pages have not been read");
+
+        if (version == StoryFormat.VERSION_1)
+            return;
+
+        if (journal != null) {
+            journal.verify();
+            directory = copy(journal.getDirectory());
+            table = copy(journal.getSectionTable());
+            ByteBuffer index = journal.getTextIndex();
+            textIndex = index != null ? copy(index).array() : null;
+            length = journal.getLength();
+            journal = null;
+            return;
+        }
+
+        int tag;
+        while ((tag = readSectionHeader()) != StoryFormat.SECTION_TABLE) {
+            if (tag == StoryFormat.SECTION_PAGE_DIRECTORY && sectionLength >= 0) {
+                directory = ByteBuffer.allocate(sectionLength);
+                in.readFully(directory.array());
+            } else if (tag == StoryFormat.SECTION_TEXT_INDEX && sectionLength >= 0) {
+                textIndex = new byte[sectionLength];
+                in.readFully(textIndex);
+            } else
+                skip(sectionLength);
+
+            endSection(tag);
+        }
+
+        int count = in.readUnsignedShort();
+        table = ByteBuffer.allocate(2 + count * StoryFormat.SECTION_TABLE_ENTRY_SIZE);
+        table.putShort((short) count);
+
+        for (int i = 0; i < count; i++) {
+            int entryTag = in.readInt();
+            int entryOffset = in.readInt();
+            int entryLength = in.readInt();
+            int checksum = in.readInt();
+
+            if (checksum != findChecksum(entryTag))
+                throw new IOException("Checksum mismatch in section " + StoryFormat.sectionName(entryTag));
+
+            table.putInt(entryTag).putInt(entryOffset).putInt(entryLength).putInt(checksum);
+        }
+
+        int tableChecksum = (int) crc.getValue();
+        int tableOffset = in.readInt();
+        length = tableOffset + table.capacity() + StoryFormat.TRAILER_SIZE;
+
+        if (in.readInt() != tableChecksum)
+            throw new IOException("Checksum mismatch in section table");
+
+        in.readFully(buffer, 0, StoryFormat.MAGIC.length);
+        if (!StoryFormat.isMagic(buffer))
+            throw new IOException("Storybook file has no trailer");
+    }
+
+    /**
+     * Remember where each page was read from, marking the pages clean.
+     * Only valid once {@link #verify()} has been called. Pages of version 1 files,
+     * and pages with a choice past the last page, stay dirty.
+     * @param pages The pages that were read, in order
+     * @param story The story whose file they were read from
+     */
+    void markSaved(List<Page> pages, Object story) {
+        if (directory == null || directory.capacity() != pages.size() * StoryFormat.PAGE_DIRECTORY_ENTRY_SIZE)
+            return;
+
+        // Pages changed since they were read stay dirty
+        for (int i = 0; i < pages.size(); i++) {
+            int entry = i * StoryFormat.PAGE_DIRECTORY_ENTRY_SIZE;
+
+            if (pages.get(i).isSavedIn(this) && !pages.get(i).turnsPast(pages.size()))
+                pages.get(i).markSaved(story, directory.getInt(entry), directory.getInt(entry + 4), directory.getInt(entry + 8));
+        }
+    }
+
+    /**
+     * Get the section table of the file.
+     * Only valid once {@link #verify()} has been called.
+     * @return The section table contents, or null for version 1 files
+     */
+    ByteBuffer getSectionTable() {
+        return table;
+    }
+
+    /**
+     * Get the text index section of the file, which was checked with every other section.
+     * Only valid once {@link #verify()} has been called.
+     * @return The section contents, or null if the file has none
+     */
+    byte[] getTextIndex() {
+        return textIndex;
+    }
+
+    /**
+     * Get the length of the file.
+     * Only valid once {@link #verify()} has been called.
+     * @return The length in bytes, or 0 for version 1 files
+     */
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * Release the decompressor. The underlying stream is left open.
+     */
+    @Override
+    public void close() {
+        decoder.end();
+    }
+
+    /**
+     * Read the next page record without decoding its payloads.
+     * @param r The record to fill in
+     * @param copy Whether payloads must be read into arrays of their own rather than the scratch buffers
+     * @throws EOFException If the file ends inside the page
+     */
+    private void readRecord(Record r, boolean copy) throws IOException {
+        if (!hasNextPage())
+            throw new IllegalStateException("All " + numPages + " pages have been read");
+
+        if (version != StoryFormat.VERSION_1) {
+            r.id = pageIds[pagesRead];
+            int count = readCount();
+
+            // Grow the choices as they are read, so a corrupt count runs into the end of the file first
+            r.choices = new int[Math.min(count, 16)];
+            for (int i = 0; i < count; i++) {
+                if (i == r.choices.length)
+                    r.choices = Arrays.copyOf(r.choices, (int) Math.min(count, i * 2L));
+
+                r.choices[i] = StoryFormat.choiceNumber(StoryFormat.storedVarintChoice(readVarint()), pageIndexes);
+            }
+
+            r.imageType = in.readUnsignedByte();
+            r.imageEncoding = in.readUnsignedByte();
+        } else {
+            // Version 1 files link pages by position
+            r.id = 0;
+            r.choices = new int[] {in.readUnsignedShort(), in.readUnsignedShort()};
+            r.imageType = Page.IMAGE_UNKNOWN;
+            r.imageEncoding = StoryFormat.ENCODING_ZLIB_BASE64;
+        }
+
+        r.imageLength = readLength();
+
+        // Stored payloads are always read straight into their own array
+        if (copy || r.imageEncoding == StoryFormat.ENCODING_NONE)
+            r.image = new byte[r.imageLength];
+        else
+            r.image = buffer = ensureCapacity(buffer, r.imageLength);
+
+        in.readFully(r.image, 0, r.imageLength);
+
+        r.textEncoding = version == StoryFormat.VERSION_1 ? StoryFormat.ENCODING_ZLIB : in.readUnsignedByte();
+        r.textLength = readLength();
+        r.text = copy ? new byte[r.textLength] : (textBuffer = ensureCapacity(textBuffer, r.textLength));
+        in.readFully(r.text, 0, r.textLength);
+
+        if (++pagesRead == numPages && version != StoryFormat.VERSION_1)
+            endSection(StoryFormat.SECTION_PAGES);
+    }
+
+    /**
+     * Map a journaled file and find its pages through its page directory. A file stream is
+     * mapped from where the file starts in it, any other stream is copied to a temporary file
+     * that is mapped instead, so the file is never held on the heap.
+     * @param flags The flags of the file
+     */
+    private void readJournal(int flags) throws IOException {
+        ByteBuffer file;
+
+        if (start >= 0) {
+            FileChannel channel = ((FileInputStream) input).getChannel();
+            file = channel.map(FileChannel.MapMode.READ_ONLY, start, channel.size() - start);
+        } else
+            file = spill(flags);
+
+        // Payloads are decoded straight into the pages with this reader's decoder, so the pages need no cache
+        journal = new MappedStory(file, null);
+        title = journal.getTitle();
+        author = journal.getAuthor();
+        numPages = journal.size();
+        dictionary = journal.getDictionary();
+    }
+
+    /**
+     * Copy the header and the rest of the stream to a temporary file, and map it.
+     * @param flags The flags of the file
+     * @return The mapped file
+     */
+    private ByteBuffer spill(int flags) throws IOException {
+        File file = File.createTempFile("journal", ".storybook");
+
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.write(StoryFormat.MAGIC);
+            output.writeShort(version);
+            output.writeShort(flags);
+
+            int n;
+            while ((n = in.read(buffer)) != -1)
+                output.write(buffer, 0, n);
+
+            return output.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, output.length());
+        } finally {
+            // The mapping outlives the file, except where mapped files cannot be deleted
+            if (!file.delete())
+                file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Find where the file starts in the stream's file, if the stream is of a file that can be mapped.
+     * @param input The stream, before anything is read from it
+     * @return The position, or -1 if the stream cannot be mapped
+     */
+    private static long position(InputStream input) {
+        if (!(input instanceof FileInputStream))
+            return -1;
+
+        try {
+            return ((FileInputStream) input).getChannel().position();
+        } catch (IOException e) {
+            // Pipes and sockets have no position
+            return -1;
+        }
+    }
+
+    /**
+     * Decode the next page of a journaled file.
+     * @return The page
+     */
+    private Page readJournalPage() throws IOException {
+        if (!hasNextPage())
+            throw new IllegalStateException("All " + numPages + " pages have been read");
+
+        try {
+            Page p = journal.getPageAt(pagesRead++);
+            byte[] image = p.decodeImage(decoder);
+            int imageType = p.getImageType();
+
+            if (image != null && imageType == Page.IMAGE_UNKNOWN)
+                imageType = Page.detectImageType(image);
+
+            int[] choices = new int[p.getChoiceCount()];
+            for (int i = 0; i < choices.length; i++)
+                choices[i] = p.getChoice(i);
+
+            Page copy = new Page(p.decodeText(decoder), image, imageType, choices);
+            copy.setId(p.getId());
+            return read(copy);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Mark a page as read from this file, so it is clean unless it changes before {@link #markSaved(List, Object)}.
+     * @param p The page
+     * @return The page
+     */
+    private Page read(Page p) {
+        p.markSaved(this, 0, 0, 0);
+        return p;
+    }
+
+    /**
+     * Copy a buffer so it no longer holds on to the array behind it.
+     * @param buffer The buffer
+     * @return A copy of the remaining bytes, positioned at its start
+     */
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate()).flip();
+        return copy;
+    }
+
+    /**
+     * Decode the payloads of a page record.
+     * @param r The record
+     * @param decoder The decoder to decode with
+     * @param dictionary The dictionary of the file, or null if it has none
+     * @return The page
+     */
+    private static Page decode(Record r, PageDecoder decoder, byte[] dictionary) throws IOException {
+        byte[] image = r.imageLength == 0 ? null : decoder.decode(r.image, r.imageLength, r.imageEncoding, dictionary);
+        byte[] text = r.textLength == 0 ? null : decoder.decode(r.text, r.textLength, r.textEncoding, dictionary);
+        int imageType = r.imageType;
+
+        if (image != null && imageType == Page.IMAGE_UNKNOWN)
+            imageType = Page.detectImageType(image);
+
+        Page p = new Page(text == null ? null : new String(text, StoryFormat.CHARSET), image, imageType, r.choices);
+        p.setId(r.id);
+        return p;
+    }
+
+    /**
+     * Decode a batch of page records with a decoder of their own.
+     * @param batch The records
+     * @param dictionary The dictionary of the file, or null if it has none
+     * @return The pages
+     */
+    private static Page[] decodeBatch(Record[] batch, byte[] dictionary) throws IOException {
+        PageDecoder decoder = new PageDecoder();
+        Page[] pages = new Page[batch.length];
+
+        try {
+            for (int i = 0; i < batch.length; i++)
+                pages[i] = decode(batch[i], decoder, dictionary);
+        } finally {
+            decoder.end();
+        }
+
+        return pages;
+    }
+
+    /**
+     * Read a payload length, a uint32 in version 1 files and a varint since.
+     * @return The length
+     */
+    private int readLength() throws IOException {
+        int length = version == StoryFormat.VERSION_1 ? in.readInt() : readVarint();
+
+        if (length < 0)
+            throw new IOException("Negative payload length: " + length);
+
+        return length;
+    }
+
+    /**
+     * Read a varint count of the items that follow.
+     * @return The count
+     */
+    private int readCount() throws IOException {
+        int count = readVarint();
+
+        if (count < 0)
+            throw new IOException("Negative count: " + count);
+
+        return count;
+    }
+
+    /**
+     * Read an unsigned LEB128 varint.
+     * @return The value, as an unsigned 32 bit int
+     */
+    private int readVarint() throws IOException {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+
+            if (b >= 0)
+                return value;
+        }
+
+        throw new IOException("Varint is longer than 32 bits");
+    }
+
+    /**
+     * Make sure a scratch buffer can hold at least {@code length} bytes.
+     * @param buffer The current buffer
+     * @param length The required length
+     * @return The buffer, or a bigger replacement if it was too small
+     */
+    private static byte[] ensureCapacity(byte[] buffer, int length) {
+        return buffer.length >= length ? buffer : new byte[Math.max(length, buffer.length * 2)];
+    }
+
+    /**
+     * Read the title, author and page count. The whole section is read at once and its strings
+     * are found in the buffer, but version 1 headers are read a byte at a time.
+     */
+    private void readMetadata() throws IOException {
+        if (version == StoryFormat.VERSION_1) {
+            title = readString();
+            author = readString();
+            numPages = in.readUnsignedShort();
+            return;
+        }
+
+        if (sectionLength < 0)
+            throw new IOException("Negative section length: " + sectionLength);
+
+        buffer = ensureCapacity(buffer, sectionLength);
+        in.readFully(buffer, 0, sectionLength);
+        ByteBuffer metadata = ByteBuffer.wrap(buffer, 0, sectionLength);
+
+        try {
+            title = StoryFormat.readString(metadata);
+            author = StoryFormat.readString(metadata);
+            numPages = StoryFormat.getVarint(metadata);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Metadata section is truncated");
+        }
+
+        if (numPages < 0)
+            throw new IOException("Negative count: " + numPages);
+    }
+
+    /**
+     * Read the page ID section, which comes after the metadata.
+     */
+    private void readPageIds() throws IOException {
+        if (sectionLength < 0)
+            throw new IOException("Negative section length: " + sectionLength);
+
+        ByteBuffer section = ByteBuffer.allocate(sectionLength);
+        in.readFully(section.array());
+
+        // Every ID takes at least a byte, which bounds the page count before anything is allocated for it
+        if (sectionLength < numPages)
+            throw new IOException("Page ID section does not match the page count");
+
+        pageIds = new int[numPages];
+        pageIndexes = StoryFormat.readPageIds(section, numPages, pageIds);
+    }
+
+    /**
+     * Read the dictionary section.
+     */
+    private void readDictionary() throws IOException {
+        if (sectionLength < 0)
+            throw new IOException("Negative section length: " + sectionLength);
+
+        ByteBuffer section = ByteBuffer.allocate(sectionLength);
+        in.readFully(section.array());
+        dictionary = StoryFormat.readDictionary(section);
+    }
+
+    /**
+     * Read the tag and length of the next section.
+     * @return The tag, the length is left in {@code sectionLength}
+     */
+    private int readSectionHeader() throws IOException {
+        int tag = in.readInt();
+        sectionLength = in.readInt();
+
+        // The checksum only covers the section contents
+        crc.reset();
+        return tag;
+    }
+
+    /**
+     * Record the checksum of a section that has been read to its end.
+     * @param tag The tag of the section
+     */
+    private void endSection(int tag) {
+        if (sectionCount == sectionTags.length) {
+            sectionTags = Arrays.copyOf(sectionTags, sectionCount * 2);
+            sectionChecksums = Arrays.copyOf(sectionChecksums, sectionCount * 2);
+        }
+
+        sectionTags[sectionCount] = tag;
+        sectionChecksums[sectionCount++] = (int) crc.getValue();
+    }
+
+    /**
+     * Find the checksum of a section that has been read.
+     * @param tag The tag of the section
+     * @return The checksum
+     * @throws IOException If the section was never read
+     */
+    private int findChecksum(int tag) throws IOException {
+        for (int i = 0; i < sectionCount; i++) {
+            if (sectionTags[i] == tag)
+                return sectionChecksums[i];
+        }
+
+        throw new IOException("Section table lists missing section " + StoryFormat.sectionName(tag));
+    }
+
+    /**
+     * Skip over bytes, still feeding them to the checksum.
+     * @param length The number of bytes to skip
+     */
+    private void skip(int length) throws IOException {
+        if (length < 0)
+            throw new IOException("Negative section length: " + length);
+
+        while (length > 0) {
+            int n = Math.min(length, buffer.length);
+            in.readFully(buffer, 0, n);
+            length -= n;
+        }
+    }
+
+    /**
+     * Read a null terminated string of a version 1 header.
+     * @return The string
+     */
+    private String readString() throws IOException {
+        int length = 0;
+        byte b;
+
+        while ((b = in.readByte()) != '\0') {
+            if (length == buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+            buffer[length++] = b;
+        }
+
+        return new String(buffer, 0, length, StoryFormat.CHARSET);
+    }
+}
@@ -0,0 +1,222 @@
+package xyz.topplekek.storybook;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Command line tool for checking and converting .storybook files without Android.
+ * Usage: {@code storybook-tool info|validate|convert|dictionary|library <file> [output]}
+ * @since 17-10-2026
+ */
+public final class StoryTool {
+    private StoryTool() {}
+
+    /**
+     * Run a command and exit with 0 if it succeeded, 1 if it failed or found problems, or 2 for bad usage.
+     * @param args The command, followed by its arguments
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || ((args[0].equals("convert") || args[0].equals("dictionary") || args[0].equals("library"))
+                && args.length < 3)) {
+            System.err.println("Usage: storybook-tool info <file>");
+            System.err.println("       storybook-tool validate <file>...");
+            System.err.println("       storybook-tool convert <input> <output> [dictionary|-] [codec]");
+            System.err.println("       storybook-tool dictionary <output> <file>...");
+            System.err.println("       storybook-tool library <index> <folder> [query]");
+            System.exit(2);
+        }
+
+        int status;
+        try {
+            switch (args[0]) {
+                case "info":
+                    status = info(args[1]);
+                    break;
+                case "validate":
+                    status = 0;
+                    for (int i = 1; i < args.length; i++)
+                        status |= validate(args[i]);
+                    break;
+                case "convert":
+                    status = convert(args[1], args[2], args.length > 3 && !args[3].equals("-") ? args[3] : null,
+                            args.length > 4 ? args[4] : null);
+                    break;
+                case "library":
+                    status = library(args[1], args[2], args.length > 3 ? args[3] : "");
+                    break;
+                case "dictionary":
+                    status = dictionary(args[1], Arrays.copyOfRange(args, 2, args.length));
+                    break;
+                default:
+                    System.err.println("Unknown command: " + args[0]);
+                    status = 2;
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            status = 1;
+        }
+
+        System.exit(status);
+    }
+
+    /**
+     * Print the header of a story without decompressing its pages.
+     */
+    private static int info(String path) throws IOException {
+        try (FileChannel channel = new FileInputStream(path).getChannel()) {
+            MappedStory story = new MappedStory(channel);
+            System.out.println("Title:   " + story.getTitle());
+            System.out.println("Author:  " + story.getAuthor());
+            System.out.println("Version: " + story.getVersion());
+            System.out.println("Pages:   " + story.size());
+            if (story.getDictionary() != null)
+                System.out.println("Dictionary: " + story.getDictionary().length + " bytes");
+            System.out.println("Size:    " + channel.size() + " bytes");
+        }
+
+        return 0;
+    }
+
+    /**
+     * Check the checksums and page graph of a story.
+     */
+    private static int validate(String path) throws IOException {
+        Story story;
+        try {
+            story = load(path);
+        } catch (IOException e) {
+            System.out.println(path + ": " + e.getMessage());
+            return 1;
+        }
+
+        List<String> problems = StoryValidator.validate(story);
+        for (String problem : problems)
+            System.out.println(path + ": " + problem);
+
+        StoryGraph graph = new StoryGraph(story);
+        System.out.println(String.format("%s: %d pages, %d unreachable, %d endings, %d in loops, %d dead ends",
+                path, graph.size(), graph.getUnreachableCount(), graph.getEndingCount(),
+                graph.getCyclicCount(), graph.getDeadEndCount()));
+
+        if (problems.isEmpty())
+            System.out.println(path + ": OK");
+
+        return problems.isEmpty() ? 0 : 1;
+    }
+
+    /**
+     * Rewrite a story of any version in the latest format, optionally with a new dictionary or codec.
+     */
+    private static int convert(String input, String output, String dictionary, String codec) throws IOException {
+        Story story = load(input);
+
+        try {
+            if (dictionary != null)
+                story.setDictionary(Files.readAllBytes(Paths.get(dictionary)));
+            if (codec != null)
+                story.setCodec(Codec.forName(codec));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            story.saveStory(new FileOutputStream(output), executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        return 0;
+    }
+
+    /**
+     * Build a dictionary for page text from a corpus of stories.
+     */
+    private static int dictionary(String output, String[] paths) throws IOException {
+        List<Story> corpus = new ArrayList<>();
+        for (String path : paths)
+            corpus.add(load(path));
+
+        byte[] dictionary;
+        try {
+            dictionary = StoryDictionary.build(corpus);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+
+        Files.write(Paths.get(output), dictionary);
+        System.out.println(output + ": " + dictionary.length + " bytes from " + paths.length + " stories");
+        return 0;
+    }
+
+    /**
+     * Update the library index of a folder of stories, reading only new and modified files, and list or search it.
+     */
+    private static int library(String index, String folder, String query) throws IOException {
+        File[] files = new File(folder).listFiles();
+        if (files == null) {
+            System.err.println(folder + ": not a folder");
+            return 1;
+        }
+
+        long start = System.nanoTime();
+        StoryLibrary library = StoryLibrary.load(new File(index));
+        List<String> paths = new ArrayList<>();
+        int read = 0;
+
+        for (File file : files) {
+            if (!file.isFile())
+                continue;
+
+            String path = file.getPath();
+            paths.add(path);
+
+            if (library.get(path, file.lastModified()) == null) {
+                try (FileChannel channel = new FileInputStream(file).getChannel()) {
+                    library.put(path, file.lastModified(), StoryHeader.read(channel));
+                    read++;
+                } catch (IOException e) {
+                    System.err.println(path + ": " + e.getMessage());
+                }
+            }
+        }
+
+        if (library.retainAll(paths) || read > 0)
+            library.save(new File(index));
+
+        for (StoryLibrary.Entry e : library.search(query)) {
+            StoryHeader header = e.getHeader();
+            System.out.println(String.format("%s by %s, %d pages, %d images: %s", header.getTitle(), header.getAuthor(),
+                    header.getNumPages(), header.getImageCount(), e.getUri()));
+        }
+
+        System.out.println(String.format("%d stories, %d read, in %.1f ms", library.size(), read,
+                (System.nanoTime() - start) / 1e6));
+        return 0;
+    }
+
+    /**
+     * Load a whole story through a buffered stream.
+     * @param path The path of the story
+     * @return The story
+     */
+    private static Story load(String path) throws IOException {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(path))) {
+            return new Story(input);
+        }
+    }
+}
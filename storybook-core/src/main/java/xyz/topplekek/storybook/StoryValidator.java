@@ -0,0 +1,49 @@
+package xyz.topplekek.storybook;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the page graph of a story for choices that cannot be followed.
+ * Choices are 1-based page numbers, 0 meaning no choice.
+ * @since 17-10-2026
+ */
+public final class StoryValidator {
+    private StoryValidator() {}
+
+    /**
+     * Validate every choice in a story.
+     * @param story The story to validate
+     * @return A description of each problem found, empty if the story is valid
+     */
+    public static List<String> validate(Story story) {
+        List<String> problems = new ArrayList<>();
+        int numPages = story.size();
+
+        if (numPages == 0)
+            problems.add("Story has no pages");
+
+        for (int i = 0; i < numPages; i++) {
+            Page p = story.getPageAt(i);
+
+            for (int c = 0; c < p.getChoiceCount(); c++)
+                checkChoice(problems, i, c + 1, p.getChoice(c), numPages);
+        }
+
+        return problems;
+    }
+
+    /**
+     * Add a problem if a choice turns to a page that does not exist.
+     * @param problems The problems found so far
+     * @param index The index of the page with the choice
+     * @param choice The 1-based number of the choice on its page
+     * @param target The page number the choice turns to
+     * @param numPages The number of pages in the story
+     */
+    private static void checkChoice(List<String> problems, int index, int choice, int target, int numPages) {
+        if (target < 0 || target > numPages)
+            problems.add(String.format("Page %d: choice %d turns to page %d, but there are %d pages",
+                    index + 1, choice, target, numPages));
+    }
+}
@@ -0,0 +1,598 @@
+package xyz.topplekek.storybook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A sequential writer for the latest .storybook format.
+ * The header and metadata are written first, then every page in order, and
+ * {@link #finish()} appends the page directory, section table and trailer.
+ * Fields go through one reusable buffer straight to a channel, and one
+ * deflater and scratch array are reused for every payload. Pages can also be
+ * compressed in batches on an executor, while still being written in order.
+ * See STORYBOOK.md for information on this format.
+ * @since 17-10-2026
+ */
+class StoryWriter implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Pages compressed per task, and batches compressed ahead of the one being written
+    private static final int BATCH_SIZE = 64;
+    private static final int BATCHES_AHEAD = 16;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer out;
+    private final Crc32c sectionCrc, pageCrc;
+    private final PageEncoder encoder;
+    private final PageEncoder.EncodedPage encoded;
+    private final int numPages, imageCount;
+    private final int[] pageIds;
+    private final byte[] dictionary;
+    private final Codec codec;
+    private int pagesWritten;
+
+    // Bytes already handed to the channel, and how much of the buffer the checksums have seen
+    private long flushed;
+    private int checksummed;
+
+    // Page directory entries, written once every page is
+    private final int[] pageOffsets, pageLengths, pageChecksums;
+
+    // Section table entries
+    private int[] sectionTags = new int[4];
+    private int[] sectionOffsets = new int[4];
+    private int[] sectionLengths = new int[4];
+    private int[] sectionChecksums = new int[4];
+    private int sectionCount;
+    private int sectionTag;
+    private int sectionOffset;
+
+    // Metadata still to be written after the pages when appending, and the section table once written
+    private byte[] titleBytes, authorBytes;
+    private ByteBuffer table;
+
+    // The section table of the file being appended to, and the text index to write after the pages
+    private ByteBuffer previousTable;
+    private byte[] textIndex;
+    private boolean keepTextIndex;
+
+    /**
+     * Construct a new writer and write the header and metadata.
+     * @param channel The channel to write to from its start, it is not closed by this writer
+     * @param title The title of the story
+     * @param author The author of the story
+     * @param pageIds The ID of each page that will be written, in page order
+     * @param imageCount The number of those pages with an image
+     * @param dictionary The dictionary to compress page text with, or null for none
+     * @param codec The codec to compress payloads with
+     */
+    StoryWriter(WritableByteChannel channel, String title, String author, int[] pageIds, int imageCount,
+                byte[] dictionary, Codec codec) throws IOException {
+        this(channel, 0, pageIds, imageCount, dictionary, codec);
+
+        out.put(StoryFormat.MAGIC);
+        out.putShort((short) StoryFormat.VERSION);
+        out.putShort((short) 0); // Flags
+
+        writeMetadata(title.getBytes(StoryFormat.CHARSET), author.getBytes(StoryFormat.CHARSET));
+        writePageIds();
+        if (dictionary != null)
+            writeDictionary();
+        beginSection(StoryFormat.SECTION_PAGES, StoryFormat.LENGTH_STREAMED);
+    }
+
+    /**
+     * Construct a new writer that appends to the end of a file this format wrote.
+     * The page and dictionary sections of the file's current section table are
+     * carried over, and the metadata is written after the pages.
+     * @param channel The channel of the file, it is written from its end
+     * @param table The file's current section table
+     * @param title The title of the story
+     * @param author The author of the story
+     * @param pageIds The ID of each page that will be written or kept, in page order
+     * @param imageCount The number of those pages with an image
+     * @param dictionary The dictionary of the file, which page text is compressed with, or null if it has none
+     * @param codec The codec to compress payloads with
+     */
+    StoryWriter(FileChannel channel, ByteBuffer table, String title, String author, int[] pageIds, int imageCount,
+                byte[] dictionary, Codec codec) throws IOException {
+        this(channel.position(channel.size()), channel.size(), pageIds, imageCount, dictionary, codec);
+        titleBytes = title.getBytes(StoryFormat.CHARSET);
+        authorBytes = author.getBytes(StoryFormat.CHARSET);
+        previousTable = table;
+
+        keepSections(StoryFormat.SECTION_PAGES);
+        keepSections(StoryFormat.SECTION_DICTIONARY);
+        beginSection(StoryFormat.SECTION_PAGES, StoryFormat.LENGTH_STREAMED);
+    }
+
+    /**
+     * Construct a new writer without writing anything.
+     * @param channel The channel to write to
+     * @param position The position of the channel in the file
+     * @param pageIds The ID of each page that will be written, in page order
+     * @param imageCount The number of those pages with an image
+     * @param dictionary The dictionary to compress page text with, or null for none
+     * @param codec The codec to compress payloads with
+     */
+    private StoryWriter(WritableByteChannel channel, long position, int[] pageIds, int imageCount, byte[] dictionary,
+                        Codec codec) {
+        this.channel = channel;
+        out = ByteBuffer.allocate(BUFFER_SIZE);
+        sectionCrc = new Crc32c();
+        pageCrc = new Crc32c();
+        this.dictionary = dictionary;
+        this.codec = codec;
+        encoder = new PageEncoder(dictionary, codec);
+        encoded = new PageEncoder.EncodedPage();
+        this.pageIds = pageIds;
+        numPages = pageIds.length;
+        this.imageCount = imageCount;
+        pageOffsets = new int[numPages];
+        pageLengths = new int[numPages];
+        pageChecksums = new int[numPages];
+        flushed = position;
+    }
+
+    /**
+     * Write the next page.
+     * @param p The page to write
+     */
+    void writePage(Page p) throws IOException {
+        encoder.encode(p, encoded, false);
+        writeEncoded(encoded);
+    }
+
+    /**
+     * Keep the record of an unchanged page as the next page, without writing it again.
+     * Only valid when appending to the file the page was saved in.
+     * @param p The page to keep
+     */
+    void keepPage(Page p) {
+        if (pagesWritten == numPages)
+            throw new IllegalStateException("All " + numPages + " pages have been written");
+
+        pageOffsets[pagesWritten] = p.getRecordOffset();
+        pageLengths[pagesWritten] = p.getRecordLength();
+        pageChecksums[pagesWritten++] = p.getRecordChecksum();
+    }
+
+    /**
+     * Write the next pages, compressing them in batches on an executor.
+     * Pages are still written in order, and only a bounded number of batches
+     * are held compressed in memory at once.
+     * @param pages The pages to write
+     * @param executor The executor to compress on
+     */
+    void writePages(final List<Page> pages, ExecutorService executor) throws IOException {
+        ArrayDeque<Future<PageEncoder.EncodedPage[]>> batches = new ArrayDeque<>();
+        int submitted = 0;
+
+        try {
+            while (submitted < pages.size() || !batches.isEmpty()) {
+                while (submitted < pages.size() && batches.size() < BATCHES_AHEAD) {
+                    final int start = submitted;
+                    final int end = Math.min(start + BATCH_SIZE, pages.size());
+
+                    batches.add(executor.submit(new Callable<PageEncoder.EncodedPage[]>() {
+                        /**
+                         * Compress one batch of pages.
+                         * @return The encoded pages
+                         */
+                        @Override
+                        public PageEncoder.EncodedPage[] call() {
+                            return encodeBatch(pages, start, end, dictionary, codec);
+                        }
+                    }));
+                    submitted = end;
+                }
+
+                for (PageEncoder.EncodedPage e : batches.remove().get())
+                    writeEncoded(e);
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress pages", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing pages");
+        } finally {
+            for (Future<PageEncoder.EncodedPage[]> f : batches)
+                f.cancel(true);
+        }
+    }
+
+    /**
+     * Write a text index after the pages.
+     * @param index The contents of the text index section
+     */
+    void setTextIndex(byte[] index) {
+        textIndex = index;
+        keepTextIndex = false;
+    }
+
+    /**
+     * Keep the text index of the file being appended to, rather than writing it again.
+     * Only valid when appending, and only if the index still matches the pages.
+     */
+    void keepTextIndex() {
+        if (previousTable == null)
+            throw new IllegalStateException("Not appending to a file");
+
+        textIndex = null;
+        keepTextIndex = true;
+    }
+
+    /**
+     * Write the page directory, section table and trailer, then flush.
+     */
+    void finish() throws IOException {
+        if (pagesWritten != numPages)
+            throw new IllegalStateException((numPages - pagesWritten) + " pages have not been written");
+
+        endSection();
+
+        if (titleBytes != null) {
+            writeMetadata(titleBytes, authorBytes);
+            writePageIds();
+        }
+
+        if (keepTextIndex)
+            keepSections(StoryFormat.SECTION_TEXT_INDEX);
+        else if (textIndex != null) {
+            beginSection(StoryFormat.SECTION_TEXT_INDEX, textIndex.length);
+            write(textIndex, 0, textIndex.length);
+            endSection();
+        }
+
+        beginSection(StoryFormat.SECTION_PAGE_DIRECTORY, numPages * StoryFormat.PAGE_DIRECTORY_ENTRY_SIZE);
+        for (int i = 0; i < numPages; i++) {
+            putInt(pageOffsets[i]);
+            putInt(pageLengths[i]);
+            putInt(pageChecksums[i]);
+        }
+        endSection();
+
+        // The section table describes every section before it
+        int count = sectionCount;
+        beginSection(StoryFormat.SECTION_TABLE, 2 + count * StoryFormat.SECTION_TABLE_ENTRY_SIZE);
+        int tableOffset = sectionOffset;
+        table = ByteBuffer.allocate(2 + count * StoryFormat.SECTION_TABLE_ENTRY_SIZE);
+        table.putShort((short) count);
+
+        for (int i = 0; i < count; i++) {
+            table.putInt(sectionTags[i]);
+            table.putInt(sectionOffsets[i]);
+            table.putInt(sectionLengths[i]);
+            table.putInt(sectionChecksums[i]);
+        }
+
+        write(table.array(), 0, table.capacity());
+        updateChecksums();
+        int tableChecksum = (int) sectionCrc.getValue();
+
+        putInt(tableOffset);
+        putInt(tableChecksum);
+        write(StoryFormat.MAGIC, 0, StoryFormat.MAGIC.length);
+        flush();
+
+        // Readers that stream the file need to know its sections are no longer in order
+        if (titleBytes != null && channel instanceof FileChannel) {
+            ByteBuffer flags = ByteBuffer.allocate(2).putShort(0, (short) StoryFormat.FLAG_JOURNALED);
+            while (flags.hasRemaining())
+                ((FileChannel) channel).write(flags, StoryFormat.FLAGS_OFFSET + flags.position());
+        }
+
+        close();
+    }
+
+    /**
+     * Remember where each page was written, marking the pages clean.
+     * Pages with a choice past the last page stay dirty.
+     * Only valid once {@link #finish()} has been called.
+     * @param pages The pages that were written, in order
+     * @param story The story whose file they were written to
+     */
+    void markSaved(List<Page> pages, Object story) {
+        for (int i = 0; i < numPages; i++) {
+            if (!pages.get(i).turnsPast(numPages))
+                pages.get(i).markSaved(story, pageOffsets[i], pageLengths[i], pageChecksums[i]);
+        }
+    }
+
+    /**
+     * Get the section table that {@link #finish()} wrote.
+     * @return The section table contents
+     */
+    ByteBuffer getSectionTable() {
+        return table;
+    }
+
+    /**
+     * Get the number of bytes in the file so far.
+     * @return The length of the file
+     */
+    long getLength() {
+        return position();
+    }
+
+    /**
+     * Release the deflater. The underlying stream is left open.
+     */
+    @Override
+    public void close() {
+        encoder.end();
+    }
+
+    /**
+     * Compress a range of pages with an encoder of their own.
+     * @param pages The pages
+     * @param start The index of the first page
+     * @param end The index after the last page
+     * @param dictionary The dictionary to compress page text with, or null for none
+     * @param codec The codec to compress payloads with
+     * @return The encoded pages
+     */
+    private static PageEncoder.EncodedPage[] encodeBatch(List<Page> pages, int start, int end, byte[] dictionary,
+                                                         Codec codec) {
+        PageEncoder encoder = new PageEncoder(dictionary, codec);
+        PageEncoder.EncodedPage[] batch = new PageEncoder.EncodedPage[end - start];
+
+        try {
+            for (int i = start; i < end; i++) {
+                batch[i - start] = new PageEncoder.EncodedPage();
+                encoder.encode(pages.get(i), batch[i - start], true);
+            }
+        } finally {
+            encoder.end();
+        }
+
+        return batch;
+    }
+
+    /**
+     * Write an encoded page as the next page record.
+     * @param e The encoded page
+     */
+    private void writeEncoded(PageEncoder.EncodedPage e) throws IOException {
+        if (pagesWritten == numPages)
+            throw new IllegalStateException("All " + numPages + " pages have been written");
+
+        updateChecksums();
+        pageCrc.reset();
+        pageOffsets[pagesWritten] = (int) position();
+
+        // Write the choices as the IDs of the pages they turn to
+        putVarint(e.choiceCount);
+        for (int i = 0; i < e.choiceCount; i++)
+            putVarint(StoryFormat.varintChoice(StoryFormat.storedChoice(e.choices[i], pageIds)));
+
+        putByte(e.imageType);
+        writePayload(e.imageEncoding, e.image, e.imageLength);
+        writePayload(e.textEncoding, e.text, e.textLength);
+
+        updateChecksums();
+        pageLengths[pagesWritten] = (int) position() - pageOffsets[pagesWritten];
+        pageChecksums[pagesWritten++] = (int) pageCrc.getValue();
+    }
+
+    /**
+     * Write the metadata section.
+     * @param title The encoded title
+     * @param author The encoded author
+     */
+    private void writeMetadata(byte[] title, byte[] author) throws IOException {
+        beginSection(StoryFormat.SECTION_META, title.length + author.length + 2 + StoryFormat.varintSize(numPages)
+                + StoryFormat.varintSize(imageCount));
+        write(title, 0, title.length);
+        putByte(0);
+        write(author, 0, author.length);
+        putByte(0);
+        putVarint(numPages);
+        putVarint(imageCount);
+        endSection();
+    }
+
+    /**
+     * Write the page ID section.
+     */
+    private void writePageIds() throws IOException {
+        int length = 0;
+        for (int i = 0; i < numPages; i++)
+            length += StoryFormat.varintSize(pageIds[i]);
+
+        beginSection(StoryFormat.SECTION_PAGE_IDS, length);
+        for (int i = 0; i < numPages; i++)
+            putVarint(pageIds[i]);
+        endSection();
+    }
+
+    /**
+     * Write the dictionary section, with the dictionary compressed.
+     */
+    private void writeDictionary() throws IOException {
+        byte[] compressed = StoryFormat.compress(dictionary);
+
+        beginSection(StoryFormat.SECTION_DICTIONARY, 1 + compressed.length);
+        putByte(StoryFormat.ENCODING_ZLIB);
+        write(compressed, 0, compressed.length);
+        endSection();
+    }
+
+    /**
+     * Write an encoding, a varint length and the payload itself.
+     * @param encoding The encoding of the payload
+     * @param payload The array holding the payload
+     * @param length The length of the payload
+     */
+    private void writePayload(int encoding, byte[] payload, int length) throws IOException {
+        putByte(encoding);
+        putVarint(length);
+        write(payload, 0, length);
+    }
+
+    /**
+     * Carry over every section with a tag from the section table of the file being appended to.
+     * @param tag The tag of the sections
+     */
+    private void keepSections(int tag) {
+        int count = previousTable.getShort(0) & 0xFFFF;
+
+        for (int i = 0; i < count; i++) {
+            int entry = 2 + i * StoryFormat.SECTION_TABLE_ENTRY_SIZE;
+
+            if (previousTable.getInt(entry) == tag) {
+                sectionTag = tag;
+                sectionOffset = previousTable.getInt(entry + 4);
+                addSection(previousTable.getInt(entry + 8), previousTable.getInt(entry + 12));
+            }
+        }
+    }
+
+    /**
+     * Start a section.
+     * @param tag The tag of the section
+     * @param length The length of the section
+     */
+    private void beginSection(int tag, int length) throws IOException {
+        sectionTag = tag;
+        putInt(tag);
+        putInt(length);
+
+        // The checksum only covers the section contents
+        updateChecksums();
+        sectionCrc.reset();
+        sectionOffset = (int) position();
+    }
+
+    /**
+     * End the current section and record it in the section table.
+     */
+    private void endSection() {
+        updateChecksums();
+        addSection((int) position() - sectionOffset, (int) sectionCrc.getValue());
+    }
+
+    /**
+     * Record the current section in the section table.
+     * @param length The length of the section
+     * @param checksum The checksum of the section
+     */
+    private void addSection(int length, int checksum) {
+        if (sectionCount == sectionTags.length) {
+            sectionTags = Arrays.copyOf(sectionTags, sectionCount * 2);
+            sectionOffsets = Arrays.copyOf(sectionOffsets, sectionCount * 2);
+            sectionLengths = Arrays.copyOf(sectionLengths, sectionCount * 2);
+            sectionChecksums = Arrays.copyOf(sectionChecksums, sectionCount * 2);
+        }
+
+        sectionTags[sectionCount] = sectionTag;
+        sectionOffsets[sectionCount] = sectionOffset;
+        sectionLengths[sectionCount] = length;
+        sectionChecksums[sectionCount++] = checksum;
+    }
+
+    /**
+     * Get the number of bytes written so far, including those still buffered.
+     * @return The position in the file
+     */
+    private long position() {
+        return flushed + out.position();
+    }
+
+    /**
+     * Write a byte.
+     * @param b The byte, only its low 8 bits are written
+     */
+    private void putByte(int b) throws IOException {
+        ensureRemaining(1);
+        out.put((byte) b);
+    }
+
+    /**
+     * Write a big-endian 32-bit int.
+     * @param i The int
+     */
+    private void putInt(int i) throws IOException {
+        ensureRemaining(4);
+        out.putInt(i);
+    }
+
+    /**
+     * Write an unsigned varint.
+     * @param i The value
+     */
+    private void putVarint(int i) throws IOException {
+        ensureRemaining(StoryFormat.MAX_VARINT_SIZE);
+        StoryFormat.putVarint(out, i);
+    }
+
+    /**
+     * Write part of an array, skipping the buffer if it does not fit.
+     * @param b The array
+     * @param off The offset to start at
+     * @param len The number of bytes
+     */
+    private void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return;
+
+        if (len <= out.remaining()) {
+            out.put(b, off, len);
+            return;
+        }
+
+        flush();
+        sectionCrc.update(b, off, len);
+        pageCrc.update(b, off, len);
+
+        ByteBuffer wrapped = ByteBuffer.wrap(b, off, len);
+        while (wrapped.hasRemaining())
+            channel.write(wrapped);
+
+        flushed += len;
+    }
+
+    /**
+     * Flush the buffer if it can not fit more bytes.
+     * @param length The number of bytes about to be put
+     */
+    private void ensureRemaining(int length) throws IOException {
+        if (out.remaining() < length)
+            flush();
+    }
+
+    /**
+     * Write everything buffered to the channel.
+     */
+    private void flush() throws IOException {
+        updateChecksums();
+        out.flip();
+
+        while (out.hasRemaining())
+            channel.write(out);
+
+        flushed += out.limit();
+        out.clear();
+        checksummed = 0;
+    }
+
+    /**
+     * Feed the bytes put into the buffer since the last update to the checksums.
+     */
+    private void updateChecksums() {
+        sectionCrc.update(out.array(), checksummed, out.position() - checksummed);
+        pageCrc.update(out.array(), checksummed, out.position() - checksummed);
+        checksummed = out.position();
+    }
+}
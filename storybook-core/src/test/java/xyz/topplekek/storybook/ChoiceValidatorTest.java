@@ -0,0 +1,116 @@
+package xyz.topplekek.storybook;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static xyz.topplekek.storybook.TestStories.story;
+
+/**
+ * Checks that the choice validator only reports the pages affected by a change.
+ */
+public class ChoiceValidatorTest {
+    @Test
+    public void addPage_reportsPagesTurningToIt() {
+        // Pages 1 and 3 turn to page 4 before it exists, page 2 turns to page 5
+        Story story = story(4, 4, 5, 0, 1, 4);
+        ChoiceValidator validator = new ChoiceValidator(story);
+        final List<Integer> changed = new ArrayList<>();
+
+        validator.setListener(new ChoiceValidator.Listener() {
+            @Override
+            public void onValidityChanged(int index) {
+                changed.add(index);
+            }
+        });
+
+        assertEquals(4, validator.getInvalidCount());
+        assertFalse(validator.isChoice1Valid(0));
+        assertTrue(validator.isChoice1Valid(2));
+
+        story.addPage(new Page("Page", null, Page.IMAGE_UNKNOWN, 0, 0));
+        validator.pageAdded(story.size() - 1);
+        assertEquals(Arrays.asList(0, 2), changed);
+        assertEquals(1, validator.getInvalidCount());
+        assertTrue(validator.isChoice2Valid(0));
+        assertFalse(validator.isChoice1Valid(1));
+    }
+
+    @Test
+    public void choicesChanged_checksPageAgain() {
+        Story story = story(3, 0, 0, 0);
+        ChoiceValidator validator = new ChoiceValidator(story);
+        final List<Integer> changed = new ArrayList<>();
+
+        validator.setListener(new ChoiceValidator.Listener() {
+            @Override
+            public void onValidityChanged(int index) {
+                changed.add(index);
+            }
+        });
+
+        story.getPageAt(0).setChoices(new int[] {2, -1});
+        validator.choicesChanged(0);
+        story.getPageAt(1).setChoices(new int[] {70000, 3});
+        validator.choicesChanged(1);
+        assertEquals(3, validator.getInvalidCount());
+        assertFalse(validator.isChoice2Valid(0));
+
+        // Page 1 no longer turns to page 3, only page 2 does
+        story.addPage(new Page("Page", null, Page.IMAGE_UNKNOWN, 0, 3));
+        validator.pageAdded(story.size() - 1);
+        assertEquals(Arrays.asList(1), changed);
+        assertEquals(2, validator.getInvalidCount());
+        assertFalse(validator.isChoice1Valid(1));
+        assertTrue(validator.isChoice2Valid(2));
+    }
+
+    @Test
+    public void insertRemoveAndMove_keepValidity() {
+        // Page 1 turns past the end of the story
+        Story story = story(2, 5, 3, 0, 1, 0);
+        ChoiceValidator validator = new ChoiceValidator(story);
+        final List<Integer> changed = new ArrayList<>();
+
+        validator.setListener(new ChoiceValidator.Listener() {
+            @Override
+            public void onValidityChanged(int index) {
+                changed.add(index);
+            }
+        });
+
+        assertEquals(1, validator.getInvalidCount());
+
+        // Page 1's choice of 5 is renumbered to 6, which is still past the end
+        story.insertPage(1, new Page("Inserted", null, Page.IMAGE_UNKNOWN, 4, 9));
+        validator.pageInserted(1);
+        assertEquals(2, validator.getInvalidCount());
+        assertFalse(validator.isChoice2Valid(0));
+        assertFalse(validator.isChoice2Valid(1));
+        assertEquals(new ChoiceValidator(story).getInvalidCount(), validator.getInvalidCount());
+
+        // Validity follows the page as it moves
+        story.movePage(0, 3);
+        assertFalse(validator.isChoice2Valid(3));
+        assertTrue(validator.isChoice2Valid(2));
+        assertEquals(2, validator.getInvalidCount());
+
+        validator.pageRemoved(story.removePage(3));
+        assertEquals(1, validator.getInvalidCount());
+        assertFalse(validator.isChoice2Valid(0));
+        assertEquals(new ChoiceValidator(story).getInvalidCount(), validator.getInvalidCount());
+
+        // The inserted page turns to page 9, and is only reported once it is added
+        while (story.size() < 9) {
+            story.addPage(new Page("Page", null, Page.IMAGE_UNKNOWN, 0, 0));
+            validator.pageAdded(story.size() - 1);
+        }
+
+        assertEquals(Arrays.asList(0), changed);
+        assertEquals(0, validator.getInvalidCount());
+        assertTrue(validator.isChoice2Valid(0));
+    }
+}
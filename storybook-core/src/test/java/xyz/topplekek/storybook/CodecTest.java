@@ -0,0 +1,105 @@
+package xyz.topplekek.storybook;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that payloads are decoded by the codec registered for their ID.
+ */
+public class CodecTest {
+    // Deflates at the best level, but records an ID of its own
+    private static final Codec CUSTOM = new Codec() {
+        @Override
+        public int getId() {
+            return 200;
+        }
+
+        @Override
+        public String getName() {
+            return "custom";
+        }
+
+        @Override
+        public Encoder newEncoder(byte[] dictionary) {
+            final Encoder deflate = Codec.BEST.newEncoder(null);
+
+            return new Encoder() {
+                @Override
+                public int getId() {
+                    return 200;
+                }
+
+                @Override
+                public int encode(byte[] data, int off, int len, byte[] output) {
+                    return deflate.encode(data, off, len, output);
+                }
+
+                @Override
+                public void end() {
+                    deflate.end();
+                }
+            };
+        }
+
+        @Override
+        public Decoder newDecoder() {
+            return Codec.BEST.newDecoder();
+        }
+    };
+
+    private static byte[] save(Story story) throws IOException {
+        File file = File.createTempFile("story", ".storybook");
+        file.deleteOnExit();
+        story.saveStory(new FileOutputStream(file));
+        return Files.readAllBytes(file.toPath());
+    }
+
+    @Test
+    public void forName_findsBuiltInCodecs() {
+        assertSame(Codec.DEFAULT, Codec.forName("default"));
+        assertSame(Codec.FAST, Codec.forName("deflate1"));
+        assertEquals("deflate5", Codec.forName("deflate5").toString());
+        assertSame(Codec.STORE, Codec.forId(0));
+
+        try {
+            Codec.forName("deflate0");
+            fail("Found a codec with an invalid level");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void load_decodesWithRegisteredCodec() throws IOException {
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("A page long enough to compress, long enough to compress", null, Page.IMAGE_UNKNOWN, 0, 0));
+        story.setCodec(CUSTOM);
+        byte[] data = save(story);
+
+        // Not registered yet, so nothing can read its payloads
+        try {
+            new Story(new ByteArrayInputStream(data)).getPageAt(0).getText();
+            fail("Decoded a payload with an unregistered codec");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        Codec.register(CUSTOM);
+        assertSame(CUSTOM, Codec.forName("custom"));
+        assertEquals(story.getPageAt(0).getText(), new Story(new ByteArrayInputStream(data)).getPageAt(0).getText());
+
+        try {
+            Codec.register(CUSTOM);
+            fail("Registered a codec twice");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
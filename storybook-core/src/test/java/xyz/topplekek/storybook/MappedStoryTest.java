@@ -0,0 +1,162 @@
+package xyz.topplekek.storybook;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a mapped story only reads the pages and payloads that are asked for.
+ */
+public class MappedStoryTest {
+    private static File save(Story story) throws IOException {
+        File file = File.createTempFile("story", ".storybook");
+        file.deleteOnExit();
+        story.saveStory(new FileOutputStream(file));
+        return file;
+    }
+
+    private static Story story(byte[] image) {
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("First", null, Page.IMAGE_UNKNOWN, 2, 3));
+        story.addPage(new Page("Second", image, Page.IMAGE_PNG, 3, 0));
+        story.addPage(new Page("Third", null, Page.IMAGE_UNKNOWN, 0, 0));
+        return story;
+    }
+
+    private static byte[] image() {
+        byte[] image = new byte[1024];
+        new Random(1).nextBytes(image);
+        return image;
+    }
+
+    @Test
+    public void getPageAt_readsPagesOnDemand() throws IOException {
+        byte[] image = image();
+        PageCache cache = new PageCache(1 << 20);
+        MappedStory mapped;
+
+        try (FileChannel channel = new FileInputStream(save(story(image))).getChannel()) {
+            mapped = new MappedStory(channel, cache);
+        }
+
+        assertEquals("Title", mapped.getTitle());
+        assertEquals(3, mapped.size());
+        assertEquals(0, cache.getMissCount());
+
+        // Pages are made once, and their choices are read without decoding anything
+        Page second = mapped.getPageAt(1);
+        assertSame(second, mapped.getPageAt(1));
+        assertEquals(3, second.getChoice1());
+        assertTrue(second.hasImage());
+        assertEquals(0, cache.getMissCount());
+
+        // Stored images are read from the file without being copied or cached
+        ByteBuffer buffer = second.getImageBuffer();
+        assertEquals(image.length, buffer.remaining());
+        assertEquals(image[100], buffer.get(buffer.position() + 100));
+        assertEquals(0, cache.getMissCount());
+
+        assertEquals("Second", second.getText());
+        assertEquals(1, cache.getMissCount());
+        assertEquals("Third", mapped.getPageAt(2).getText());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void getPageAt_checksOnlyPagesRead() throws IOException {
+        byte[] image = image();
+        File file = save(story(image));
+
+        // Corrupt the image of the second page
+        byte[] data = Files.readAllBytes(file.toPath());
+        int offset = -1;
+        for (int i = 0; i + image.length <= data.length && offset < 0; i++) {
+            if (ByteBuffer.wrap(data, i, image.length).equals(ByteBuffer.wrap(image)))
+                offset = i + image.length / 2;
+        }
+
+        assertTrue(offset > 0);
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.seek(offset);
+            output.write(data[offset] ^ 1);
+        }
+
+        MappedStory mapped;
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            mapped = new MappedStory(channel);
+        }
+
+        // The other pages can still be read
+        assertEquals("First", mapped.getPageAt(0).getText());
+        assertEquals("Third", mapped.getPageAt(2).getText());
+
+        try {
+            mapped.getPageAt(1);
+            fail("Read a page that fails its checksum");
+        } catch (UncheckedIOException e) {
+            // Expected
+        }
+
+        try {
+            mapped.verify();
+            fail("Verified a story with a page that fails its checksum");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void open_rejectsTruncatedVersion1File() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write("Old title\0Old author\0".getBytes("UTF-8"));
+        out.writeShort(2);
+
+        // Two pages with choices and no image or text
+        for (int i = 0; i < 2; i++) {
+            out.writeShort(2 - i);
+            out.writeShort(0);
+            out.writeInt(0);
+            out.writeInt(0);
+        }
+
+        byte[] data = bytes.toByteArray();
+        File file = File.createTempFile("story", ".storybook");
+        file.deleteOnExit();
+
+        for (int length = 0; length < data.length; length++) {
+            try (FileOutputStream output = new FileOutputStream(file)) {
+                output.write(data, 0, length);
+            }
+
+            try (FileChannel channel = new FileInputStream(file).getChannel()) {
+                new MappedStory(channel);
+                fail("Mapped a version 1 file cut to " + length + " bytes");
+            } catch (EOFException e) {
+                // Expected
+            }
+        }
+
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(data);
+        }
+
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            assertEquals(2, new MappedStory(channel).size());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package xyz.topplekek.storybook;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks what the page cache keeps, evicts and counts.
+ */
+public class PageCacheTest {
+    private static MappedStory map(Story story, PageCache cache) throws IOException {
+        File file = File.createTempFile("story", ".storybook");
+        file.deleteOnExit();
+        story.saveStory(new FileOutputStream(file));
+
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            return new MappedStory(channel, cache);
+        }
+    }
+
+    private static String text(char c, int length) {
+        char[] text = new char[length];
+        Arrays.fill(text, c);
+        return new String(text);
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsed() throws IOException {
+        Story story = new Story("Title", "Author");
+        for (int i = 0; i < 3; i++)
+            story.addPage(new Page(text((char) ('a' + i), 100), null, Page.IMAGE_UNKNOWN, 0, 0));
+
+        // Room for two texts of 200 bytes each
+        PageCache cache = new PageCache(450);
+        MappedStory mapped = map(story, cache);
+
+        mapped.getPageAt(0).getText();
+        mapped.getPageAt(0).getText();
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(200, cache.getSize());
+
+        mapped.getPageAt(1).getText();
+        mapped.getPageAt(2).getText();
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(400, cache.getSize());
+
+        // Page 1 was evicted, page 3 was used most recently
+        assertEquals(text('a', 100), mapped.getPageAt(0).getText());
+        assertEquals(4, cache.getMissCount());
+        mapped.getPageAt(2).getText();
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+    @Test
+    public void get_cachesTextAndImageSeparately() throws IOException {
+        byte[] image = new byte[300];
+        Arrays.fill(image, (byte) 7);
+
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page(text('a', 100), image, Page.IMAGE_UNKNOWN, 0, 0));
+
+        PageCache cache = new PageCache(1000);
+        Page p = map(story, cache).getPageAt(0);
+
+        // Reading the text does not decode the image
+        p.getText();
+        assertEquals(1, cache.getMissCount());
+        assertEquals(200, cache.getSize());
+
+        assertArrayEquals(image, p.getImage());
+        p.getText();
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(500, cache.getSize());
+
+        // Setting the text drops both from the cache
+        p.setText("Changed");
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void get_doesNotKeepPayloadsBiggerThanCache() throws IOException {
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page(text('a', 300), null, Page.IMAGE_UNKNOWN, 0, 0));
+
+        PageCache cache = new PageCache(450);
+        Page p = map(story, cache).getPageAt(0);
+
+        assertEquals(text('a', 300), p.getText());
+        assertEquals(text('a', 300), p.getText());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void get_fromSeveralThreads() throws Exception {
+        Story story = new Story("Title", "Author");
+        for (int i = 0; i < 50; i++) {
+            byte[] image = new byte[500];
+            Arrays.fill(image, (byte) i);
+            story.addPage(new Page(text((char) ('a' + i % 26), 100 + i), image, Page.IMAGE_UNKNOWN, 0, 0));
+        }
+
+        // Small enough that threads keep evicting each other's payloads
+        final PageCache cache = new PageCache(3000);
+        final MappedStory mapped = map(story, cache);
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[4];
+
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t * 7;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int n = 0; n < 2000; n++) {
+                            int i = (n + offset) % 50;
+                            Page p = mapped.getPageAt(i);
+
+                            if (p.getText().length() != 100 + i || p.getImage()[499] != (byte) i)
+                                throw new AssertionError("Wrong payload of page " + i);
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        assertNull(failure[0]);
+        assertTrue(cache.getSize() <= cache.getMaxSize());
+        assertEquals(4 * 2000 * 2, cache.getHitCount() + cache.getMissCount());
+    }
+
+    @Test
+    public void constructor_rejectsEmptyCache() {
+        try {
+            new PageCache(0);
+            fail("Made a cache that can hold nothing");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package xyz.topplekek.storybook;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static xyz.topplekek.storybook.TestStories.story;
+
+/**
+ * Checks the story graph analysis on small stories.
+ */
+public class StoryGraphTest {
+    @Test
+    public void analyse_findsEndingsLoopsAndUnreachablePages() {
+        // 1 -> 2, 3; 2 -> 1; 3 is an ending; 4 -> 4 is unreachable and loops forever
+        StoryGraph graph = new StoryGraph(story(2, 3, 1, 0, 0, 0, 4, 0));
+
+        assertEquals(1, graph.getEndingCount());
+        assertTrue(graph.isEnding(2));
+        assertEquals(1, graph.getUnreachableCount());
+        assertFalse(graph.isReachable(3));
+        assertEquals(3, graph.getCyclicCount());
+        assertEquals(graph.getComponent(0), graph.getComponent(1));
+        assertEquals(1, graph.getDeadEndCount());
+        assertEquals(1, graph.getDistanceToEnding(0));
+        assertEquals(2, graph.getDistanceToEnding(1));
+        assertEquals(StoryGraph.UNREACHABLE, graph.getDistanceToEnding(3));
+    }
+
+    @Test
+    public void setChoicesAndAddPage_updateAnalysis() {
+        // Page 2 turns to page 3 before it exists, so it is an ending until page 3 is added
+        StoryGraph graph = new StoryGraph(story(2, 0, 3, 0));
+        assertTrue(graph.isEnding(1));
+
+        graph.addPage(0, 0);
+        assertFalse(graph.isEnding(1));
+        assertEquals(0, graph.getUnreachableCount());
+        assertEquals(2, graph.getDistanceFromStart(2));
+
+        graph.setChoices(1, 1, 0);
+        assertEquals(1, graph.getUnreachableCount());
+        assertEquals(2, graph.getDeadEndCount());
+    }
+
+    @Test
+    public void pageOrderChanged_readsChoicesAgain() {
+        // 1 -> 2 -> 3, and 3 is an ending
+        Story story = story(2, 0, 3, 0, 0, 0);
+        StoryGraph graph = new StoryGraph(story);
+        assertEquals(2, graph.getDistanceToEnding(0));
+
+        // Moving the ending to the front makes it page 1, so nothing else can be reached
+        story.movePage(2, 0);
+        graph.pageOrderChanged();
+        assertEquals(2, graph.getUnreachableCount());
+        assertTrue(graph.isEnding(0));
+
+        story.removePage(0);
+        graph.pageOrderChanged();
+        assertEquals(2, graph.size());
+        assertEquals(1, graph.getDistanceFromStart(1));
+        assertEquals(1, graph.getEndingCount());
+    }
+
+    @Test
+    public void addPage_afterPageOrderChanged() {
+        Story story = story(2, 0, 0, 0);
+        StoryGraph graph = new StoryGraph(story);
+
+        story.movePage(1, 0);
+        graph.pageOrderChanged();
+
+        // The page is added to the story first, so it is only read once
+        Page p = new Page("Added", null, Page.IMAGE_UNKNOWN, 1, 0);
+        story.addPage(p);
+        graph.addPage(p);
+        assertEquals(3, graph.size());
+        assertEquals(2, graph.getUnreachableCount());
+    }
+}
@@ -0,0 +1,283 @@
+package xyz.topplekek.storybook;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks reading stories from streams, including older files and streams that return short reads.
+ */
+public class StoryReaderTest {
+    private static File save(Story story) throws IOException {
+        File file = File.createTempFile("story", ".storybook");
+        file.deleteOnExit();
+        story.saveStory(new FileOutputStream(file));
+        return file;
+    }
+
+    private static byte[] zlib(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(data);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        search:
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j])
+                    continue search;
+            }
+
+            return i;
+        }
+
+        return -1;
+    }
+
+    @Test
+    public void load_readsVersion1File() throws IOException {
+        byte[] image = {(byte) 0x89, 'P', 'N', 'G', 13, 10, 26, 10, 1, 2, 3};
+        byte[] imageData = zlib(Base64.getEncoder().encode(image));
+        byte[] textData = zlib("Caf\u00e9 door".getBytes("UTF-8"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write("Old title\0Old author\0".getBytes("UTF-8"));
+        out.writeShort(2);
+
+        out.writeShort(2);
+        out.writeShort(0);
+        out.writeInt(imageData.length);
+        out.write(imageData);
+        out.writeInt(textData.length);
+        out.write(textData);
+
+        // A page without an image or text
+        out.writeShort(1);
+        out.writeShort(2);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.flush();
+
+        Story story = new Story(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals("Old title", story.getTitle());
+        assertEquals("Old author", story.getAuthor());
+        assertEquals(2, story.size());
+        assertEquals("Caf\u00e9 door", story.getPageAt(0).getText());
+        assertArrayEquals(image, story.getPageAt(0).getImage());
+        assertEquals(2, story.getPageAt(0).getChoice1());
+        assertFalse(story.getPageAt(1).hasImage());
+        assertEquals(1, story.getPageAt(1).getChoice1());
+        assertEquals(2, story.getPageAt(1).getChoice2());
+
+        // Loaded pages get IDs, so the story can be saved as the latest version
+        assertTrue(story.getPageAt(0).getId() > 0);
+        Story saved;
+        try (InputStream input = new FileInputStream(save(story))) {
+            saved = new Story(input);
+        }
+
+        assertEquals("Caf\u00e9 door", saved.getPageAt(0).getText());
+        assertArrayEquals(image, saved.getPageAt(0).getImage());
+    }
+
+    @Test
+    public void load_handlesShortReads() throws IOException {
+        byte[] image = new byte[3000];
+        for (int i = 0; i < image.length; i++)
+            image[i] = (byte) (i * 7);
+
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("First", image, Page.IMAGE_UNKNOWN, 2, 0));
+        story.addPage(new Page("Second", null, Page.IMAGE_UNKNOWN, 1, 0));
+        byte[] data = Files.readAllBytes(save(story).toPath());
+
+        // Return one byte at a time, as a slow network stream may
+        Story loaded = new Story(new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        });
+
+        assertEquals(2, loaded.size());
+        assertArrayEquals(image, loaded.getPageAt(0).getImage());
+        assertEquals("Second", loaded.getPageAt(1).getText());
+    }
+
+    @Test
+    public void load_readsJournaledFileFromAnyStream() throws IOException {
+        Story story = new Story("Title", "Author");
+        for (int i = 0; i < 10; i++)
+            story.addPage(new Page("Page number " + i + " of a story long enough to keep its records", null,
+                    Page.IMAGE_UNKNOWN, i + 2, 0));
+
+        File file = File.createTempFile("story", ".storybook");
+        file.deleteOnExit();
+
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            story.saveChanges(output.getChannel());
+            story.getPageAt(3).setText("Changed");
+            assertTrue(story.saveChanges(output.getChannel()));
+        }
+
+        byte[] data = Files.readAllBytes(file.toPath());
+
+        // A file that does not start at the start of its stream's file is mapped from where it starts
+        File prefixed = File.createTempFile("story", ".storybook");
+        prefixed.deleteOnExit();
+        try (FileOutputStream output = new FileOutputStream(prefixed)) {
+            output.write(new byte[] {1, 2, 3});
+            output.write(data);
+        }
+
+        Story fromFile;
+        try (InputStream input = new FileInputStream(prefixed)) {
+            assertEquals(3, input.skip(3));
+            fromFile = new Story(input);
+        }
+
+        // Any other stream is copied to a temporary file first
+        Story fromMemory = new Story(new ByteArrayInputStream(data));
+
+        for (Story loaded : new Story[] {fromFile, fromMemory}) {
+            assertEquals(10, loaded.size());
+            assertEquals("Changed", loaded.getPageAt(3).getText());
+            assertEquals(story.getPageAt(9).getText(), loaded.getPageAt(9).getText());
+            assertEquals(5, loaded.getPageAt(3).getChoice1());
+        }
+    }
+
+    @Test
+    public void load_rejectsTruncatedFile() throws IOException {
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("First", null, Page.IMAGE_UNKNOWN, 0, 0));
+        byte[] data = Files.readAllBytes(save(story).toPath());
+
+        try {
+            new Story(new ByteArrayInputStream(data, 0, data.length / 2));
+            fail("Loaded a truncated story");
+        } catch (IOException e) {
+            // Expected, usually an EOFException
+        }
+    }
+
+    @Test
+    public void load_rejectsChecksumMismatch() throws IOException {
+        byte[] image = new byte[1024];
+        new Random(1).nextBytes(image);
+
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("First", null, Page.IMAGE_UNKNOWN, 2, 0));
+        story.addPage(new Page("Second", image, Page.IMAGE_PNG, 0, 0));
+        File file = save(story);
+
+        // Images of known types are stored as is, so a byte in the middle of one can be found and flipped
+        byte[] data = Files.readAllBytes(file.toPath());
+        int offset = indexOf(data, image) + image.length / 2;
+        assertTrue(offset > 0);
+
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.seek(offset);
+            output.write(data[offset] ^ 1);
+        }
+
+        try (InputStream input = new FileInputStream(file)) {
+            new Story(input);
+            fail("Loaded a story whose page fails its checksum");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void load_rejectsUnreleasedVersions() throws IOException {
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("First", null, Page.IMAGE_UNKNOWN, 0, 0));
+        byte[] data = Files.readAllBytes(save(story).toPath());
+
+        // Versions 2 and 3 never shipped, so nothing should read them
+        for (int version = 2; version <= 3; version++) {
+            data[5] = (byte) version;
+
+            try {
+                new Story(new ByteArrayInputStream(data));
+                fail("Loaded a version " + version + " story");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void loadAndSave_inParallelMatchesSerial() throws IOException {
+        Random random = new Random(2);
+        Story story = new Story("Title", "Author");
+
+        // Enough pages for several batches, with text and images that do and do not compress
+        for (int i = 0; i < 500; i++) {
+            byte[] image = null;
+            if (i % 3 == 0) {
+                image = new byte[256];
+                random.nextBytes(image);
+            } else if (i % 3 == 1) {
+                image = new byte[256];
+            }
+
+            story.addPage(new Page("Page " + i + " of a story read and written on several threads", image,
+                    Page.IMAGE_UNKNOWN, (i + 1) % 500 + 1, random.nextInt(500) + 1));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            File serial = save(story);
+            File parallel = File.createTempFile("story", ".storybook");
+            parallel.deleteOnExit();
+            story.saveStory(new FileOutputStream(parallel), executor);
+
+            assertArrayEquals(Files.readAllBytes(serial.toPath()), Files.readAllBytes(parallel.toPath()));
+
+            Story loaded;
+            try (InputStream input = new FileInputStream(serial)) {
+                loaded = new Story(input, executor);
+            }
+
+            assertEquals(story.size(), loaded.size());
+            for (int i = 0; i < story.size(); i++) {
+                Page expected = story.getPageAt(i);
+                Page actual = loaded.getPageAt(i);
+
+                assertEquals(expected.getId(), actual.getId());
+                assertEquals(expected.getText(), actual.getText());
+                assertArrayEquals(expected.getImage(), actual.getImage());
+                assertEquals(expected.getChoice1(), actual.getChoice1());
+                assertEquals(expected.getChoice2(), actual.getChoice2());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
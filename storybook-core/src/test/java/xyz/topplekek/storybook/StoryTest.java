@@ -0,0 +1,478 @@
+package xyz.topplekek.storybook;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips stories through the .storybook format.
+ */
+public class StoryTest {
+    private static Story roundTrip(Story story) throws IOException {
+        File file = File.createTempFile("story", ".storybook");
+        file.deleteOnExit();
+        story.saveStory(new FileOutputStream(file));
+
+        try (InputStream input = new FileInputStream(file)) {
+            return new Story(input);
+        }
+    }
+
+    @Test
+    public void saveAndLoad_preservesPages() throws IOException {
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("First", null, Page.IMAGE_UNKNOWN, 2, 0));
+        story.addPage(new Page("Second", new byte[] {(byte) 0x89, 'P', 'N', 'G', 1, 2, 3}, Page.IMAGE_PNG, 1, 2));
+
+        Story loaded = roundTrip(story);
+
+        assertEquals("Title", loaded.getTitle());
+        assertEquals("Author", loaded.getAuthor());
+        assertEquals(2, loaded.size());
+        assertEquals("First", loaded.getPageAt(0).getText());
+        assertFalse(loaded.getPageAt(0).hasImage());
+        assertEquals(2, loaded.getPageAt(0).getChoice1());
+        assertEquals("Second", loaded.getPageAt(1).getText());
+        assertEquals(Page.IMAGE_PNG, loaded.getPageAt(1).getImageType());
+        assertArrayEquals(story.getPageAt(1).getImage(), loaded.getPageAt(1).getImage());
+    }
+
+    @Test
+    public void saveAndLoad_emptyStory() throws IOException {
+        assertEquals(0, roundTrip(new Story("Empty", "Nobody")).size());
+    }
+
+    @Test
+    public void saveAndLoad_keepsNonAsciiText() throws IOException {
+        Story story = new Story("Le dragon \u00e9veill\u00e9 \u9f8d", "Zo\u00eb \ud83d\udc09");
+        story.addPage(new Page("\u00c0 gauche ou \u00e0 droite?", null, Page.IMAGE_UNKNOWN, 0, 0));
+
+        File file = File.createTempFile("story", ".storybook");
+        file.deleteOnExit();
+        story.saveStory(new FileOutputStream(file));
+
+        try (InputStream input = new FileInputStream(file)) {
+            Story loaded = new Story(input);
+            assertEquals(story.getTitle(), loaded.getTitle());
+            assertEquals(story.getAuthor(), loaded.getAuthor());
+            assertEquals("\u00c0 gauche ou \u00e0 droite?", loaded.getPageAt(0).getText());
+        }
+
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            MappedStory mapped = new MappedStory(channel);
+            assertEquals(story.getTitle(), mapped.getTitle());
+            assertEquals(story.getAuthor(), mapped.getAuthor());
+        }
+    }
+
+    @Test
+    public void readHeader_andIndexInLibrary() throws IOException {
+        Story story = new Story("The Dragon's Cave", "Zo\u00eb");
+        story.addPage(new Page("First", new byte[] {1, 2, 3}, Page.IMAGE_PNG, 2, 0));
+        story.addPage(new Page("Second", null, Page.IMAGE_UNKNOWN, 0, 0));
+
+        File file = File.createTempFile("story", ".storybook");
+        file.deleteOnExit();
+        story.saveStory(new FileOutputStream(file));
+
+        StoryHeader header;
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            header = StoryHeader.read(channel);
+        }
+
+        assertEquals(story.getTitle(), header.getTitle());
+        assertEquals(story.getAuthor(), header.getAuthor());
+        assertEquals(2, header.getNumPages());
+        assertEquals(1, header.getImageCount());
+
+        File index = File.createTempFile("library", ".index");
+        index.deleteOnExit();
+        StoryLibrary library = new StoryLibrary();
+        library.put(file.getPath(), file.lastModified(), header);
+        library.save(index);
+
+        StoryLibrary loaded = StoryLibrary.load(index);
+        assertEquals(1, loaded.search("dragon ZO\u00cb").size());
+        assertEquals(0, loaded.search("castle").size());
+        assertNull(loaded.get(file.getPath(), file.lastModified() + 1));
+        assertEquals(2, loaded.get(file.getPath(), file.lastModified()).getNumPages());
+    }
+
+    @Test
+    public void textIndex_followsEditsAndIsSaved() throws IOException {
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("The dragon sleeps.", null, Page.IMAGE_UNKNOWN, 0, 0));
+        story.addPage(new Page("A knight rides north.", null, Page.IMAGE_UNKNOWN, 0, 0));
+
+        StoryIndex index = story.getTextIndex();
+        assertArrayEquals(new int[] {0}, index.find("Dragon"));
+
+        story.getPageAt(0).setText("The dragon wakes.");
+        story.insertPage(0, new Page("Dragons and knights", null, Page.IMAGE_UNKNOWN, 0, 0));
+        story.movePage(2, 0);
+
+        assertArrayEquals(new int[] {2}, index.find("dragon"));
+        assertArrayEquals(new int[] {1, 2}, index.findPrefix("drag"));
+        assertArrayEquals(new int[] {0, 1}, index.search("knight"));
+        assertArrayEquals(new int[0], index.find("sleeps"));
+
+        File file = File.createTempFile("story", ".storybook");
+        file.deleteOnExit();
+        story.saveStory(new FileOutputStream(file));
+
+        try (InputStream input = new FileInputStream(file)) {
+            Story loaded = new Story(input);
+            assertArrayEquals(new int[] {1}, loaded.getTextIndex().search("dragons knights"));
+            assertArrayEquals(new int[] {0}, loaded.getTextIndex().find("north"));
+        }
+    }
+
+    @Test
+    public void pageEdits_commitLatestTextAndChoices() {
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("First", null, Page.IMAGE_UNKNOWN, 2, 0));
+        story.addPage(new Page("Second", null, Page.IMAGE_UNKNOWN, 0, 0));
+        story.addPage(new Page("Third", null, Page.IMAGE_UNKNOWN, 0, 0));
+        int first = story.getPageAt(0).getId(), second = story.getPageAt(1).getId(), third = story.getPageAt(2).getId();
+
+        PageEdits edits = new PageEdits();
+        StringBuilder typed = new StringBuilder("First");
+        typed.append(" page");
+        edits.setText(first, typed);
+        edits.setChoice2(first, "3x");
+        edits.setChoice1(third, "12");
+        edits.setText(third, "Third");
+        edits.setText(second, "Removed");
+        edits.freeze(first);
+        typed.setLength(0);
+
+        assertEquals("First page", edits.getText(first).toString());
+        assertNull(edits.getChoice2(third));
+
+        // Edits follow the page as it moves, and are dropped for removed pages
+        story.movePage(2, 0);
+        story.removePage(2);
+
+        assertArrayEquals(new int[] {0}, edits.commit(story));
+        assertTrue(edits.isEmpty());
+        assertEquals(12, story.getPageAt(0).getChoice1());
+        assertEquals("Third", story.getPageAt(0).getText());
+        assertEquals("First page", story.getPageAt(1).getText());
+        assertEquals(0, story.getPageAt(1).getChoice2());
+        assertEquals(2, story.size());
+
+        assertEquals(0, Page.parseChoice(""));
+        assertEquals(0, Page.parseChoice("-1"));
+        assertEquals(0, Page.parseChoice("99999999999"));
+        assertEquals(70000, Page.parseChoice("070000"));
+    }
+
+    @Test
+    public void listener_reportsWhatChanged() {
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("First", null, Page.IMAGE_UNKNOWN, 2, 0));
+        story.addPage(new Page("Second", null, Page.IMAGE_UNKNOWN, 0, 0));
+        final StringBuilder events = new StringBuilder();
+
+        story.setListener(new Story.Listener() {
+            @Override
+            public void onChoicesRenumbered(int index) {
+                events.append("renumbered ").append(index).append(';');
+            }
+
+            @Override
+            public void onPageChanged(int index, int change) {
+                events.append(change).append(' ').append(index).append(';');
+            }
+        });
+
+        story.getPageAt(1).setText("Changed");
+        story.getPageAt(1).setChoice2(1);
+        story.getPageAt(0).setImage(new byte[] {1}, Page.IMAGE_UNKNOWN);
+        Page removed = story.removePage(1);
+        removed.setText("Removed");
+
+        assertEquals(Story.CHANGED_TEXT + " 1;" + Story.CHANGED_CHOICES + " 1;" + Story.CHANGED_IMAGE + " 0;renumbered 0;",
+                events.toString());
+    }
+
+    @Test
+    public void saveChanges_appendsJournalThatReloads() throws IOException {
+        Story story = new Story("Title", "Author");
+        for (int i = 0; i < 10; i++)
+            story.addPage(new Page("Page number " + i + " of a story long enough to keep its records", null, Page.IMAGE_UNKNOWN, i + 2, 0));
+
+        File file = File.createTempFile("story", ".storybook");
+        file.deleteOnExit();
+
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            assertFalse(story.saveChanges(output.getChannel()));
+            long length = output.length();
+
+            story.getPageAt(3).setText("Changed");
+            story.addPage(new Page("Added", null, Page.IMAGE_UNKNOWN, 1, 0));
+            assertTrue(story.saveChanges(output.getChannel()));
+            assertTrue(output.length() > length);
+        }
+
+        try (InputStream input = new FileInputStream(file)) {
+            Story loaded = new Story(input);
+            assertEquals(11, loaded.size());
+            assertEquals("Changed", loaded.getPageAt(3).getText());
+            assertEquals("Added", loaded.getPageAt(10).getText());
+            assertEquals(5, loaded.getPageAt(3).getChoice1());
+            assertEquals(story.getPageAt(3).getId(), loaded.getPageAt(3).getId());
+        }
+
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            MappedStory mapped = new MappedStory(channel);
+            assertEquals(11, mapped.size());
+            assertEquals("Changed", mapped.getPageAt(3).getText());
+            assertEquals(story.getPageAt(0).getText(), mapped.getPageAt(0).getText());
+            assertEquals(1, mapped.getPageAt(10).getChoice1());
+        }
+    }
+
+    @Test
+    public void saveChanges_compactsOnceJournalGrows() throws IOException {
+        // Images that do not compress keep the records much bigger than the page directory each save rewrites
+        Random random = new Random(1);
+        Story story = new Story("Title", "Author");
+        for (int i = 0; i < 200; i++) {
+            byte[] image = new byte[1024];
+            random.nextBytes(image);
+            story.addPage(new Page("Page " + i, image, Page.IMAGE_UNKNOWN, 0, 0));
+        }
+
+        File file = File.createTempFile("story", ".storybook");
+        file.deleteOnExit();
+
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            assertFalse(story.saveChanges(output.getChannel()));
+
+            // Each journaled save adds a page section, the file is rewritten after 16 of them
+            for (int i = 0; i < 16; i++) {
+                story.getPageAt(0).setText("Edit " + i);
+                assertTrue("Save " + i, story.saveChanges(output.getChannel()));
+            }
+
+            story.getPageAt(0).setText("Edit 16");
+            assertFalse(story.saveChanges(output.getChannel()));
+
+            // Also rewritten once the kept records are less than half of the file
+            for (int i = 0; i < 90; i++)
+                story.getPageAt(i).setImage(new byte[] {1}, Page.IMAGE_UNKNOWN);
+            assertTrue(story.saveChanges(output.getChannel()));
+
+            for (int i = 90; i < 120; i++)
+                story.getPageAt(i).setImage(new byte[] {2}, Page.IMAGE_UNKNOWN);
+            assertFalse(story.saveChanges(output.getChannel()));
+        }
+
+        try (InputStream input = new FileInputStream(file)) {
+            Story loaded = new Story(input);
+            assertEquals("Edit 16", loaded.getPageAt(0).getText());
+            assertArrayEquals(new byte[] {2}, loaded.getPageAt(119).getImage());
+            assertEquals(1024, loaded.getPageAt(199).getImage().length);
+        }
+    }
+
+    @Test
+    public void saveChanges_rewritesDifferentFileOfSameLength() throws IOException {
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("First", null, Page.IMAGE_UNKNOWN, 0, 0));
+
+        File file = File.createTempFile("story", ".storybook");
+        File other = File.createTempFile("other", ".storybook");
+        file.deleteOnExit();
+        other.deleteOnExit();
+
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            story.saveChanges(output.getChannel());
+        }
+
+        try (RandomAccessFile output = new RandomAccessFile(other, "rw")) {
+            output.setLength(file.length());
+            story.getPageAt(0).setText("Changed");
+            assertFalse(story.saveChanges(output.getChannel()));
+        }
+
+        try (InputStream input = new FileInputStream(other)) {
+            assertEquals("Changed", new Story(input).getPageAt(0).getText());
+        }
+    }
+
+    @Test
+    public void validate_reportsOutOfRangeChoices() {
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("First", null, Page.IMAGE_UNKNOWN, 2, 3));
+        story.addPage(new Page("Second", null, Page.IMAGE_UNKNOWN, 1, 0));
+
+        assertEquals(1, StoryValidator.validate(story).size());
+    }
+
+    @Test
+    public void insertRemoveAndMove_renumberChoices() {
+        // 1 -> 2, 3; 2 -> 3; 3 is an ending
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("First", null, Page.IMAGE_UNKNOWN, 2, 3));
+        story.addPage(new Page("Second", null, Page.IMAGE_UNKNOWN, 3, 0));
+        story.addPage(new Page("Third", null, Page.IMAGE_UNKNOWN, 0, 0));
+
+        story.insertPage(1, new Page("Inserted", null, Page.IMAGE_UNKNOWN, 3, 0));
+        assertEquals(3, story.getPageAt(0).getChoice1());
+        assertEquals(4, story.getPageAt(0).getChoice2());
+        assertEquals(4, story.getPageAt(2).getChoice1());
+
+        story.movePage(3, 0);
+        assertEquals("Third", story.getPageAt(0).getText());
+        assertEquals(4, story.getPageAt(1).getChoice1());
+        assertEquals(1, story.getPageAt(1).getChoice2());
+
+        // Choices turning to a removed page are cleared, even when set after the page order changed
+        story.getPageAt(2).setChoice2(4);
+        story.removePage(3);
+        assertEquals(0, story.getPageAt(1).getChoice1());
+        assertEquals(0, story.getPageAt(2).getChoice2());
+        assertEquals(1, story.getPageAt(1).getChoice2());
+    }
+
+    @Test
+    public void insertAndAddPage_rejectPageOfAnotherStoryUnchanged() {
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("First", null, Page.IMAGE_UNKNOWN, 2, 3));
+        story.addPage(new Page("Second", null, Page.IMAGE_UNKNOWN, 3, 0));
+        story.addPage(new Page("Third", null, Page.IMAGE_UNKNOWN, 0, 0));
+
+        Story other = new Story("Other", "Author");
+        Page taken = new Page("Taken", null, Page.IMAGE_UNKNOWN, 1, 0);
+        other.addPage(taken);
+
+        try {
+            story.insertPage(1, taken);
+            fail("Inserted a page of another story");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        try {
+            story.addPage(taken);
+            fail("Added a page of another story");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        // Nothing was renumbered or added to either story
+        assertEquals(3, story.size());
+        assertEquals(2, story.getPageAt(0).getChoice1());
+        assertEquals(3, story.getPageAt(0).getChoice2());
+        assertEquals(3, story.getPageAt(1).getChoice1());
+        assertEquals(1, other.size());
+        assertEquals(1, taken.getChoice1());
+
+        // And the links still follow later changes
+        story.insertPage(0, new Page("Inserted", null, Page.IMAGE_UNKNOWN, 0, 0));
+        assertEquals(3, story.getPageAt(1).getChoice1());
+        assertEquals(4, story.getPageAt(2).getChoice1());
+    }
+
+    @Test
+    public void saveAndLoad_keepsPageIds() throws IOException {
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("First", null, Page.IMAGE_UNKNOWN, 3, 5));
+        story.addPage(new Page("Second", null, Page.IMAGE_UNKNOWN, 1, 0));
+        story.addPage(new Page("Third", null, Page.IMAGE_UNKNOWN, 0, 0));
+        story.movePage(2, 0);
+
+        int id = story.getPageAt(0).getId();
+        Story loaded = roundTrip(story);
+
+        assertEquals(0, loaded.indexOfId(id));
+        assertEquals("Third", loaded.getPageAt(0).getText());
+        assertEquals(1, loaded.getPageAt(1).getChoice1());
+        assertEquals(5, loaded.getPageAt(1).getChoice2());
+        assertEquals(2, loaded.getPageAt(2).getChoice1());
+    }
+
+    @Test
+    public void indexOfId_findsNoPageForUnusedIds() {
+        Story story = new Story("Title", "Author");
+        for (int i = 0; i < 20; i++)
+            story.addPage(new Page());
+
+        int removed = story.getPageAt(5).getId();
+        story.removePage(5);
+
+        // 0 is the ID of pages not in a story, and marks the empty slots of the ID map
+        assertEquals(-1, story.indexOfId(0));
+        assertEquals(-1, story.indexOfId(removed));
+        assertEquals(5, story.indexOfId(story.getPageAt(5).getId()));
+    }
+
+    @Test
+    public void saveAndLoad_keepsMoreThan65535PagesAndTwoChoices() throws IOException {
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("First", null, Page.IMAGE_UNKNOWN, new int[] {70000, 0, 3, 69999, 70001, 0}));
+        for (int i = 1; i < 70000; i++)
+            story.addPage(new Page(null, null, Page.IMAGE_UNKNOWN, new int[0]));
+
+        Story loaded = roundTrip(story);
+        Page first = loaded.getPageAt(0);
+
+        assertEquals(70000, loaded.size());
+        assertEquals(5, first.getChoiceCount());
+        assertEquals(70000, first.getChoice(0));
+        assertEquals(0, first.getChoice(1));
+        assertEquals(3, first.getChoice(2));
+        assertEquals(69999, first.getChoice(3));
+        assertEquals(70001, first.getChoice(4));
+        assertEquals(0, first.getChoice(5));
+        assertEquals(0, loaded.getPageAt(69999).getChoiceCount());
+    }
+
+    @Test
+    public void saveAndLoad_compressesTextWithDictionary() throws IOException {
+        Story corpus = new Story("Corpus", "Author");
+        for (int i = 0; i < 50; i++)
+            corpus.addPage(new Page("You walk down the long corridor and find door number " + i, null, Page.IMAGE_UNKNOWN, 0, 0));
+
+        Story story = new Story("Title", "Author");
+        story.addPage(new Page("You walk down the long corridor and find a dragon", null, Page.IMAGE_UNKNOWN, 2, 0));
+        story.addPage(new Page(null, null, Page.IMAGE_UNKNOWN, 1, 0));
+        story.setDictionary(StoryDictionary.build(Collections.singletonList(corpus)));
+
+        Story loaded = roundTrip(story);
+
+        assertArrayEquals(story.getDictionary(), loaded.getDictionary());
+        assertEquals("You walk down the long corridor and find a dragon", loaded.getPageAt(0).getText());
+        assertNull(loaded.getPageAt(1).getText());
+        assertEquals(2, loaded.getPageAt(0).getChoice1());
+    }
+
+    @Test
+    public void saveAndLoad_withEachCodec() throws IOException {
+        byte[] image = new byte[8192];
+        new Random(1).nextBytes(image);
+
+        for (String name : new String[] {"store", "huffman", "fast", "default", "best", "deflate5"}) {
+            Story story = new Story("Title", "Author");
+            story.addPage(new Page("Some text, some text, some text", image, Page.IMAGE_UNKNOWN, 0, 0));
+            story.setCodec(Codec.forName(name));
+
+            Story loaded = roundTrip(story);
+
+            assertEquals(name, "Some text, some text, some text", loaded.getPageAt(0).getText());
+            assertArrayEquals(image, loaded.getPageAt(0).getImage());
+        }
+    }
+}
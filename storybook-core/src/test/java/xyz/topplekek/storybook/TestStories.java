@@ -0,0 +1,21 @@
+package xyz.topplekek.storybook;
+
+/**
+ * Stories for the tests, built from their choices alone.
+ */
+final class TestStories {
+    private TestStories() {}
+
+    /**
+     * Build a story with a page for each pair of choices.
+     * @param choices The first and second choice of each page in turn, as page numbers
+     * @return The story
+     */
+    static Story story(int... choices) {
+        Story story = new Story("Title", "Author");
+        for (int i = 0; i < choices.length; i += 2)
+            story.addPage(new Page("Page", null, Page.IMAGE_UNKNOWN, choices[i], choices[i + 1]));
+
+        return story;
+    }
+}